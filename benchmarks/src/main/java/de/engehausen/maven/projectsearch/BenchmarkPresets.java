@@ -0,0 +1,21 @@
+package de.engehausen.maven.projectsearch;
+
+import java.util.Map;
+
+/**
+ * Provider of the preset query measured by {@link SearchBenchmark}: the TODO comments
+ * of the sources and the failures logged by the servers of the {@link Corpus}.
+ */
+public class BenchmarkPresets implements PresetProvider {
+
+	/** name of the benchmark preset */
+	public static final String NAME = "todosAndFailures";
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Map<String, String> get() {
+		return Map.of(NAME, "TODO OR IllegalStateException");
+	}
+}
@@ -0,0 +1,236 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Deterministic synthetic corpus for benchmarks: Java-like source files in nested
+ * folders, large log files (above the default map threshold, so they are memory-mapped
+ * when indexing) and binary files. The same size and seed always produce the same files.
+ */
+public final class Corpus {
+
+	/** seed of the generated contents */
+	public static final long SEED = 0x5eedL;
+
+	/** vocabulary of identifiers, comments and log messages */
+	protected static final String[] WORDS = {
+		"account", "buffer", "cache", "channel", "client", "config", "context", "counter",
+		"event", "handler", "index", "item", "key", "listener", "manager", "message",
+		"node", "order", "parser", "queue", "reader", "record", "request", "result",
+		"session", "state", "stream", "task", "token", "value", "worker", "writer"
+	};
+
+	private static final String[] TYPES = { "int", "long", "String", "boolean", "List<String>", "Map<String, Object>" };
+	private static final String[] LEVELS = { "DEBUG", "INFO", "INFO", "INFO", "WARN", "ERROR" };
+	private static final int[] ELF = { 0x7f, 0x45, 0x4c, 0x46 };
+	private static final int MODULES = 8;
+	private static final int PACKAGES = 6;
+
+	/**
+	 * Sizes of corpora.
+	 */
+	public enum Size {
+		/** 200 sources, 2 logs of 2 MB, 10 binaries of 64 KB */
+		small(200, 2, 2 << 20, 10, 64 << 10),
+		/** 2000 sources, 4 logs of 8 MB, 50 binaries of 256 KB */
+		medium(2000, 4, 8 << 20, 50, 256 << 10),
+		/** 10000 sources, 8 logs of 32 MB, 100 binaries of 1 MB */
+		large(10000, 8, 32 << 20, 100, 1 << 20);
+
+		final int sources;
+		final int logs;
+		final long logSize;
+		final int binaries;
+		final int binarySize;
+
+		Size(final int sources, final int logs, final long logSize, final int binaries, final int binarySize) {
+			this.sources = sources;
+			this.logs = logs;
+			this.logSize = logSize;
+			this.binaries = binaries;
+			this.binarySize = binarySize;
+		}
+	}
+
+	private final Path root;
+	private long files;
+	private long bytes;
+
+	private Corpus(final Path root) {
+		this.root = root;
+	}
+
+	/**
+	 * Generates a corpus.
+	 * @param root the folder to generate the files in
+	 * @param size the size of the corpus
+	 * @return the corpus
+	 * @throws IOException in case of error
+	 */
+	public static Corpus generate(final Path root, final Size size) throws IOException {
+		final Corpus corpus = new Corpus(root);
+		for (int i = 0; i < size.sources; i++) {
+			corpus.source(i, new Random(SEED + i));
+		}
+		for (int i = 0; i < size.logs; i++) {
+			corpus.log(i, size.logSize, new Random(SEED - i));
+		}
+		for (int i = 0; i < size.binaries; i++) {
+			corpus.binary(i, size.binarySize, new Random(SEED ^ i));
+		}
+		return corpus;
+	}
+
+	/**
+	 * Returns the root folder of the corpus.
+	 * @return the root folder
+	 */
+	public Path getRoot() {
+		return root;
+	}
+
+	/**
+	 * Returns the number of files of the corpus.
+	 * @return the number of files
+	 */
+	public long getFiles() {
+		return files;
+	}
+
+	/**
+	 * Returns the total size of the files of the corpus.
+	 * @return the size in bytes
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Deletes the corpus, including any index inside of it.
+	 * @throws IOException in case of error
+	 */
+	public void delete() throws IOException {
+		try (final Stream<Path> paths = Files.walk(root)) {
+			paths
+				.sorted(Comparator.reverseOrder())
+				.forEach(path -> path.toFile().delete());
+		}
+	}
+
+	/**
+	 * Returns the total size of the files in a folder.
+	 * @param folder the folder
+	 * @return the size in bytes
+	 * @throws IOException in case of error
+	 */
+	public static long size(final Path folder) throws IOException {
+		try (final Stream<Path> paths = Files.walk(folder)) {
+			return paths
+				.filter(Files::isRegularFile)
+				.mapToLong(path -> path.toFile().length())
+				.sum();
+		}
+	}
+
+	private void source(final int number, final Random random) throws IOException {
+		final String module = "module" + (number % MODULES);
+		final String pkg = "pkg" + (number % PACKAGES);
+		final String name = capitalize(word(random)) + capitalize(word(random)) + number;
+		final StringBuilder text = new StringBuilder(4096);
+		text.append("package de.example.").append(module).append('.').append(pkg).append(";\n\n");
+		text.append("import java.util.List;\nimport java.util.Map;\n\n");
+		text.append("/**\n * The ").append(word(random)).append(' ').append(word(random)).append(" of the ").append(word(random)).append(".\n */\n");
+		text.append("public class ").append(name).append(" {\n\n");
+		final int fields = 2 + random.nextInt(6);
+		for (int i = 0; i < fields; i++) {
+			text.append("\tprivate ").append(TYPES[random.nextInt(TYPES.length)]).append(' ').append(identifier(random)).append(";\n");
+		}
+		final int methods = 2 + random.nextInt(10);
+		for (int i = 0; i < methods; i++) {
+			final String value = identifier(random);
+			text.append("\n\t/**\n\t * Returns the ").append(word(random)).append(".\n\t */\n");
+			text.append("\tpublic int get").append(capitalize(value)).append("(final int ").append(word(random)).append(") {\n");
+			if (random.nextInt(8) == 0) {
+				text.append("\t\t// TODO check the ").append(word(random)).append('\n');
+			}
+			text.append("\t\tfinal int ").append(value).append(" = ").append(random.nextInt(1000)).append(";\n");
+			text.append("\t\treturn ").append(value).append(" + ").append(word(random)).append(".hashCode();\n\t}\n");
+		}
+		text.append("}\n");
+		write(root.resolve("src").resolve(module).resolve(pkg).resolve(name + ".java"), text.toString());
+	}
+
+	private void log(final int number, final long size, final Random random) throws IOException {
+		final Path file = root.resolve("logs").resolve("server-" + number + ".log");
+		Files.createDirectories(file.getParent());
+		long written = 0;
+		long time = 1_700_000_000_000L;
+		try (final BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			while (written < size) {
+				time += random.nextInt(100);
+				final String level = LEVELS[random.nextInt(LEVELS.length)];
+				final StringBuilder line = new StringBuilder(128)
+					.append(Instant.ofEpochMilli(time)).append(' ')
+					.append(level).append(" [worker-").append(random.nextInt(16)).append("] ")
+					.append(capitalize(word(random))).append(capitalize(word(random))).append(" - ");
+				if ("ERROR".equals(level)) {
+					line.append("java.lang.IllegalStateException: ").append(word(random)).append(' ').append(word(random)).append(" failed");
+				} else {
+					line.append("processed ").append(word(random)).append(" id=").append(random.nextInt(1_000_000))
+						.append(" in ").append(random.nextInt(500)).append(" ms");
+				}
+				line.append('\n');
+				out.write(line.toString());
+				written += line.length();
+			}
+		}
+		files++;
+		bytes += Files.size(file);
+	}
+
+	private void binary(final int number, final int size, final Random random) throws IOException {
+		final Path file = root.resolve("bin").resolve("data-" + number + (number % 2 == 0 ? ".so" : ".dat"));
+		Files.createDirectories(file.getParent());
+		final byte[] data = new byte[size];
+		random.nextBytes(data);
+		if (number % 2 == 0) {
+			for (int i = 0; i < ELF.length; i++) {
+				data[i] = (byte) ELF[i];
+			}
+		}
+		try (final OutputStream out = Files.newOutputStream(file)) {
+			out.write(data);
+		}
+		files++;
+		bytes += size;
+	}
+
+	private void write(final Path file, final String text) throws IOException {
+		Files.createDirectories(file.getParent());
+		final byte[] data = text.getBytes(StandardCharsets.UTF_8);
+		Files.write(file, data);
+		files++;
+		bytes += data.length;
+	}
+
+	private static String word(final Random random) {
+		return WORDS[random.nextInt(WORDS.length)];
+	}
+
+	private static String identifier(final Random random) {
+		return random.nextBoolean() ? word(random) : word(random) + capitalize(word(random));
+	}
+
+	private static String capitalize(final String word) {
+		return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+	}
+}
@@ -0,0 +1,103 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building a clean index of a generated {@link Corpus} with the {@link Indexer}
+ * as configured by the {@code index} goal, for each {@link IndexProfile.Preset}. Besides
+ * the time per build, the throughput is reported in files and megabytes per second; the
+ * size of the index is printed after each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexBenchmark {
+
+	private static final double MEGABYTE = 1024d * 1024d;
+
+	@Param({ "small", "medium" })
+	public Corpus.Size size;
+
+	@Param({ "1", "4" })
+	public int threads;
+
+	@Param({ "false", "true" })
+	public boolean trigrams;
+
+	@Param({ "standard", "fast", "compact" })
+	public IndexProfile.Preset profile;
+
+	private Corpus corpus;
+	private Path indexPath;
+
+	/**
+	 * Indexing throughput, reported per second.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Throughput {
+		/** indexed files */
+		public long files;
+		/** indexed megabytes */
+		public double megabytes;
+	}
+
+	@Setup(Level.Trial)
+	public void generate() throws IOException {
+		corpus = Corpus.generate(Files.createTempDirectory("project-search-index"), size);
+		indexPath = corpus.getRoot().resolve(Constants.DEFAULT_INDEX);
+	}
+
+	@TearDown(Level.Iteration)
+	public void reportSize() throws IOException {
+		if (Files.exists(indexPath)) {
+			final long bytes = Corpus.size(indexPath);
+			System.out.printf("%nIndex size: %.1f MB (%.1f%% of %.1f MB in %d files)%n",
+				bytes / MEGABYTE, 100d * bytes / corpus.getBytes(), corpus.getBytes() / MEGABYTE, corpus.getFiles());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void delete() throws IOException {
+		corpus.delete();
+	}
+
+	@Benchmark
+	public void index(final Throughput throughput) throws MojoExecutionException {
+		final Indexer indexer = new Indexer(
+			corpus.getRoot(),
+			indexPath,
+			new IgnoreRules(corpus.getRoot(), Constants.DEFAULT_INDEX, Constants.DEFAULT_IGNORE_FOLDERS, true),
+			Constants.DEFAULT_IGNORE_MIME_TYPES,
+			new SystemStreamLog());
+		indexer.setThreads(threads);
+		indexer.setTrigrams(trigrams);
+		indexer.setProfile(new IndexProfile(profile));
+		indexer.index(true);
+		throughput.files += corpus.getFiles();
+		throughput.megabytes += corpus.getBytes() / MEGABYTE;
+	}
+}
@@ -0,0 +1,103 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of queries against the index of a generated {@link Corpus},
+ * searched as by the {@code search} goal (see {@link Queries}) with its default limit
+ * and no whitelist. Sampling reports the latency percentiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+	/** queries by kind */
+	protected static final Map<String, String> QUERIES = Map.of(
+		"term", "counter",
+		"wildcard", "count*",
+		"phrase", "\"private int counter\"",
+		"preset", Constants.PRESET_PREFIX + BenchmarkPresets.NAME
+	);
+
+	private static final int LIMIT = Integer.parseInt(Constants.DEFAULT_LIMIT);
+
+	@Param({ "small", "medium" })
+	public Corpus.Size size;
+
+	@Param({ "term", "wildcard", "phrase", "preset" })
+	public String kind;
+
+	private Corpus corpus;
+	private IndexReader reader;
+	private IndexSearcher searcher;
+	private Queries queries;
+	private Whitelist whitelist;
+	private String query;
+
+	@Setup(Level.Trial)
+	public void open() throws IOException, MojoExecutionException {
+		corpus = Corpus.generate(Files.createTempDirectory("project-search-search"), size);
+		final Path indexPath = corpus.getRoot().resolve(Constants.DEFAULT_INDEX);
+		new Indexer(
+			corpus.getRoot(),
+			indexPath,
+			new IgnoreRules(corpus.getRoot(), Constants.DEFAULT_INDEX, Constants.DEFAULT_IGNORE_FOLDERS, true),
+			Constants.DEFAULT_IGNORE_MIME_TYPES,
+			new SystemStreamLog()).index(true);
+		reader = Shards.open(indexPath);
+		searcher = Shards.newSearcher(reader);
+		queries = new Queries(corpus.getRoot());
+		whitelist = new Whitelist(null, corpus.getRoot());
+		query = QUERIES.get(kind);
+		if (query.startsWith(Constants.PRESET_PREFIX)) {
+			query = Queries.loadPresets().get(query.substring(Constants.PRESET_PREFIX.length()));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void close() throws IOException {
+		reader.close();
+		corpus.delete();
+	}
+
+	@Benchmark
+	public long search() throws IOException, ParseException {
+		return queries.search(
+			searcher,
+			queries.parse(Queries.createParser(), query),
+			whitelist,
+			LIMIT,
+			null,
+			ResultWriter.forLines(line -> {}),
+			new ArrayDeque<>(),
+			null);
+	}
+}
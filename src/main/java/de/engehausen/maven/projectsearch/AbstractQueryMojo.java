@@ -0,0 +1,203 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongPredicate;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Base for mojos running queries non-interactively: whitelisting,
+ * fail conditions, presets and writing the results.
+ */
+public abstract class AbstractQueryMojo extends AbstractSearchMojo {
+
+	private static final Map<Constants.FailCondition, LongPredicate> FAIL_CONDITIONS = Map.of(
+		Constants.FailCondition.hit, count -> count > 0,
+		Constants.FailCondition.miss, count -> count == 0
+	);
+
+	/**
+	 * Comma-separated regular expressions for whitelisting search results.
+	 */
+	@Parameter(name = Constants.PARAM_WHITELIST, property = Constants.PARAM_WHITELIST, required = false)
+	protected String whitelist;
+
+	/**
+	 * Flag to indicate if the goal should fail if search hits occur. Defaults to {@code never}.
+	 */
+	@Parameter(name = Constants.PARAM_FAIL_ON, property = Constants.PARAM_FAIL_ON, required = false)
+	protected String failOn = Constants.FailCondition.never.name();
+
+	/**
+	 * Flag to show the matching lines of the results as {@code path:line: text}, with the matches
+	 * highlighted. Lines are only available for files whose text was stored when indexing with
+	 * context; an index built by this goal stores the text of files up to the context size.
+	 */
+	@Parameter(name = Constants.PARAM_CONTEXT, property = Constants.PARAM_CONTEXT, defaultValue = "false", required = false)
+	protected boolean context;
+
+	/**
+	 * Maximal number of results. The best matching results up to the limit are shown, sorted by path.
+	 * With a limit of zero or less all results are streamed in path order, without scoring.
+	 */
+	@Parameter(name = Constants.PARAM_LIMIT, property = Constants.PARAM_LIMIT, defaultValue = Constants.DEFAULT_LIMIT, required = false)
+	protected int limit;
+
+	protected Whitelist whitelisted;
+
+	/**
+	 * Compiles the whitelist and returns the configured fail condition.
+	 * Must be called after the root folder is known.
+	 * @return the fail condition
+	 */
+	protected Constants.FailCondition prepare() {
+		whitelisted = new Whitelist(whitelist, rootFolder);
+		return Optional.ofNullable(failOn)
+			.map(Constants.FailCondition::valueOf)
+			.orElse(Constants.FailCondition.never);
+	}
+
+	/**
+	 * Builds the index with default settings if requested, or if it does not exist yet
+	 * or was built by an older version. A sharded index keeps its shards.
+	 * @param indexPath the index folder
+	 * @throws MojoExecutionException in case of error
+	 */
+	protected void ensureIndex(final Path indexPath) throws MojoExecutionException {
+		final boolean rebuild;
+		final Shards shards;
+		try {
+			rebuild = clean || !Files.exists(indexPath) || Shards.needsRebuild(indexPath);
+			shards = Shards.read(indexPath);
+		} catch (IOException e) {
+			throw new MojoExecutionException("I/O error", e);
+		}
+		if (rebuild) {
+			index(indexPath, shards, null, path -> {
+				final Indexer indexer = new Indexer(
+					rootFolder,
+					path,
+					new IgnoreRules(rootFolder, indexFolder, Constants.DEFAULT_IGNORE_FOLDERS, useIgnoreFiles),
+					ignoreMimeTypes,
+					getLog()
+				);
+				indexer.setContext(context);
+				indexer.setContextSize(contextSize);
+				return indexer;
+			});
+		}
+	}
+
+	/**
+	 * Checks if a number of results meets the fail condition.
+	 * @param condition the fail condition
+	 * @param count the number of results
+	 * @return {@code true} if the execution must fail
+	 */
+	protected static boolean fails(final Constants.FailCondition condition, final long count) {
+		return FAIL_CONDITIONS.getOrDefault(condition, all -> false).test(count);
+	}
+
+	/**
+	 * Returns all preset queries by name.
+	 * @return the presets
+	 */
+	protected static Map<String, String> loadPresets() {
+		return Queries.loadPresets();
+	}
+
+	/**
+	 * Searches and writes the accepted results in path order, with the configured whitelist and limit.
+	 * @param searcher the searcher
+	 * @param parsed the query
+	 * @param snippets the snippets for showing matching lines, may be {@code null}
+	 * @param writer the writer for the results
+	 * @param ignored receives the paths of results rejected by the whitelist
+	 * @return the number of accepted results
+	 * @throws IOException in case of error
+	 */
+	protected long search(final IndexSearcher searcher, final Query parsed, final Snippets snippets, final ResultWriter writer, final Deque<String> ignored) throws IOException {
+		return search(searcher, parsed, whitelisted, limit, snippets, writer, ignored, null);
+	}
+
+	/**
+	 * Searches and writes the accepted results in path order, see
+	 * {@link Queries#search(IndexSearcher, Query, Whitelist, int, Snippets, ResultWriter, Deque, QueryTimings)}.
+	 * @param searcher the searcher
+	 * @param parsed the query
+	 * @param whitelist the whitelist
+	 * @param max the maximal number of results, zero or less for all results
+	 * @param snippets the snippets for showing matching lines, may be {@code null}
+	 * @param writer the writer for the results
+	 * @param ignored receives the paths of results rejected by the whitelist
+	 * @param timings receives the time spent searching and assembling the results, may be {@code null}
+	 * @return the number of accepted results
+	 * @throws IOException in case of error
+	 */
+	protected long search(final IndexSearcher searcher, final Query parsed, final Whitelist whitelist, final int max, final Snippets snippets, final ResultWriter writer, final Deque<String> ignored, final QueryTimings timings) throws IOException {
+		return queries().search(searcher, parsed, whitelist, max, snippets, writer, ignored, timings);
+	}
+
+	/**
+	 * Counts the accepted results by facet and logs the counts instead of the results, see {@link Facets}.
+	 * In a deduplicated index, the aliases of the matches are counted as well.
+	 * @param searcher the searcher
+	 * @param parsed the query
+	 * @param depth the number of folders of the counted path prefixes, zero or less for none
+	 * @param timings receives the time spent searching and counting, may be {@code null}
+	 * @return the number of accepted results
+	 * @throws IOException in case of error
+	 */
+	protected long facets(final IndexSearcher searcher, final Query parsed, final int depth, final QueryTimings timings) throws IOException {
+		final long start = System.nanoTime();
+		final Query filtered = whitelisted.exclude(Aliases.expand(searcher, parsed));
+		final Facets.Counts counts = new Facets(searcher, depth).count(filtered, Facets.PathFilter.of(whitelisted, rootFolder));
+		final long counted = System.nanoTime();
+		counts.write(limit, line -> getLog().info(line));
+		if (timings != null) {
+			timings.addSearch(counted - start);
+			timings.addAssembly(System.nanoTime() - counted);
+		}
+		return counts.getTotal();
+	}
+
+	/**
+	 * Parses a query, recording the time spent.
+	 * @param query the query
+	 * @param timings receives the time spent parsing
+	 * @return the parsed query
+	 * @throws ParseException if the query is invalid
+	 */
+	protected Query parse(final String query, final QueryTimings timings) throws ParseException {
+		final long start = System.nanoTime();
+		try {
+			return parse(createQueryParser(), query);
+		} finally {
+			timings.addParse(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Logs the results rejected by the whitelist.
+	 * @param ignored the paths of the rejected results
+	 */
+	protected void logIgnored(final Deque<String> ignored) {
+		if (!ignored.isEmpty()) {
+			getLog().info("");
+			getLog().info("The following results were ignored:");
+			ignored
+				.stream()
+				.sorted()
+				.forEach(str -> getLog().info(String.format("  %s", str)));
+		}
+	}
+}
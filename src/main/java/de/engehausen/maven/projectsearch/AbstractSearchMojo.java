@@ -1,9 +1,22 @@
 package de.engehausen.maven.projectsearch;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
 
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.BytesRef;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Parameter;
 
 /**
@@ -29,16 +42,146 @@ public abstract class AbstractSearchMojo extends AbstractMojo {
 	@Parameter(name = Constants.PARAM_IGNORE_MIME_TYPES, property = Constants.PARAM_IGNORE_MIME_TYPES, defaultValue = Constants.DEFAULT_IGNORE_MIME_TYPES, required = false)
 	protected String ignoreMimeTypes;
 
+	/**
+	 * Flag to skip the files and folders ignored by {@code .gitignore} and {@code .ignore} files
+	 * (and {@code .git/info/exclude}) when indexing.
+	 */
+	@Parameter(name = Constants.PARAM_USE_IGNORE_FILES, property = Constants.PARAM_USE_IGNORE_FILES, defaultValue = "true", required = false)
+	protected boolean useIgnoreFiles;
+
 	/**
 	 * Flag to force rebuilding the index.
 	 */
 	@Parameter(name = Constants.PARAM_CLEAN, property = Constants.PARAM_CLEAN, defaultValue = "false", required = false)
 	protected boolean clean;
 
+	/**
+	 * The size in bytes (at most 64 MB) up to which the text of files (or chunks) is stored in the
+	 * index when indexing with context, so that search results can show the matching lines.
+	 */
+	@Parameter(name = Constants.PARAM_CONTEXT_SIZE, property = Constants.PARAM_CONTEXT_SIZE, defaultValue = Constants.DEFAULT_CONTEXT_SIZE, required = false)
+	protected long contextSize;
+
 	protected Path rootFolder;
 
 	protected Path getIndex(final String root, final String name) {
 		rootFolder = Paths.get(root != null ? root : Constants.DEFAULT_ROOT);
 		return rootFolder.resolve(name);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Builds or updates the index. A sharded index is built shard by shard, in parallel.
+	 * @param indexPath the index folder
+	 * @param shards the shards of the index, {@code null} for a single index
+	 * @param only the name of the only shard to build, {@code null} for all shards
+	 * @param indexers creates the indexer for an index folder
+	 * @throws MojoExecutionException in case of error
+	 */
+	protected void index(final Path indexPath, final Shards shards, final String only, final Function<Path, Indexer> indexers) throws MojoExecutionException {
+		if (shards == null) {
+			indexers.apply(indexPath).index(clean);
+		} else {
+			shards.index(indexers, clean, only);
+		}
+	}
+
+	/**
+	 * Returns the search path of the goals for the root folder.
+	 * @return the queries
+	 */
+	protected Queries queries() {
+		return new Queries(rootFolder);
+	}
+
+	/**
+	 * Creates the parser for queries, see {@link Queries#createParser()}.
+	 * @return the query parser
+	 */
+	protected static QueryParser createQueryParser() {
+		return Queries.createParser();
+	}
+
+	/**
+	 * Parses a query, see {@link Queries#parse(QueryParser, String)}.
+	 * @param parser the query parser
+	 * @param query the query
+	 * @return the parsed query
+	 * @throws ParseException if the query is invalid
+	 */
+	protected Query parse(final QueryParser parser, final String query) throws ParseException {
+		return queries().parse(parser, query);
+	}
+
+	/**
+	 * Searches a page of results in path order with the hits of up to the given number of files.
+	 * The matching chunks of a file are one hit, see {@link Chunks}; the search continues until
+	 * the next file, so the chunks of the last file of the page are not split across pages.
+	 * @param searcher the searcher
+	 * @param query the query, expanded to aliases
+	 * @param after the last document of the previous page, {@code null} for the first page
+	 * @param files the maximal number of files of the page
+	 * @return the page
+	 * @throws IOException in case of error
+	 */
+	protected Page page(final IndexSearcher searcher, final Query query, final ScoreDoc after, final int files) throws IOException {
+		final Queries queries = queries();
+		final List<Hit> hits = new ArrayList<>(files);
+		final Chunks chunks = new Chunks(searcher.getIndexReader(), hits::add);
+		ScoreDoc last = after;
+		BytesRef file = null;
+		int count = 0;
+		while (true) {
+			final TopDocs topDocs = last == null
+				? searcher.search(query, files + 1, Indexer.INDEX_SORT)
+				: searcher.searchAfter(last, query, files + 1, Indexer.INDEX_SORT);
+			for (final ScoreDoc scoreDoc : topDocs.scoreDocs) {
+				final BytesRef id = (BytesRef) ((FieldDoc) scoreDoc).fields[0];
+				if (!id.equals(file)) {
+					if (count == files) {
+						chunks.finish();
+						return new Page(hits, last, true);
+					}
+					count++;
+					file = id;
+				}
+				chunks.add(queries.toHit(id, scoreDoc.doc));
+				last = scoreDoc;
+			}
+			if (topDocs.scoreDocs.length <= files) {
+				chunks.finish();
+				return new Page(hits, last, false);
+			}
+		}
+	}
+
+	/**
+	 * Logs a search hit, with its matching lines if snippets are given.
+	 * @param hit the hit
+	 * @param snippets the snippets for the hit, may be {@code null}
+	 * @throws IOException in case of error
+	 */
+	protected void logHit(final Hit hit, final Snippets snippets) throws IOException {
+		final List<Snippets.Line> lines = snippets != null ? snippets.lines(hit) : List.of();
+		if (lines.isEmpty()) {
+			getLog().info(String.format("  %s", hit));
+		} else {
+			for (final Snippets.Line line : lines) {
+				getLog().info(String.format("  %s:%s", hit.getPath(), line));
+			}
+		}
+	}
+
+	/**
+	 * A page of results in path order, see {@link AbstractSearchMojo#page(IndexSearcher, Query, ScoreDoc, int)}.
+	 */
+	protected static final class Page {
+		final List<Hit> hits;
+		final ScoreDoc last;
+		final boolean more;
+		Page(final List<Hit> hits, final ScoreDoc last, final boolean more) {
+			this.hits = hits;
+			this.last = last;
+			this.more = more;
+		}
+	}
+}
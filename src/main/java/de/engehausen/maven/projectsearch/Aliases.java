@@ -0,0 +1,183 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+
+/**
+ * Expands queries on a deduplicated index (see {@link Indexer#setDedup(boolean)}) to the alias
+ * documents of the matching documents, so each file with identical contents is a hit of its own.
+ * <p>Alias documents have no contents, but their own path, file name and module. Alias documents
+ * are matched by a copy of the query in which each clause on the contents is replaced by the
+ * content hashes of the documents with contents matching the clause; the other clauses are checked
+ * against the alias documents themselves. Documents with contents are matched by the query as is.
+ * Queries on indexes without aliases are not changed.</p>
+ */
+public final class Aliases {
+
+	/** fields only documents with contents have */
+	private static final Set<String> CONTENT_FIELDS = Set.of(Constants.FIELD_CONTENTS, Constants.FIELD_IDENTIFIERS, Constants.FIELD_TRIGRAMS);
+
+	private Aliases() {
+		// static methods only
+	}
+
+	/**
+	 * Expands a query to the aliases of its matches. Each clause on the contents is run once
+	 * without scoring to collect the content hashes of its matches.
+	 * @param searcher the searcher
+	 * @param query the query
+	 * @return the expanded query, or the query itself if the index has no aliases
+	 * @throws IOException in case of error
+	 */
+	public static Query expand(final IndexSearcher searcher, final Query query) throws IOException {
+		final Set<BytesRef> aliased = aliasedHashes(searcher.getIndexReader());
+		if (aliased.isEmpty()) {
+			return query;
+		}
+		final Query aliases = new PrefixQuery(new Term(Constants.FIELD_ALIAS_OF, ""));
+		return new BooleanQuery.Builder()
+			.add(new BooleanQuery.Builder()
+				.add(query, BooleanClause.Occur.MUST)
+				.add(aliases, BooleanClause.Occur.MUST_NOT)
+				.build(), BooleanClause.Occur.SHOULD)
+			.add(new ConstantScoreQuery(new BooleanQuery.Builder()
+				.add(toAliasQuery(searcher, query, aliased), BooleanClause.Occur.MUST)
+				.add(aliases, BooleanClause.Occur.FILTER)
+				.build()), BooleanClause.Occur.SHOULD)
+			.build();
+	}
+
+	/**
+	 * Returns the query for alias documents: the clauses on the contents are replaced
+	 * by the content hashes of their matches, the other clauses are kept.
+	 * @param searcher the searcher
+	 * @param query the query
+	 * @param aliased the content hashes of which the index has aliases
+	 * @return the query for alias documents
+	 * @throws IOException in case of error
+	 */
+	private static Query toAliasQuery(final IndexSearcher searcher, final Query query, final Set<BytesRef> aliased) throws IOException {
+		if (query instanceof BooleanQuery) {
+			final BooleanQuery.Builder builder = new BooleanQuery.Builder()
+				.setMinimumNumberShouldMatch(((BooleanQuery) query).getMinimumNumberShouldMatch());
+			for (final BooleanClause clause : (BooleanQuery) query) {
+				builder.add(toAliasQuery(searcher, clause.getQuery(), aliased), clause.getOccur());
+			}
+			return builder.build();
+		}
+		if (query instanceof BoostQuery) {
+			return new BoostQuery(toAliasQuery(searcher, ((BoostQuery) query).getQuery(), aliased), ((BoostQuery) query).getBoost());
+		}
+		if (query instanceof ConstantScoreQuery) {
+			return new ConstantScoreQuery(toAliasQuery(searcher, ((ConstantScoreQuery) query).getQuery(), aliased));
+		}
+		if (!isContentQuery(query)) {
+			return query;
+		}
+		return new TermInSetQuery(Constants.FIELD_ALIAS_OF, matchingHashes(searcher, query, aliased));
+	}
+
+	/**
+	 * Checks if a query only matches documents with contents: a regular expression query
+	 * or a query on any of the content fields.
+	 * @param query the query
+	 * @return {@code true} if the query is on the contents
+	 */
+	private static boolean isContentQuery(final Query query) {
+		if (query instanceof GrepQuery) {
+			return true;
+		}
+		final boolean[] contents = new boolean[1];
+		query.visit(new QueryVisitor() {
+			@Override
+			public boolean acceptField(final String field) {
+				contents[0] |= CONTENT_FIELDS.contains(field);
+				return false;
+			}
+		});
+		return contents[0];
+	}
+
+	/**
+	 * Returns the content hashes of the documents matching a query of which the index has aliases.
+	 * @param searcher the searcher
+	 * @param query the query
+	 * @param aliased the content hashes of which the index has aliases
+	 * @return the hashes
+	 * @throws IOException in case of error
+	 */
+	private static Set<BytesRef> matchingHashes(final IndexSearcher searcher, final Query query, final Set<BytesRef> aliased) throws IOException {
+		final Weight weight = searcher.createWeight(searcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1f);
+		final Set<BytesRef> hashes = new HashSet<>();
+		for (final LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+			final Scorer scorer = weight.scorer(leaf);
+			final SortedDocValues contentHashes = DocValues.getSorted(leaf.reader(), Constants.FIELD_CONTENT_HASH);
+			if (scorer == null || contentHashes.getValueCount() == 0) {
+				continue;
+			}
+			// collect the ordinals first, looking up each hash once
+			final FixedBitSet ords = new FixedBitSet(contentHashes.getValueCount());
+			final Bits liveDocs = leaf.reader().getLiveDocs();
+			final DocIdSetIterator matches = scorer.iterator();
+			for (int doc = matches.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = matches.nextDoc()) {
+				if ((liveDocs == null || liveDocs.get(doc)) && contentHashes.advanceExact(doc)) {
+					ords.set(contentHashes.ordValue());
+				}
+			}
+			final BitSetIterator collected = new BitSetIterator(ords, 0);
+			for (int ord = collected.nextDoc(); ord != DocIdSetIterator.NO_MORE_DOCS; ord = collected.nextDoc()) {
+				final BytesRef hash = contentHashes.lookupOrd(ord);
+				if (aliased.contains(hash)) {
+					hashes.add(BytesRef.deepCopyOf(hash));
+				}
+			}
+		}
+		return hashes;
+	}
+
+	/**
+	 * Returns the content hashes of which the index has aliases.
+	 * @param reader the index reader
+	 * @return the hashes, empty if the index has no aliases
+	 * @throws IOException in case of error
+	 */
+	public static Set<BytesRef> aliasedHashes(final IndexReader reader) throws IOException {
+		final Set<BytesRef> result = new HashSet<>();
+		for (final LeafReaderContext leaf : reader.leaves()) {
+			final Terms terms = leaf.reader().terms(Constants.FIELD_ALIAS_OF);
+			if (terms != null) {
+				final TermsEnum termsEnum = terms.iterator();
+				for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+					result.add(BytesRef.deepCopyOf(term));
+				}
+			}
+		}
+		return result;
+	}
+}
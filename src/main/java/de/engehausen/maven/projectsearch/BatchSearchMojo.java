@@ -0,0 +1,160 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Mojo to perform several searches at once. The index is opened once and
+ * the queries run concurrently on a shared searcher; the results are reported
+ * per query, in the given order, and the execution fails if any query meets
+ * the fail condition.
+ */
+@Mojo(name = Constants.BATCH_NAME, requiresProject = false)
+public class BatchSearchMojo extends AbstractQueryMojo {
+
+	/**
+	 * The search queries, see the {@code query} parameter of the {@code search} goal.
+	 * On the command line the queries are separated by commas. {@code preset:*}
+	 * stands for all presets.
+	 */
+	@Parameter(name = Constants.PARAM_QUERIES, property = Constants.PARAM_QUERIES, required = true)
+	protected List<String> queries;
+
+	/**
+	 * The number of queries to run concurrently. Zero or less means the number of available processors.
+	 */
+	@Parameter(name = Constants.PARAM_THREADS, property = Constants.PARAM_THREADS, defaultValue = "0", required = false)
+	protected int threads;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		final Path indexPath = getIndex(root, indexFolder);
+		final Constants.FailCondition condition = prepare();
+		final List<String[]> resolved = resolveQueries();
+		if (resolved.isEmpty()) {
+			throw new MojoExecutionException("No queries given.");
+		}
+		ensureIndex(indexPath);
+		final List<String> failed = new ArrayList<>();
+		try (final IndexReader reader = Shards.open(indexPath)) {
+			final IndexSearcher searcher = Shards.newSearcher(reader);
+			final ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+				resolved.size(),
+				threads > 0 ? threads : Runtime.getRuntime().availableProcessors()
+			));
+			try {
+				final List<Future<Outcome>> outcomes = new ArrayList<>(resolved.size());
+				for (final String[] query : resolved) {
+					outcomes.add(executor.submit(() -> run(searcher, query[0], query[1])));
+				}
+				for (final Future<Outcome> future : outcomes) {
+					final Outcome outcome = future.get();
+					final boolean fails = fails(condition, outcome.count);
+					report(outcome, fails);
+					if (fails) {
+						failed.add(outcome.name);
+					}
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Execution error", e);
+		} catch (ExecutionException e) {
+			throw new MojoExecutionException("Execution error", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Search interrupted", e);
+		}
+		getLog().info("");
+		getLog().info(String.format("Ran %d queries, %d failed.", Integer.valueOf(resolved.size()), Integer.valueOf(failed.size())));
+		if (!failed.isEmpty()) {
+			throw new MojoFailureException(String.format("Unwanted search results for: %s", String.join(", ", failed)));
+		}
+	}
+
+	/**
+	 * Resolves the presets among the queries.
+	 * @return the name and the query for each query
+	 * @throws MojoExecutionException if a preset is unknown
+	 */
+	protected List<String[]> resolveQueries() throws MojoExecutionException {
+		final Map<String, String> presets = loadPresets();
+		final List<String[]> result = new ArrayList<>();
+		for (final String query : queries) {
+			if (query.equals(Constants.PRESET_PREFIX + Constants.ALL_PRESETS)) {
+				presets
+					.keySet()
+					.stream()
+					.sorted()
+					.forEach(key -> result.add(new String[] { Constants.PRESET_PREFIX + key, presets.get(key) }));
+			} else if (query.startsWith(Constants.PRESET_PREFIX)) {
+				final String key = query.substring(Constants.PRESET_PREFIX.length());
+				final String preset = presets.get(key);
+				if (preset == null) {
+					throw new MojoExecutionException(String.format("Unknown preset: %s", key));
+				}
+				result.add(new String[] { query, preset });
+			} else if (!query.isBlank()) {
+				result.add(new String[] { query, query });
+			}
+		}
+		return result;
+	}
+
+	protected Outcome run(final IndexSearcher searcher, final String name, final String query) throws IOException, ParseException {
+		final Outcome outcome = new Outcome(name);
+		final Query parsed = parse(query, outcome.timings);
+		outcome.count = search(searcher, parsed, whitelisted, limit, context ? new Snippets(searcher, parsed) : null, ResultWriter.forLines(outcome.lines::add), outcome.ignored, outcome.timings);
+		return outcome;
+	}
+
+	protected void report(final Outcome outcome, final boolean fails) {
+		getLog().info("");
+		getLog().info(String.format("%s: %d results%s", outcome.name, Long.valueOf(outcome.count), fails ? " (failed)" : ""));
+		outcome.lines.forEach(getLog()::info);
+		getLog().info(String.format("Query timings: %s", outcome.timings));
+		if (!outcome.ignored.isEmpty()) {
+			getLog().info("The following results were ignored:");
+			outcome.ignored
+				.stream()
+				.sorted()
+				.forEach(str -> getLog().info(String.format("  %s", str)));
+		}
+	}
+
+	/**
+	 * Results of a query, collected for reporting.
+	 */
+	protected static final class Outcome {
+		final String name;
+		final List<String> lines = new ArrayList<>();
+		final Deque<String> ignored = new ArrayDeque<>();
+		final QueryTimings timings = new QueryTimings();
+		long count;
+		Outcome(final String name) {
+			this.name = name;
+		}
+	}
+}
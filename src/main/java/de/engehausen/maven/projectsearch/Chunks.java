@@ -0,0 +1,122 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+
+/**
+ * Collapses the hits of the chunks of a file into one hit of the file. Files larger than
+ * the chunk size are indexed as several documents with the identifier of the file (see
+ * {@link Indexer#setChunks(long, int)}), each recording the number of its chunk in
+ * {@link Constants#FIELD_CHUNK}. Hits are added in path order, so the hits of the chunks
+ * of a file are consecutive; they are passed on as one hit with the numbers of the
+ * matching chunks once the next file is added or the hits are finished.
+ * <p>Hits of an index without chunks are passed on as they are added.</p>
+ */
+public class Chunks {
+
+	protected final IndexReader reader;
+	protected final Consumer consumer;
+	protected final boolean chunked;
+	private Hit pending;
+
+	/**
+	 * Creates the collapser.
+	 * @param reader the reader of the index of the hits
+	 * @param consumer the consumer of the collapsed hits
+	 */
+	public Chunks(final IndexReader reader, final Consumer consumer) {
+		this.reader = reader;
+		this.consumer = consumer;
+		this.chunked = isChunked(reader);
+	}
+
+	/**
+	 * Collapses a list of hits.
+	 * @param reader the reader of the index of the hits
+	 * @param hits the hits in path order
+	 * @return the collapsed hits
+	 * @throws IOException in case of error
+	 */
+	public static List<Hit> collapse(final IndexReader reader, final List<Hit> hits) throws IOException {
+		final List<Hit> result = new ArrayList<>(hits.size());
+		final Chunks chunks = new Chunks(reader, result::add);
+		for (final Hit hit : hits) {
+			chunks.add(hit);
+		}
+		chunks.finish();
+		return result;
+	}
+
+	/**
+	 * Checks if an index has files indexed as chunks.
+	 * @param reader the index reader
+	 * @return {@code true} if {@link Constants#FIELD_CHUNK} is indexed
+	 */
+	public static boolean isChunked(final IndexReader reader) {
+		return FieldInfos.getMergedFieldInfos(reader).fieldInfo(Constants.FIELD_CHUNK) != null;
+	}
+
+	/**
+	 * Adds a hit of a single document.
+	 * @param hit the hit
+	 * @throws IOException in case of error
+	 */
+	public void add(final Hit hit) throws IOException {
+		if (!chunked) {
+			consumer.accept(hit);
+		} else if (pending != null && pending.getPath().equals(hit.getPath())) {
+			pending = pending.merge(numbered(hit));
+		} else {
+			finish();
+			pending = numbered(hit);
+		}
+	}
+
+	/**
+	 * Passes on the last collapsed hit, if any.
+	 * @throws IOException in case of error
+	 */
+	public void finish() throws IOException {
+		if (pending != null) {
+			final Hit hit = pending;
+			pending = null;
+			consumer.accept(hit);
+		}
+	}
+
+	/**
+	 * Returns a hit with the number of its chunk.
+	 * @param hit the hit of a single document
+	 * @return the hit with the number of the chunk, or the hit itself if its file is not indexed as chunks
+	 * @throws IOException in case of error
+	 */
+	protected Hit numbered(final Hit hit) throws IOException {
+		final List<LeafReaderContext> leaves = reader.leaves();
+		final LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(hit.getDoc(), leaves));
+		final NumericDocValues chunks = leaf.reader().getNumericDocValues(Constants.FIELD_CHUNK);
+		if (chunks == null || !chunks.advanceExact(hit.getDoc() - leaf.docBase)) {
+			return hit;
+		}
+		return new Hit(hit.getPath(), hit.getDocs(), new int[] { (int) chunks.longValue() });
+	}
+
+	/**
+	 * Consumer of the collapsed hits.
+	 */
+	@FunctionalInterface
+	public interface Consumer {
+		/**
+		 * Accepts a hit.
+		 * @param hit the hit
+		 * @throws IOException in case of error
+		 */
+		void accept(Hit hit) throws IOException;
+	}
+}
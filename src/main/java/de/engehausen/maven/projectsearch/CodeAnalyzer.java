@@ -0,0 +1,173 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.DelegatingAnalyzerWrapper;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+
+/**
+ * Case-sensitive analyzer for source code identifiers. Identifiers are runs of letters,
+ * digits and the separators {@link #SEPARATORS}, so {@code get_user}, {@code java.util.List}
+ * or {@code src/main} are single tokens; leading and trailing separators are dropped.
+ * For indexing, {@link IdentifierSplitFilter} adds the parts of the identifiers.
+ * For queries, identifiers are not split, so a partial identifier is a single term.
+ */
+public class CodeAnalyzer extends Analyzer {
+
+	/** characters separating the parts of identifiers */
+	public static final String SEPARATORS = "_$.-/:\\";
+
+	protected final boolean split;
+	protected final int maxTokenLength;
+
+	/**
+	 * Creates the analyzer.
+	 * @param split {@code true} to add the parts of identifiers (for indexing),
+	 * {@code false} to only produce the identifiers (for queries)
+	 */
+	public CodeAnalyzer(final boolean split) {
+		this.split = split;
+		this.maxTokenLength = CaseSensitiveAnalyzer.MAX_TOKEN_LENGTH;
+	}
+
+	/**
+	 * Creates the analyzer for all fields, analyzing {@link Constants#FIELD_IDENTIFIERS}
+	 * with a {@link CodeAnalyzer}, {@link Constants#FIELD_TRIGRAMS} with a {@link TrigramAnalyzer}
+	 * and all other fields with a {@link CaseSensitiveAnalyzer}.
+	 * @param split {@code true} for indexing, {@code false} for queries
+	 * @return the analyzer
+	 */
+	public static Analyzer perField(final boolean split) {
+		final Analyzer identifiers = new CodeAnalyzer(split);
+		final Analyzer trigrams = new TrigramAnalyzer();
+		final Analyzer text = new CaseSensitiveAnalyzer();
+		return new DelegatingAnalyzerWrapper(PER_FIELD_REUSE_STRATEGY) {
+			@Override
+			protected Analyzer getWrappedAnalyzer(final String fieldName) {
+				if (Constants.FIELD_IDENTIFIERS.equals(fieldName)) {
+					return identifiers;
+				} else if (Constants.FIELD_TRIGRAMS.equals(fieldName)) {
+					return trigrams;
+				}
+				return text;
+			}
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected TokenStreamComponents createComponents(final String fieldName) {
+		final IdentifierTokenizer src = new IdentifierTokenizer(maxTokenLength);
+		return new TokenStreamComponents(src, split ? new IdentifierSplitFilter(src) : src);
+	}
+
+	/**
+	 * Checks if the given character separates parts of identifiers.
+	 * @param c the character
+	 * @return {@code true} for separators
+	 */
+	public static boolean isSeparator(final char c) {
+		return SEPARATORS.indexOf(c) >= 0;
+	}
+
+	/**
+	 * Tokenizer for identifiers.
+	 */
+	protected static final class IdentifierTokenizer extends Tokenizer {
+
+		private static final int BUFFER_SIZE = 4096;
+
+		private final CharTermAttribute term = addAttribute(CharTermAttribute.class);
+		private final OffsetAttribute offset = addAttribute(OffsetAttribute.class);
+		private final char[] buffer = new char[BUFFER_SIZE];
+		private final int maxTokenLength;
+		private int bufferStart;
+		private int bufferLength;
+		private int index;
+		private int finalOffset;
+
+		IdentifierTokenizer(final int maxTokenLength) {
+			this.maxTokenLength = maxTokenLength;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean incrementToken() throws IOException {
+			clearAttributes();
+			int start = -1;
+			int end = -1;
+			// length of the identifier without trailing separators
+			int length = 0;
+			while (term.length() < maxTokenLength) {
+				if (index >= bufferLength && !fill()) {
+					break;
+				}
+				final char c = buffer[index];
+				final int position = bufferStart + index;
+				index++;
+				if (Character.isLetterOrDigit(c) || Character.isSurrogate(c)) {
+					if (start < 0) {
+						start = position;
+					}
+					term.append(c);
+					length = term.length();
+					end = position + 1;
+				} else if (isSeparator(c) && start >= 0) {
+					term.append(c);
+				} else if (start >= 0) {
+					break;
+				}
+			}
+			if (start < 0) {
+				finalOffset = correctOffset(bufferStart + index);
+				return false;
+			}
+			term.setLength(length);
+			offset.setOffset(correctOffset(start), correctOffset(end));
+			return true;
+		}
+
+		private boolean fill() throws IOException {
+			bufferStart += bufferLength;
+			bufferLength = 0;
+			index = 0;
+			int count;
+			while ((count = input.read(buffer, bufferLength, buffer.length - bufferLength)) == 0) {
+				// try again
+			}
+			if (count < 0) {
+				return false;
+			}
+			bufferLength = count;
+			return true;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void end() throws IOException {
+			super.end();
+			offset.setOffset(finalOffset, finalOffset);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void reset() throws IOException {
+			super.reset();
+			bufferStart = 0;
+			bufferLength = 0;
+			index = 0;
+			finalOffset = 0;
+		}
+	}
+}
@@ -15,9 +15,18 @@ public final class Constants {
 	/** Search mojo name ({@code search}) */
 	public static final String SEARCH_NAME = "search";
 
+	/** Reactor index mojo name ({@code index-reactor}) */
+	public static final String INDEX_REACTOR_NAME = "index-reactor";
+
+	/** Batch search mojo name ({@code batch}) */
+	public static final String BATCH_NAME = "batch";
+
 	/** Shell mojo name ({@code shell}) */
 	public static final String SHELL_NAME = "shell";
 
+	/** Serve mojo name ({@code serve}) */
+	public static final String SERVE_NAME = "serve";
+
 	/**
 	 * {@code indexFile} parameter: The name of the index database.
 	 */
@@ -35,15 +44,111 @@ public final class Constants {
 	/** {@code ignoreMimeTypes} parameter: Comma-separated list of regular expressions for MIME types to ignore. */
 	public static final String PARAM_IGNORE_MIME_TYPES = "ignoreMimeTypes";
 
+	/** {@code useIgnoreFiles} parameter: Flag to apply the rules of {@code .gitignore} and {@code .ignore} files. */
+	public static final String PARAM_USE_IGNORE_FILES = "useIgnoreFiles";
+
+	/** {@code threads} parameter: Number of threads used for indexing. */
+	public static final String PARAM_THREADS = "threads";
+
+	/** {@code incremental} parameter: Flag to only re-index changed files. */
+	public static final String PARAM_INCREMENTAL = "incremental";
+
+	/** {@code shards} parameter: Comma-separated path prefixes of the shards of the index, see {@link Shards}. */
+	public static final String PARAM_SHARDS = "shards";
+
+	/** {@code shard} parameter: Path prefix of the only shard to index. */
+	public static final String PARAM_SHARD = "shard";
+
+	/** {@code encoding} parameter: Charset of text files without byte order mark. */
+	public static final String PARAM_ENCODING = "encoding";
+
+	/** {@code mapThreshold} parameter: Size in bytes above which files are memory-mapped. */
+	public static final String PARAM_MAP_THRESHOLD = "mapThreshold";
+
+	/** {@code maxFileSize} parameter: Maximal number of bytes indexed per file. */
+	public static final String PARAM_MAX_FILE_SIZE = "maxFileSize";
+
+	/** {@code chunkSize} parameter: Size in bytes above which files are indexed as chunks. */
+	public static final String PARAM_CHUNK_SIZE = "chunkSize";
+
+	/** {@code chunkOverlap} parameter: Number of lines repeated at the start of the next chunk. */
+	public static final String PARAM_CHUNK_OVERLAP = "chunkOverlap";
+
+	/** {@code trigrams} parameter: Flag to index the trigrams of the contents for regular expression searches. */
+	public static final String PARAM_TRIGRAMS = "trigrams";
+
+	/** {@code archives} parameter: Flag to index the text entries of zip and jar archives. */
+	public static final String PARAM_ARCHIVES = "archives";
+
+	/** {@code dedup} parameter: Flag to analyze identical contents only once, indexing further files as aliases. */
+	public static final String PARAM_DEDUP = "dedup";
+
+	/** {@code dependencySources} parameter: Flag to index the source jars of the dependencies of the reactor modules. */
+	public static final String PARAM_DEPENDENCY_SOURCES = "dependencySources";
+
+	/** {@code profile} parameter: Profile of the index, see {@link IndexProfile.Preset}. */
+	public static final String PARAM_PROFILE = "profile";
+
+	/** {@code ramBuffer} parameter: Size of the RAM buffer of the index writer in megabytes. */
+	public static final String PARAM_RAM_BUFFER = "ramBuffer";
+
+	/** {@code compoundFiles} parameter: Flag to write segments as compound files. */
+	public static final String PARAM_COMPOUND_FILES = "compoundFiles";
+
+	/** {@code norms} parameter: Flag to index norms of the contents and identifiers. */
+	public static final String PARAM_NORMS = "norms";
+
+	/** {@code bestCompression} parameter: Flag to write stored fields with the best compression. */
+	public static final String PARAM_BEST_COMPRESSION = "bestCompression";
+
+	/** {@code maxSegments} parameter: Number of segments to merge the index into. */
+	public static final String PARAM_MAX_SEGMENTS = "maxSegments";
+
+	/** {@code context} parameter: Flag to store the text of files when indexing, and to show the matching lines of search results. */
+	public static final String PARAM_CONTEXT = "context";
+
+	/** {@code contextSize} parameter: Size in bytes up to which the text of files is stored for showing matching lines. */
+	public static final String PARAM_CONTEXT_SIZE = "contextSize";
+
+	/** {@code facets} parameter: Flag to show the numbers of results by folder, extension and module instead of the results. */
+	public static final String PARAM_FACETS = "facets";
+
+	/** {@code facetDepth} parameter: Number of folders of the path prefixes by which results are counted. */
+	public static final String PARAM_FACET_DEPTH = "facetDepth";
+
+	/** {@code cacheSize} parameter: Maximal number of search results cached in the index folder, zero for no cache. */
+	public static final String PARAM_CACHE_SIZE = "cacheSize";
+
+	/** {@code watch} parameter: Flag to update the index with file changes while the shell runs. */
+	public static final String PARAM_WATCH = "watch";
+
 	/** {@code query} parameter: The search query. */
 	public static final String PARAM_QUERY = "query";
 
+	/** {@code queries} parameter: The search queries of a batch. */
+	public static final String PARAM_QUERIES = "queries";
+
 	/** {@code whitelist} parameter: Comma-separated list of regular expressions used for whitelisting. */
 	public static final String PARAM_WHITELIST = "whitelist";
 
 	/** {@code failOn} parameter: Condition to make the execution fail, see {@link FailCondition}. */
 	public static final String PARAM_FAIL_ON = "failOn";
 
+	/** {@code limit} parameter: Maximal number of search results, zero or less for all results. */
+	public static final String PARAM_LIMIT = "limit";
+
+	/** {@code output} parameter: File to write the search results to. */
+	public static final String PARAM_OUTPUT = "output";
+
+	/** {@code format} parameter: Format of the search results, see {@link OutputFormat}. */
+	public static final String PARAM_FORMAT = "format";
+
+	/** {@code port} parameter: Loopback port of the search server, zero for any free port. */
+	public static final String PARAM_PORT = "port";
+
+	/** {@code useServer} parameter: Flag to send queries to a running search server. */
+	public static final String PARAM_USE_SERVER = "useServer";
+
 	/** Default name of the index database. */
 	public static final String DEFAULT_INDEX = ".psindex";
 
@@ -56,6 +161,39 @@ public final class Constants {
 	/** Default MIME types to ignore */
 	public static final String DEFAULT_IGNORE_MIME_TYPES = "(audio/.+)|(image/.+)|(video/.+)";
 
+	/** Default number of indexing threads */
+	public static final String DEFAULT_THREADS = "1";
+
+	/** Default size above which files are memory-mapped (1 MB) */
+	public static final String DEFAULT_MAP_THRESHOLD = "1048576";
+
+	/** Default maximal number of bytes indexed per file (no limit) */
+	public static final String DEFAULT_MAX_FILE_SIZE = "0";
+
+	/** Default size above which files are indexed as chunks (no chunks) */
+	public static final String DEFAULT_CHUNK_SIZE = "0";
+
+	/** Default size up to which the text of files is stored for showing matching lines (1 MB) */
+	public static final String DEFAULT_CONTEXT_SIZE = "1048576";
+
+	/** Default number of lines repeated at the start of the next chunk */
+	public static final String DEFAULT_CHUNK_OVERLAP = "5";
+
+	/** Default port of the search server (any free port) */
+	public static final String DEFAULT_PORT = "0";
+
+	/** Default number of folders of the counted path prefixes (none) */
+	public static final String DEFAULT_FACET_DEPTH = "0";
+
+	/** Default maximal number of cached search results */
+	public static final String DEFAULT_CACHE_SIZE = "64";
+
+	/** Default maximal number of search results */
+	public static final String DEFAULT_LIMIT = "256";
+
+	/** id field (path relative to the root, {@code /}-separated) */
+	public static final String FIELD_ID = "id";
+
 	/** path field */
 	public static final String FIELD_PATH = "path";
 
@@ -65,15 +203,87 @@ public final class Constants {
 	/** contents field */
 	public static final String FIELD_CONTENTS = "contents";
 
+	/** identifiers field (parts of identifiers in the contents, not stored) */
+	public static final String FIELD_IDENTIFIERS = "identifiers";
+
+	/** trigrams field (all three-character substrings of the contents, optional, not stored) */
+	public static final String FIELD_TRIGRAMS = "trigrams";
+
+	/** line starts field (doc values only) */
+	public static final String FIELD_LINES = "lines";
+
+	/** size field (stored only) */
+	public static final String FIELD_SIZE = "size";
+
+	/** modification time field (stored, and doc values to record the time of touched files) */
+	public static final String FIELD_MODIFIED = "modified";
+
+	/** content hash field (stored only) */
+	public static final String FIELD_HASH = "hash";
+
+	/** archive field of the documents of archive entries (identifier of the archive, indexed and stored) */
+	public static final String FIELD_ARCHIVE = "archive";
+
+	/** number of indexed entries of the document of an archive, which has no contents of its own (stored only) */
+	public static final String FIELD_ENTRIES = "entries";
+
+	/** separator of the identifier of an archive and the name of an entry in the identifiers of archive entries */
+	public static final String ARCHIVE_SEPARATOR = "!/";
+
+	/** chunk field of the documents of a file indexed as chunks (number of the chunk, doc values and stored) */
+	public static final String FIELD_CHUNK = "chunk";
+
+	/** offset in bytes of a chunk in its file (stored only) */
+	public static final String FIELD_CHUNK_OFFSET = "chunkOffset";
+
+	/** end in bytes of the indexed text of a truncated file or a chunk in its file (stored only) */
+	public static final String FIELD_END = "end";
+
+	/** number of the first line of a chunk in its file (doc values only) */
+	public static final String FIELD_CHUNK_LINE = "chunkLine";
+
+	/** content hash field of documents with contents in a deduplicated index (doc values only) */
+	public static final String FIELD_CONTENT_HASH = "contentHash";
+
+	/** content hash of the document with the contents of an alias document in a deduplicated index (indexed and stored) */
+	public static final String FIELD_ALIAS_OF = "aliasOf";
+
+	/** module field (artifact identifier of the reactor module or {@code groupId:artifactId} of the dependency of a file, indexed and stored) */
+	public static final String FIELD_MODULE = "module";
+
+	/** top-level folder facet field (doc values only) */
+	public static final String FIELD_FACET_DIRECTORY = "facetDirectory";
+
+	/** file extension facet field (doc values only) */
+	public static final String FIELD_FACET_EXTENSION = "facetExtension";
+
+	/** module facet field (doc values only) */
+	public static final String FIELD_FACET_MODULE = "facetModule";
+
 	/** all index fields */
-	public static final Set<String> ALL_FIELDS = Set.of(FIELD_CONTENTS, FIELD_PATH, FIELD_FILENAME);
+	public static final Set<String> ALL_FIELDS = Set.of(FIELD_CONTENTS, FIELD_IDENTIFIERS, FIELD_TRIGRAMS, FIELD_ID, FIELD_PATH, FIELD_FILENAME, FIELD_ARCHIVE, FIELD_MODULE);
 
-	/** fields to extract from search result document */
-	public static final Set<String> RESULT_FIELDS = Set.of(FIELD_PATH, FIELD_FILENAME);
+	/** fields searched by default */
+	public static final String[] DEFAULT_FIELDS = { FIELD_CONTENTS, FIELD_IDENTIFIERS };
+
+	/** fields of the search results which can be queried besides the contents */
+	public static final Set<String> RESULT_FIELDS = Set.of(FIELD_PATH, FIELD_FILENAME, FIELD_ARCHIVE, FIELD_MODULE);
+
+	/** fields of which query terms are looked up verbatim, without analysis */
+	public static final Set<String> KEYWORD_FIELDS = Set.of(FIELD_ARCHIVE, FIELD_MODULE);
 
 	/** special preset search query. */
 	public static final String PRESET_PREFIX = "preset:";
 
+	/** prefix of queries which are regular expressions searched for in the contents */
+	public static final String REGEX_PREFIX = "regex:";
+
+	/** alternative prefix of regular expression queries */
+	public static final String GREP_PREFIX = "grep:";
+
+	/** name selecting all presets, as in {@code preset:*} */
+	public static final String ALL_PRESETS = "*";
+
 	/**
 	 * Conditions under which to fail the Maven execution.
 	 */
@@ -85,4 +295,16 @@ public final class Constants {
 		/** Fail when result has no hits. */
 		miss
 	}
+
+	/**
+	 * Formats of search results.
+	 */
+	public enum OutputFormat {
+		/** One line per result, {@code path} or {@code path:line: text}. */
+		text,
+		/** One JSON object per result and line. */
+		json,
+		/** SARIF 2.1.0 log. */
+		sarif
+	}
 }
@@ -0,0 +1,224 @@
+package de.engehausen.maven.projectsearch;
+
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Type of file contents, detected from the first bytes of a file.
+ * The head of the file is classified as text or binary (by magic numbers,
+ * NUL bytes and the share of control characters); for text the charset
+ * is derived from a byte order mark, or by checking for valid UTF-8.
+ * The MIME type of text is guessed from the file name, without accessing
+ * the file system.
+ */
+public final class ContentType {
+
+	/** number of bytes to read for detecting the content type */
+	public static final int HEAD_SIZE = 8192;
+
+	/** generic MIME type for text */
+	public static final String TEXT_PLAIN = "text/plain";
+
+	/** generic MIME type for binary contents */
+	public static final String OCTET_STREAM = "application/octet-stream";
+
+	/** MIME type of zip files, including jar files */
+	public static final String ZIP = "application/zip";
+
+	/** fallback charset for text which is not valid UTF-8 */
+	public static final Charset FALLBACK_CHARSET = StandardCharsets.ISO_8859_1;
+
+	private static final int CONTROL_CHARACTER_RATIO = 10;
+
+	private static final List<Magic> MAGIC_NUMBERS = List.of(
+		new Magic(ZIP, 0x50, 0x4b, 0x03, 0x04),
+		new Magic(ZIP, 0x50, 0x4b, 0x05, 0x06),
+		new Magic("application/java-vm", 0xca, 0xfe, 0xba, 0xbe),
+		new Magic("application/gzip", 0x1f, 0x8b),
+		new Magic("application/x-bzip2", 0x42, 0x5a, 0x68),
+		new Magic("application/x-xz", 0xfd, 0x37, 0x7a, 0x58, 0x5a, 0x00),
+		new Magic("application/x-7z-compressed", 0x37, 0x7a, 0xbc, 0xaf, 0x27, 0x1c),
+		new Magic("application/vnd.rar", 0x52, 0x61, 0x72, 0x21, 0x1a, 0x07),
+		new Magic("application/pdf", 0x25, 0x50, 0x44, 0x46, 0x2d),
+		new Magic("application/x-elf", 0x7f, 0x45, 0x4c, 0x46),
+		new Magic("application/wasm", 0x00, 0x61, 0x73, 0x6d),
+		new Magic("application/vnd.sqlite3", 0x53, 0x51, 0x4c, 0x69, 0x74, 0x65, 0x20, 0x66, 0x6f, 0x72, 0x6d, 0x61, 0x74),
+		new Magic("image/png", 0x89, 0x50, 0x4e, 0x47, 0x0d, 0x0a, 0x1a, 0x0a),
+		new Magic("image/jpeg", 0xff, 0xd8, 0xff),
+		new Magic("image/gif", 0x47, 0x49, 0x46, 0x38),
+		new Magic("image/tiff", 0x49, 0x49, 0x2a, 0x00),
+		new Magic("image/tiff", 0x4d, 0x4d, 0x00, 0x2a),
+		new Magic("audio/mpeg", 0x49, 0x44, 0x33),
+		new Magic("audio/ogg", 0x4f, 0x67, 0x67, 0x53),
+		new Magic("audio/flac", 0x66, 0x4c, 0x61, 0x43),
+		new Magic("video/mp4", 4, new int[] { 0x66, 0x74, 0x79, 0x70 })
+	);
+
+	private final String mimeType;
+	private final Charset charset;
+	private final int offset;
+
+	private ContentType(final String mimeType, final Charset charset, final int offset) {
+		this.mimeType = mimeType;
+		this.charset = charset;
+		this.offset = offset;
+	}
+
+	/**
+	 * Detects the content type.
+	 * @param name the file name, used for guessing the MIME type of text
+	 * @param head the first bytes of the file, up to {@link #HEAD_SIZE} bytes
+	 * @param complete {@code true} if the head contains the complete file
+	 * @param charset the charset of text without byte order mark, or {@code null} to detect UTF-8
+	 * and otherwise use {@link #FALLBACK_CHARSET}
+	 * @return the content type, never {@code null}
+	 */
+	public static ContentType detect(final String name, final byte[] head, final boolean complete, final Charset charset) {
+		for (final Magic magic : MAGIC_NUMBERS) {
+			if (magic.matches(head)) {
+				return new ContentType(magic.mimeType, null, 0);
+			}
+		}
+		final Optional<String> guessed = Optional.ofNullable(URLConnection.guessContentTypeFromName(name));
+		final ContentType bom = detectByteOrderMark(guessed.orElse(TEXT_PLAIN), head);
+		if (bom != null) {
+			return bom;
+		}
+		if (isBinary(head)) {
+			return new ContentType(guessed.orElse(OCTET_STREAM), null, 0);
+		}
+		final Charset textCharset;
+		if (charset != null) {
+			textCharset = charset;
+		} else {
+			textCharset = isUtf8(head, complete) ? StandardCharsets.UTF_8 : FALLBACK_CHARSET;
+		}
+		return new ContentType(guessed.orElse(TEXT_PLAIN), textCharset, 0);
+	}
+
+	/**
+	 * Returns the MIME type.
+	 * @return the MIME type, never {@code null}
+	 */
+	public String getMimeType() {
+		return mimeType;
+	}
+
+	/**
+	 * Indicates binary contents, which must not be indexed as text.
+	 * @return {@code true} for binary contents, {@code false} for text
+	 */
+	public boolean isBinary() {
+		return charset == null;
+	}
+
+	/**
+	 * Returns the charset of text contents.
+	 * @return the charset, or {@code null} for binary contents
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Returns the offset of the text in the contents, which is the
+	 * length of the byte order mark, if any.
+	 * @return the offset of the text
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	private static ContentType detectByteOrderMark(final String mimeType, final byte[] head) {
+		if (startsWith(head, 0xef, 0xbb, 0xbf)) {
+			return new ContentType(mimeType, StandardCharsets.UTF_8, 3);
+		} else if (startsWith(head, 0xff, 0xfe, 0x00, 0x00)) {
+			return new ContentType(mimeType, Charset.forName("UTF-32LE"), 4);
+		} else if (startsWith(head, 0x00, 0x00, 0xfe, 0xff)) {
+			return new ContentType(mimeType, Charset.forName("UTF-32BE"), 4);
+		} else if (startsWith(head, 0xfe, 0xff)) {
+			return new ContentType(mimeType, StandardCharsets.UTF_16BE, 2);
+		} else if (startsWith(head, 0xff, 0xfe)) {
+			return new ContentType(mimeType, StandardCharsets.UTF_16LE, 2);
+		}
+		return null;
+	}
+
+	private static boolean isBinary(final byte[] head) {
+		int control = 0;
+		for (final byte b : head) {
+			if (b == 0) {
+				return true;
+			} else if (b > 0 && b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != '\b' && b != 0x1b) {
+				control++;
+			}
+		}
+		return control * CONTROL_CHARACTER_RATIO > head.length;
+	}
+
+	private static boolean isUtf8(final byte[] head, final boolean complete) {
+		int i = 0;
+		while (i < head.length) {
+			final int b = head[i] & 0xff;
+			final int continuations;
+			if (b < 0x80) {
+				continuations = 0;
+			} else if (b >= 0xc2 && b <= 0xdf) {
+				continuations = 1;
+			} else if (b >= 0xe0 && b <= 0xef) {
+				continuations = 2;
+			} else if (b >= 0xf0 && b <= 0xf4) {
+				continuations = 3;
+			} else {
+				return false;
+			}
+			for (int j = 1; j <= continuations; j++) {
+				if (i + j >= head.length) {
+					// sequence cut off at the end of the head
+					return !complete;
+				}
+				if ((head[i + j] & 0xc0) != 0x80) {
+					return false;
+				}
+			}
+			i += 1 + continuations;
+		}
+		return true;
+	}
+
+	private static boolean startsWith(final byte[] head, final int... prefix) {
+		return matches(head, 0, prefix);
+	}
+
+	private static boolean matches(final byte[] head, final int offset, final int... bytes) {
+		if (head.length < offset + bytes.length) {
+			return false;
+		}
+		for (int i = 0; i < bytes.length; i++) {
+			if ((head[offset + i] & 0xff) != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final class Magic {
+		final String mimeType;
+		final int offset;
+		final int[] bytes;
+		Magic(final String mimeType, final int... bytes) {
+			this(mimeType, 0, bytes);
+		}
+		Magic(final String mimeType, final int offset, final int[] bytes) {
+			this.mimeType = mimeType;
+			this.offset = offset;
+			this.bytes = bytes;
+		}
+		boolean matches(final byte[] head) {
+			return ContentType.matches(head, offset, bytes);
+		}
+	}
+}
@@ -0,0 +1,297 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+
+/**
+ * Counts the hits of a query by top-level folder, file extension and module, and optionally by
+ * the path prefix of a given depth. The counts are taken from the doc values of the facet fields
+ * written by the {@link Indexer} (and of {@link Constants#FIELD_ID} for the path prefixes) in a
+ * single pass over the matching documents, without loading stored fields: each segment counts
+ * the ordinals of the values, which are looked up once per segment. The chunks of a file
+ * indexed as chunks count as one hit, see {@link Chunks}.
+ */
+public class Facets {
+
+	/** label of the hits without value, such as files without extension */
+	public static final String NONE = "(none)";
+
+	/** value of the top-level folder of files in the root folder */
+	public static final String ROOT = ".";
+
+	/** value of the top-level folder of files outside of the root folder, such as dependencies */
+	public static final String EXTERNAL = "/";
+
+	/**
+	 * The dimensions of the counts taken from facet fields.
+	 */
+	public enum Dimension {
+		/** top-level folder of the file relative to the root folder */
+		directory(Constants.FIELD_FACET_DIRECTORY),
+		/** extension of the file name, in lower case */
+		extension(Constants.FIELD_FACET_EXTENSION),
+		/** module of the file, see {@link Constants#FIELD_MODULE} */
+		module(Constants.FIELD_FACET_MODULE);
+
+		final String field;
+
+		Dimension(final String field) {
+			this.field = field;
+		}
+	}
+
+	protected final IndexSearcher searcher;
+	protected final int depth;
+
+	/**
+	 * Creates the facets.
+	 * @param searcher the searcher
+	 * @param depth the number of folders of the path prefixes to count, zero or less for none
+	 */
+	public Facets(final IndexSearcher searcher, final int depth) {
+		this.searcher = searcher;
+		this.depth = depth;
+	}
+
+	/**
+	 * Counts the hits of a query.
+	 * @param query the query
+	 * @param accepts checks the path of a hit relative to the root folder, {@code null} to accept all hits
+	 * @return the counts
+	 * @throws IOException in case of error
+	 */
+	public Counts count(final Query query, final PathFilter accepts) throws IOException {
+		final Counts result = new Counts(depth);
+		final Weight weight = searcher.createWeight(searcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1f);
+		final Dimension[] dimensions = Dimension.values();
+		for (final LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+			final Scorer scorer = weight.scorer(leaf);
+			if (scorer == null) {
+				continue;
+			}
+			final SortedDocValues[] values = new SortedDocValues[dimensions.length];
+			final int[][] counts = new int[dimensions.length][];
+			final int[] missing = new int[dimensions.length];
+			for (int i = 0; i < dimensions.length; i++) {
+				values[i] = DocValues.getSorted(leaf.reader(), dimensions[i].field);
+				counts[i] = new int[values[i].getValueCount()];
+			}
+			final NumericDocValues chunks = leaf.reader().getNumericDocValues(Constants.FIELD_CHUNK);
+			final SortedDocValues ids = depth > 0 || accepts != null || chunks != null ? DocValues.getSorted(leaf.reader(), Constants.FIELD_ID) : null;
+			final Bits liveDocs = leaf.reader().getLiveDocs();
+			final DocIdSetIterator matches = scorer.iterator();
+			int lastChunked = -1;
+			for (int doc = matches.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = matches.nextDoc()) {
+				if (liveDocs != null && !liveDocs.get(doc)) {
+					continue;
+				}
+				if (ids != null) {
+					final int ord = ids.advanceExact(doc) ? ids.ordValue() : -1;
+					if (chunks != null && ord >= 0 && chunks.advanceExact(doc)) {
+						// the chunks of a file are consecutive in the segment and counted once
+						if (ord == lastChunked) {
+							continue;
+						}
+						lastChunked = ord;
+					}
+					final String id = ord >= 0 && (accepts != null || depth > 0) ? ids.lookupOrd(ord).utf8ToString() : "";
+					if (accepts != null && !accepts.test(id)) {
+						continue;
+					}
+					if (depth > 0) {
+						result.prefixes.merge(prefix(id, depth), Long.valueOf(1), Long::sum);
+					}
+				}
+				result.total++;
+				for (int i = 0; i < dimensions.length; i++) {
+					if (values[i].advanceExact(doc)) {
+						counts[i][values[i].ordValue()]++;
+					} else {
+						missing[i]++;
+					}
+				}
+			}
+			for (int i = 0; i < dimensions.length; i++) {
+				final Map<String, Long> dimension = result.counts.get(dimensions[i]);
+				for (int ord = 0; ord < counts[i].length; ord++) {
+					if (counts[i][ord] > 0) {
+						dimension.merge(values[i].lookupOrd(ord).utf8ToString(), Long.valueOf(counts[i][ord]), Long::sum);
+					}
+				}
+				if (missing[i] > 0) {
+					dimension.merge(NONE, Long.valueOf(missing[i]), Long::sum);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the top-level folder of a file.
+	 * @param id the identifier of the file, see {@link Constants#FIELD_ID}
+	 * @return the name of the top-level folder, {@link #ROOT} for files in the root folder
+	 * and {@link #EXTERNAL} for files outside of the root folder
+	 */
+	public static String directory(final String id) {
+		final int separator = id.indexOf('/');
+		if (separator == 0) {
+			return EXTERNAL;
+		}
+		return separator < 0 ? ROOT : id.substring(0, separator);
+	}
+
+	/**
+	 * Returns the extension of a file name.
+	 * @param fileName the file name
+	 * @return the extension in lower case, or {@code null} if the name has no extension
+	 */
+	public static String extension(final String fileName) {
+		final int dot = fileName.lastIndexOf('.');
+		return dot > 0 && dot < fileName.length() - 1 ? fileName.substring(dot + 1).toLowerCase(Locale.ROOT) : null;
+	}
+
+	/**
+	 * Returns the folder of a file, up to a depth.
+	 * @param id the identifier of the file, see {@link Constants#FIELD_ID}
+	 * @param depth the maximal number of folders
+	 * @return the first folders of the path of the file, {@link #ROOT} for files in the root folder
+	 */
+	public static String prefix(final String id, final int depth) {
+		final int last = id.lastIndexOf('/');
+		if (last <= 0) {
+			return last < 0 ? ROOT : EXTERNAL;
+		}
+		int end = id.startsWith("/") ? 0 : -1;
+		for (int i = 0; i < depth; i++) {
+			end = id.indexOf('/', end + 1);
+			if (end < 0 || end > last) {
+				return id.substring(0, last);
+			}
+		}
+		return id.substring(0, end);
+	}
+
+	/**
+	 * Checks the paths of hits, relative to the root folder.
+	 */
+	@FunctionalInterface
+	public interface PathFilter {
+		/**
+		 * Checks a hit.
+		 * @param id the identifier of the hit, see {@link Constants#FIELD_ID}
+		 * @return {@code true} if the hit is counted
+		 */
+		boolean test(String id);
+
+		/**
+		 * Returns the filter for the patterns of a whitelist which are checked against the paths of results.
+		 * @param whitelist the whitelist
+		 * @param rootFolder the root folder of the index
+		 * @return the filter, or {@code null} if the whitelist is applied by the query alone
+		 */
+		static PathFilter of(final Whitelist whitelist, final Path rootFolder) {
+			if (!whitelist.checksPaths()) {
+				return null;
+			}
+			final Path absoluteRoot = rootFolder.toAbsolutePath();
+			return id -> whitelist.accepts(absoluteRoot.resolve(id).toString());
+		}
+	}
+
+	/**
+	 * The counts of the hits of a query.
+	 */
+	public static final class Counts {
+
+		final int depth;
+		final Map<Dimension, Map<String, Long>> counts;
+		final Map<String, Long> prefixes;
+		long total;
+
+		Counts(final int depth) {
+			this.depth = depth;
+			this.counts = new EnumMap<>(Dimension.class);
+			for (final Dimension dimension : Dimension.values()) {
+				counts.put(dimension, new HashMap<>());
+			}
+			this.prefixes = new HashMap<>();
+		}
+
+		/**
+		 * Returns the number of hits.
+		 * @return the number of hits
+		 */
+		public long getTotal() {
+			return total;
+		}
+
+		/**
+		 * Returns the counts of a dimension.
+		 * @param dimension the dimension
+		 * @return the counts by value
+		 */
+		public Map<String, Long> get(final Dimension dimension) {
+			return counts.get(dimension);
+		}
+
+		/**
+		 * Returns the counts by path prefix.
+		 * @return the counts by prefix, empty if prefixes are not counted
+		 */
+		public Map<String, Long> getPrefixes() {
+			return prefixes;
+		}
+
+		/**
+		 * Writes the counts as lines of text, the values of each dimension with the highest counts first.
+		 * Dimensions without any value (such as the modules of an index without modules) are left out.
+		 * @param max the maximal number of values per dimension, zero or less for all values
+		 * @param lines receives the lines
+		 */
+		public void write(final int max, final Consumer<String> lines) {
+			lines.accept(String.format("Facets of %d results:", Long.valueOf(total)));
+			for (final Map.Entry<Dimension, Map<String, Long>> entry : counts.entrySet()) {
+				final Map<String, Long> values = entry.getValue();
+				if (!values.isEmpty() && !(values.size() == 1 && values.containsKey(NONE))) {
+					write(entry.getKey().name(), values, max, lines);
+				}
+			}
+			if (depth > 0) {
+				write(String.format("path (depth %d)", Integer.valueOf(depth)), prefixes, max, lines);
+			}
+		}
+
+		private static void write(final String name, final Map<String, Long> values, final int max, final Consumer<String> lines) {
+			lines.accept(String.format("  %s:", name));
+			final List<Map.Entry<String, Long>> sorted = new ArrayList<>(values.entrySet());
+			sorted.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()));
+			final int count = max > 0 ? Math.min(max, sorted.size()) : sorted.size();
+			for (int i = 0; i < count; i++) {
+				lines.accept(String.format("    %s: %d", sorted.get(i).getKey(), sorted.get(i).getValue()));
+			}
+			if (count < sorted.size()) {
+				lines.accept(String.format("    (%d more)", Integer.valueOf(sorted.size() - count)));
+			}
+		}
+	}
+}
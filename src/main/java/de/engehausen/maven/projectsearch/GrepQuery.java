@@ -0,0 +1,366 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.automaton.RegExp;
+
+/**
+ * Query for the documents of which the contents contain a match of a Java regular
+ * expression, as in {@link java.util.regex.Matcher#find()}. The expression is applied
+ * with {@link Pattern#MULTILINE}, so {@code ^} and {@code $} match at line boundaries.
+ * <p>The trigrams any match must contain are derived from the expression; if the index has
+ * {@link Constants#FIELD_TRIGRAMS}, only the documents with these trigrams are candidates.
+ * Otherwise, or if the expression requires no trigrams (such as {@code a.b} or {@code (?i)foo}),
+ * all documents are candidates. Each candidate is confirmed against its text: the stored
+ * contents, or else the indexed part of the file (up to the maximal file size of the index, or the
+ * chunk of the document), streamed line by line from memory-mapped windows. Without stored
+ * contents, matches spanning lines are not found.</p>
+ * <p>The query does not score; all matches have the same score.</p>
+ */
+public class GrepQuery extends Query {
+
+	/** maximal number of alternative strings tracked for a part of an expression */
+	protected static final int MAX_STRINGS = 16;
+
+	/** maximal number of trigrams required for a single string */
+	protected static final int MAX_TRIGRAMS = 32;
+
+	private static final Set<String> TEXT_FIELDS = Set.of(Constants.FIELD_ID, Constants.FIELD_CONTENTS, Constants.FIELD_ALIAS_OF,
+		Constants.FIELD_ARCHIVE, Constants.FIELD_ENTRIES, Constants.FIELD_SIZE, Constants.FIELD_END, Constants.FIELD_CHUNK_OFFSET);
+
+	protected final Pattern pattern;
+	protected final Query candidates;
+	protected final Path rootFolder;
+
+	/**
+	 * Creates the query.
+	 * @param regex the Java regular expression
+	 * @param rootFolder the root folder of the index, for reading files without stored contents
+	 * @throws ParseException if the expression is invalid
+	 */
+	public GrepQuery(final String regex, final Path rootFolder) throws ParseException {
+		try {
+			this.pattern = Pattern.compile(regex, Pattern.MULTILINE);
+		} catch (PatternSyntaxException e) {
+			throw new ParseException(e.getMessage());
+		}
+		this.candidates = trigrams(regex);
+		this.rootFolder = rootFolder.toAbsolutePath();
+	}
+
+	/**
+	 * Returns the compiled expression.
+	 * @return the pattern
+	 */
+	public Pattern getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Returns the query for the trigrams required by the expression.
+	 * @return the query on {@link Constants#FIELD_TRIGRAMS}, or {@code null} if no trigrams are required
+	 */
+	public Query getCandidates() {
+		return candidates;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Weight createWeight(final IndexSearcher searcher, final ScoreMode scoreMode, final float boost) throws IOException {
+		final Weight candidateWeight = candidates == null
+			? null
+			: searcher.createWeight(searcher.rewrite(candidates), ScoreMode.COMPLETE_NO_SCORES, 1f);
+		return new ConstantScoreWeight(this, boost) {
+			@Override
+			public Scorer scorer(final LeafReaderContext context) throws IOException {
+				final DocIdSetIterator approximation;
+				if (candidateWeight != null && context.reader().getFieldInfos().fieldInfo(Constants.FIELD_TRIGRAMS) != null) {
+					final Scorer scorer = candidateWeight.scorer(context);
+					if (scorer == null) {
+						return null;
+					}
+					approximation = scorer.iterator();
+				} else {
+					approximation = DocIdSetIterator.all(context.reader().maxDoc());
+				}
+				final StoredFields storedFields = context.reader().storedFields();
+				final TwoPhaseIterator confirmed = new TwoPhaseIterator(approximation) {
+					@Override
+					public boolean matches() throws IOException {
+						return find(storedFields.document(approximation.docID(), TEXT_FIELDS));
+					}
+					@Override
+					public float matchCost() {
+						// reading and scanning the text
+						return 1000f;
+					}
+				};
+				return new ConstantScoreScorer(this, score(), scoreMode, confirmed);
+			}
+			@Override
+			public boolean isCacheable(final LeafReaderContext context) {
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Checks if the text of a document contains a match: the stored contents, or the indexed
+	 * part of the file, read line by line. Alias documents are not read, they are found through
+	 * their contents, see {@link Aliases}. Archives have no text of their own, and their entries
+	 * cannot be read without their stored contents.
+	 * @param document the document with the stored {@link Constants#FIELD_ID}, {@link Constants#FIELD_CONTENTS},
+	 * {@link Constants#FIELD_ALIAS_OF}, {@link Constants#FIELD_ARCHIVE}, {@link Constants#FIELD_ENTRIES},
+	 * {@link Constants#FIELD_SIZE}, {@link Constants#FIELD_END} and {@link Constants#FIELD_CHUNK_OFFSET}
+	 * @return {@code true} if the text contains a match, {@code false} if not, if the file cannot be read,
+	 * is an alias or an archive
+	 */
+	protected boolean find(final Document document) {
+		final String contents = document.get(Constants.FIELD_CONTENTS);
+		if (contents != null) {
+			return pattern.matcher(contents).find();
+		}
+		final String id = document.get(Constants.FIELD_ID);
+		if (id == null || document.get(Constants.FIELD_ALIAS_OF) != null
+			|| document.get(Constants.FIELD_ARCHIVE) != null || document.get(Constants.FIELD_ENTRIES) != null) {
+			return false;
+		}
+		final long start = position(document, Constants.FIELD_CHUNK_OFFSET, 0);
+		final long end = position(document, Constants.FIELD_END, position(document, Constants.FIELD_SIZE, Long.MAX_VALUE));
+		final Path file = rootFolder.resolve(id);
+		try (
+			final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+			final BufferedReader reader = new BufferedReader(Indexer.openText(file, channel, start, end, null))
+		) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (pattern.matcher(line).find()) {
+					return true;
+				}
+			}
+			return false;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static long position(final Document document, final String field, final long defaultValue) {
+		final IndexableField value = document.getField(field);
+		return value != null ? value.numericValue().longValue() : defaultValue;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void visit(final QueryVisitor visitor) {
+		visitor.visitLeaf(this);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString(final String field) {
+		return Constants.REGEX_PREFIX + pattern.pattern();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(final Object other) {
+		return sameClassAs(other)
+			&& pattern.pattern().equals(((GrepQuery) other).pattern.pattern())
+			&& rootFolder.equals(((GrepQuery) other).rootFolder);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return Objects.hash(Integer.valueOf(classHash()), pattern.pattern(), rootFolder);
+	}
+
+	/**
+	 * Returns the query for the trigrams which any match of a Java regular expression
+	 * must contain. The expression is translated into a Lucene regular expression (see
+	 * {@link Whitelist#toRegExp(String)}) of which the syntax tree is analyzed: literal
+	 * strings and small sets of alternatives yield the trigrams to require, repetitions
+	 * and unsupported constructs require nothing.
+	 * @param regex the Java regular expression
+	 * @return the query for the required trigrams, or {@code null} if no trigrams are required
+	 */
+	protected static Query trigrams(final String regex) {
+		final String translated = Whitelist.toRegExp(regex);
+		if (translated == null) {
+			return null;
+		}
+		final RegExp parsed;
+		try {
+			parsed = new RegExp(translated, RegExp.NONE);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		return analyze(parsed).required();
+	}
+
+	protected static Info analyze(final RegExp node) {
+		switch (node.kind) {
+			case REGEXP_CHAR:
+				return Info.exact(Set.of(new String(Character.toChars(node.c))));
+			case REGEXP_STRING:
+				return Info.exact(Set.of(node.s));
+			case REGEXP_EMPTY:
+				return Info.exact(Set.of(""));
+			case REGEXP_CHAR_RANGE:
+				if (node.to - node.from < MAX_STRINGS) {
+					final Set<String> chars = new LinkedHashSet<>();
+					for (int c = node.from; c <= node.to; c++) {
+						chars.add(new String(Character.toChars(c)));
+					}
+					return Info.exact(chars);
+				}
+				return Info.ANY;
+			case REGEXP_CONCATENATION:
+				return concatenate(analyze(node.exp1), analyze(node.exp2));
+			case REGEXP_UNION:
+				return union(analyze(node.exp1), analyze(node.exp2));
+			case REGEXP_INTERSECTION:
+				return Info.match(and(analyze(node.exp1).required(), analyze(node.exp2).required()));
+			case REGEXP_OPTIONAL:
+				final Info optional = analyze(node.exp1);
+				return optional.exact != null ? union(optional, Info.exact(Set.of(""))) : Info.ANY;
+			case REGEXP_REPEAT_MIN:
+			case REGEXP_REPEAT_MINMAX:
+				// at least one occurrence is required
+				return node.min > 0 ? Info.match(analyze(node.exp1).required()) : Info.ANY;
+			default:
+				return Info.ANY;
+		}
+	}
+
+	private static Info concatenate(final Info first, final Info second) {
+		if (first.exact != null && second.exact != null && first.exact.size() * second.exact.size() <= MAX_STRINGS) {
+			final Set<String> result = new LinkedHashSet<>();
+			for (final String prefix : first.exact) {
+				for (final String suffix : second.exact) {
+					result.add(prefix + suffix);
+				}
+			}
+			return Info.exact(result);
+		}
+		return Info.match(and(first.required(), second.required()));
+	}
+
+	private static Info union(final Info first, final Info second) {
+		if (first.exact != null && second.exact != null && first.exact.size() + second.exact.size() <= MAX_STRINGS) {
+			final Set<String> result = new LinkedHashSet<>(first.exact);
+			result.addAll(second.exact);
+			return Info.exact(result);
+		}
+		return Info.match(or(first.required(), second.required()));
+	}
+
+	private static Query and(final Query first, final Query second) {
+		if (first == null) {
+			return second;
+		} else if (second == null) {
+			return first;
+		}
+		return new BooleanQuery.Builder()
+			.add(first, BooleanClause.Occur.FILTER)
+			.add(second, BooleanClause.Occur.FILTER)
+			.build();
+	}
+
+	private static Query or(final Query first, final Query second) {
+		if (first == null || second == null) {
+			return null;
+		}
+		return new BooleanQuery.Builder()
+			.add(first, BooleanClause.Occur.SHOULD)
+			.add(second, BooleanClause.Occur.SHOULD)
+			.build();
+	}
+
+	/**
+	 * What is known about the strings matched by a part of an expression: either
+	 * the exact set of strings, or a query for the trigrams the strings contain.
+	 */
+	protected static final class Info {
+
+		static final Info ANY = new Info(null, null);
+
+		final Set<String> exact;
+		final Query match;
+
+		private Info(final Set<String> exact, final Query match) {
+			this.exact = exact;
+			this.match = match;
+		}
+
+		static Info exact(final Set<String> strings) {
+			return new Info(strings, null);
+		}
+
+		static Info match(final Query query) {
+			return query == null ? ANY : new Info(null, query);
+		}
+
+		/**
+		 * Returns the query for the trigrams required by the strings.
+		 * @return the query, or {@code null} if nothing is required
+		 */
+		Query required() {
+			if (exact == null) {
+				return match;
+			}
+			final BooleanQuery.Builder alternatives = new BooleanQuery.Builder();
+			for (final String str : exact) {
+				if (str.length() < TrigramAnalyzer.LENGTH) {
+					// a string without trigrams
+					return null;
+				}
+				final Set<String> grams = new LinkedHashSet<>();
+				for (int i = 0; i + TrigramAnalyzer.LENGTH <= str.length() && grams.size() < MAX_TRIGRAMS; i++) {
+					grams.add(str.substring(i, i + TrigramAnalyzer.LENGTH));
+				}
+				final BooleanQuery.Builder all = new BooleanQuery.Builder();
+				grams.forEach(gram -> all.add(new TermQuery(new Term(Constants.FIELD_TRIGRAMS, gram)), BooleanClause.Occur.FILTER));
+				alternatives.add(all.build(), BooleanClause.Occur.SHOULD);
+			}
+			return exact.size() == 1 ? alternatives.build().clauses().get(0).getQuery() : alternatives.build();
+		}
+	}
+}
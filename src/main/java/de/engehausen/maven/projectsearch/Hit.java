@@ -0,0 +1,118 @@
+package de.engehausen.maven.projectsearch;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A search hit: the absolute path of the matching file and the number
+ * of its document in the index.
+ * <p>The hit of a file indexed as chunks has the documents and the numbers
+ * of the matching chunks, see {@link Chunks}.</p>
+ */
+public class Hit {
+
+	private static final int[] NO_CHUNKS = new int[0];
+
+	protected final String path;
+	protected final int[] docs;
+	protected final int[] chunks;
+
+	/**
+	 * Creates the hit.
+	 * @param path the absolute path of the file
+	 * @param doc the document number
+	 */
+	public Hit(final String path, final int doc) {
+		this(path, new int[] { doc }, NO_CHUNKS);
+	}
+
+	/**
+	 * Creates the hit of the chunks of a file.
+	 * @param path the absolute path of the file
+	 * @param docs the document numbers of the matching chunks
+	 * @param chunks the numbers of the matching chunks, empty if the file is not indexed as chunks
+	 */
+	public Hit(final String path, final int[] docs, final int[] chunks) {
+		this.path = path;
+		this.docs = docs;
+		this.chunks = chunks;
+	}
+
+	/**
+	 * Returns the absolute path of the file.
+	 * @return the path
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns the number of the document of the file in the index.
+	 * @return the document number, the first matching chunk for a file indexed as chunks
+	 */
+	public int getDoc() {
+		return docs[0];
+	}
+
+	/**
+	 * Returns the numbers of the matching documents of the file in the index.
+	 * @return the document numbers, one per matching chunk for a file indexed as chunks
+	 */
+	public int[] getDocs() {
+		return docs;
+	}
+
+	/**
+	 * Returns the numbers of the matching chunks.
+	 * @return the chunk numbers in ascending order, empty if the file is not indexed as chunks
+	 */
+	public int[] getChunks() {
+		return chunks;
+	}
+
+	/**
+	 * Merges the hit with another hit of the same file.
+	 * @param other the other hit
+	 * @return the hit with the documents and chunks of both hits
+	 */
+	public Hit merge(final Hit other) {
+		return new Hit(
+			path,
+			IntStream.concat(Arrays.stream(docs), Arrays.stream(other.docs)).toArray(),
+			IntStream.concat(Arrays.stream(chunks), Arrays.stream(other.chunks)).sorted().distinct().toArray()
+		);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(final Object other) {
+		return other instanceof Hit && path.equals(((Hit) other).path) && Arrays.equals(docs, ((Hit) other).docs);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * path.hashCode() + Arrays.hashCode(docs);
+	}
+
+	/**
+	 * Returns the path, followed by the numbers of the matching chunks
+	 * as {@code (chunks 0, 3)} for a file indexed as chunks.
+	 * @return the path and the matching chunks
+	 */
+	@Override
+	public String toString() {
+		if (chunks.length == 0) {
+			return path;
+		}
+		return Arrays
+			.stream(chunks)
+			.mapToObj(Integer::toString)
+			.collect(Collectors.joining(", ", path + " (chunks ", ")"));
+	}
+}
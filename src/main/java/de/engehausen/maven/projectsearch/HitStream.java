@@ -0,0 +1,111 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Streams all documents matching a query in path order, without scoring
+ * and without a limit on the number of hits.
+ * <p>The matches of each segment are iterated in document order, which is
+ * path order in an index sorted by {@link Indexer#INDEX_SORT}; the segments
+ * are merged by the {@link Constants#FIELD_ID} doc values. Memory use only
+ * depends on the number of segments. Indexes built by older versions must be
+ * rebuilt, see {@link Indexer#needsRebuild(java.nio.file.Path)}.</p>
+ */
+public class HitStream {
+
+	protected final IndexSearcher searcher;
+	protected final Query query;
+
+	/**
+	 * Creates the stream.
+	 * @param searcher the searcher
+	 * @param query the query
+	 */
+	public HitStream(final IndexSearcher searcher, final Query query) {
+		this.searcher = searcher;
+		this.query = query;
+	}
+
+	/**
+	 * Passes all hits to the given consumer, in path order.
+	 * @param consumer the consumer of the hits
+	 * @return the number of hits
+	 * @throws IOException in case of error
+	 */
+	public long forEach(final Consumer consumer) throws IOException {
+		final Weight weight = searcher.createWeight(searcher.rewrite(query), ScoreMode.COMPLETE_NO_SCORES, 1f);
+		final PriorityQueue<Cursor> queue = new PriorityQueue<>(Comparator.comparing(cursor -> cursor.id));
+		for (final LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+			final Scorer scorer = weight.scorer(leaf);
+			if (scorer != null) {
+				final Cursor cursor = new Cursor(leaf, scorer.iterator());
+				if (cursor.next()) {
+					queue.add(cursor);
+				}
+			}
+		}
+		long count = 0;
+		while (!queue.isEmpty()) {
+			final Cursor cursor = queue.poll();
+			consumer.accept(cursor.id.utf8ToString(), cursor.leaf.docBase + cursor.doc);
+			count++;
+			if (cursor.next()) {
+				queue.add(cursor);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Consumer of the hits.
+	 */
+	@FunctionalInterface
+	public interface Consumer {
+		/**
+		 * Accepts a hit.
+		 * @param id the identifier of the file, see {@link Constants#FIELD_ID}
+		 * @param doc the document number
+		 * @throws IOException in case of error
+		 */
+		void accept(String id, int doc) throws IOException;
+	}
+
+	private static final class Cursor {
+		final LeafReaderContext leaf;
+		final DocIdSetIterator matches;
+		final Bits liveDocs;
+		final SortedDocValues ids;
+		int doc;
+		BytesRef id;
+		Cursor(final LeafReaderContext leaf, final DocIdSetIterator matches) throws IOException {
+			this.leaf = leaf;
+			this.matches = matches;
+			this.liveDocs = leaf.reader().getLiveDocs();
+			this.ids = DocValues.getSorted(leaf.reader(), Constants.FIELD_ID);
+		}
+		boolean next() throws IOException {
+			do {
+				doc = matches.nextDoc();
+			} while (doc != DocIdSetIterator.NO_MORE_DOCS && liveDocs != null && !liveDocs.get(doc));
+			if (doc == DocIdSetIterator.NO_MORE_DOCS) {
+				return false;
+			}
+			id = ids.advanceExact(doc) ? ids.lookupOrd(ids.ordValue()) : new BytesRef();
+			return true;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+
+/**
+ * Adds the parts of identifiers to the token stream, at the position of the identifier.
+ * Identifiers are split at the separators of {@link CodeAnalyzer#SEPARATORS} and at
+ * camel case boundaries ({@code getHTTPServer} has the parts {@code get}, {@code HTTP}
+ * and {@code Server}). Besides the identifier and its parts, all contiguous runs of parts
+ * are added as they appear in the identifier, for example {@code HTTPServer} or
+ * {@code get_user}. Identifiers with more than {@link #MAX_JOINED_PARTS} parts only
+ * get their single parts added.
+ */
+public final class IdentifierSplitFilter extends TokenFilter {
+
+	/** maximal number of parts of an identifier for adding runs of parts */
+	public static final int MAX_JOINED_PARTS = 8;
+
+	private final CharTermAttribute term = addAttribute(CharTermAttribute.class);
+	private final PositionIncrementAttribute positionIncrement = addAttribute(PositionIncrementAttribute.class);
+	private final Deque<String> pending = new ArrayDeque<>();
+	private State state;
+
+	/**
+	 * Creates the filter.
+	 * @param input the token stream of identifiers
+	 */
+	public IdentifierSplitFilter(final TokenStream input) {
+		super(input);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean incrementToken() throws IOException {
+		if (!pending.isEmpty()) {
+			restoreState(state);
+			term.setEmpty().append(pending.poll());
+			positionIncrement.setPositionIncrement(0);
+			return true;
+		}
+		if (!input.incrementToken()) {
+			return false;
+		}
+		final String identifier = term.toString();
+		final List<int[]> parts = split(identifier);
+		if (parts.size() > 1) {
+			final Set<String> variants = new LinkedHashSet<>();
+			final int maxRun = parts.size() > MAX_JOINED_PARTS ? 1 : parts.size() - 1;
+			for (int run = 1; run <= maxRun; run++) {
+				for (int i = 0; i + run <= parts.size(); i++) {
+					variants.add(identifier.substring(parts.get(i)[0], parts.get(i + run - 1)[1]));
+				}
+			}
+			variants.remove(identifier);
+			pending.addAll(variants);
+			state = captureState();
+		}
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void reset() throws IOException {
+		super.reset();
+		pending.clear();
+		state = null;
+	}
+
+	/**
+	 * Splits an identifier into its parts.
+	 * @param identifier the identifier
+	 * @return the start and end index of each part
+	 */
+	static List<int[]> split(final String identifier) {
+		final List<int[]> result = new ArrayList<>();
+		int start = -1;
+		for (int i = 0; i < identifier.length(); i++) {
+			final char c = identifier.charAt(i);
+			if (CodeAnalyzer.isSeparator(c)) {
+				if (start >= 0) {
+					result.add(new int[] { start, i });
+					start = -1;
+				}
+			} else {
+				if (start >= 0 && isCamelCaseBoundary(identifier, i)) {
+					result.add(new int[] { start, i });
+					start = -1;
+				}
+				if (start < 0) {
+					start = i;
+				}
+			}
+		}
+		if (start >= 0) {
+			result.add(new int[] { start, identifier.length() });
+		}
+		return result;
+	}
+
+	private static boolean isCamelCaseBoundary(final String identifier, final int i) {
+		final char previous = identifier.charAt(i - 1);
+		final char c = identifier.charAt(i);
+		if (!Character.isUpperCase(c)) {
+			return false;
+		}
+		if (Character.isLowerCase(previous) || Character.isDigit(previous)) {
+			// fooBar, utf8Decoder
+			return true;
+		}
+		// HTTPServer: the last upper case letter starts the next part
+		return Character.isUpperCase(previous)
+			&& i + 1 < identifier.length()
+			&& Character.isLowerCase(identifier.charAt(i + 1));
+	}
+}
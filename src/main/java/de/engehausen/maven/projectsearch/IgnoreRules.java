@@ -0,0 +1,431 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.CharacterRunAutomaton;
+import org.apache.lucene.util.automaton.Operations;
+import org.apache.lucene.util.automaton.RegExp;
+import org.apache.lucene.util.automaton.TooComplexToDeterminizeException;
+
+/**
+ * Rules for the files and folders not to index. Paths are checked by their identifier
+ * (see {@link Constants#FIELD_ID}), folders with a trailing {@code /}.
+ * <p>Plain folder names (the index folder and the {@code ignoreFolders}) and plain
+ * names in the root ignore files are looked up in maps of names, which apply at any depth.
+ * All other rules are glob patterns of {@code .gitignore} files, {@code .ignore} files and
+ * {@code .git/info/exclude}, which are read when the folder containing them is first checked.
+ * As with git, the last matching rule decides: the rules are kept in the order they are read
+ * (the ignore files of a folder after those of the folders containing it), and a path matched
+ * by a re-including pattern (starting with {@code !}) is ignored if a later rule ignores it.
+ * The patterns are compiled into a single automaton for ignored paths and one for re-included
+ * paths; only paths matched by both are checked against the rules one by one, from the last.
+ * Paths are checked folder by folder: the contents of an ignored folder cannot be re-included.</p>
+ * <p>Changes of ignore files after they have been read are not taken into account.</p>
+ */
+public class IgnoreRules {
+
+	/** names of the files with ignore rules in each folder */
+	public static final List<String> IGNORE_FILES = List.of(".gitignore", ".ignore");
+
+	/** file with ignore rules of the repository, relative to the root folder */
+	public static final String EXCLUDE_FILE = ".git/info/exclude";
+
+	private static final String GLOB_CHARACTERS = "*?[\\";
+
+	protected final Path rootFolder;
+	protected final boolean ignoreFiles;
+	protected final Map<String, Integer> folderNames;
+	protected final Map<String, Integer> names;
+	private final List<Rule> rules;
+	private final Set<String> loaded;
+	private final Map<String, Boolean> folders;
+	private int order;
+	private volatile Compiled compiled;
+
+	/**
+	 * Creates the rules.
+	 * @param rootFolder the root folder of the index
+	 * @param indexFolder the name of the index folder, ignored at any depth
+	 * @param ignoreFolders comma-separated names or glob patterns of folders to ignore at any depth, may be {@code null}
+	 * @param ignoreFiles {@code true} to also apply the rules of ignore files
+	 */
+	public IgnoreRules(final Path rootFolder, final String indexFolder, final String ignoreFolders, final boolean ignoreFiles) {
+		this.rootFolder = rootFolder.toAbsolutePath();
+		this.ignoreFiles = ignoreFiles;
+		this.folderNames = new HashMap<>();
+		this.names = new HashMap<>();
+		this.rules = new ArrayList<>();
+		this.loaded = ConcurrentHashMap.newKeySet();
+		this.folders = new ConcurrentHashMap<>();
+		addFolder(indexFolder);
+		if (ignoreFolders != null) {
+			for (final String folder : ignoreFolders.split(",")) {
+				addFolder(folder.trim());
+			}
+		}
+		if (ignoreFiles) {
+			read("", this.rootFolder.resolve(EXCLUDE_FILE));
+		}
+		compiled = compile();
+		if (ignoreFiles) {
+			// the names of the root ignore files are only added here
+			load("");
+		}
+	}
+
+	/**
+	 * Checks if a file or folder is ignored, or is inside an ignored folder. The ignore
+	 * files of the folders containing the path are read if they have not been read yet.
+	 * @param id the identifier of the file or folder, relative to the root folder
+	 * @param folder {@code true} if the path is a folder
+	 * @return {@code true} if the path is not indexed
+	 */
+	public boolean isIgnored(final String id, final boolean folder) {
+		if (id.isEmpty()) {
+			return false;
+		}
+		final int separator = id.lastIndexOf('/');
+		final String dir = separator < 0 ? "" : id.substring(0, separator);
+		if (ignoreFiles) {
+			load(dir);
+		}
+		return isIgnoredFolder(dir) || matches(id, id.substring(separator + 1), folder);
+	}
+
+	/**
+	 * Checks if a folder or one of the folders containing it is ignored. The results are kept,
+	 * as they only depend on the ignore files of the containing folders, which have been read.
+	 * @param dir the identifier of the folder, empty for the root folder
+	 * @return {@code true} if the folder is ignored
+	 */
+	private boolean isIgnoredFolder(final String dir) {
+		if (dir.isEmpty()) {
+			return false;
+		}
+		Boolean result = folders.get(dir);
+		if (result == null) {
+			final int separator = dir.lastIndexOf('/');
+			result = Boolean.valueOf(isIgnoredFolder(separator < 0 ? "" : dir.substring(0, separator))
+				|| matches(dir, dir.substring(separator + 1), true));
+			folders.put(dir, result);
+		}
+		return result.booleanValue();
+	}
+
+	/**
+	 * Checks if the last rule matching a file or folder ignores it.
+	 * @param id the identifier of the file or folder
+	 * @param name the name of the file or folder
+	 * @param folder {@code true} if the path is a folder
+	 * @return {@code true} if the path is ignored
+	 */
+	private boolean matches(final String id, final String name, final boolean folder) {
+		final String key = folder ? id + '/' : id;
+		final Compiled current = compiled;
+		final int named = Math.max(folder ? folderNames.getOrDefault(name, -1) : -1, names.getOrDefault(name, -1));
+		if (!current.included.matches(key)) {
+			return named >= 0 || current.ignored.matches(key);
+		}
+		for (int i = current.rules.size() - 1; i >= 0 && current.rules.get(i).order > named; i--) {
+			final Rule rule = current.rules.get(i);
+			if (rule.matches(key)) {
+				return !rule.negated;
+			}
+		}
+		return named >= 0;
+	}
+
+	/**
+	 * Reads the ignore files of a folder and of the folders containing it.
+	 * @param dir the identifier of the folder, empty for the root folder
+	 */
+	protected void load(final String dir) {
+		if (loaded.contains(dir)) {
+			return;
+		}
+		if (!dir.isEmpty()) {
+			final int separator = dir.lastIndexOf('/');
+			load(separator < 0 ? "" : dir.substring(0, separator));
+		}
+		synchronized (this) {
+			if (loaded.add(dir)) {
+				final Path folder = dir.isEmpty() ? rootFolder : rootFolder.resolve(dir);
+				boolean changed = false;
+				for (final String file : IGNORE_FILES) {
+					changed |= read(dir, folder.resolve(file));
+				}
+				if (changed) {
+					compiled = compile();
+				}
+			}
+		}
+	}
+
+	private void addFolder(final String folder) {
+		if (folder.isEmpty()) {
+			return;
+		}
+		if (isName(folder)) {
+			folderNames.put(folder, Integer.valueOf(order++));
+		} else {
+			add("", folder.startsWith("/") ? folder + '/' : "**/" + folder + '/');
+		}
+	}
+
+	private boolean read(final String dir, final Path file) {
+		if (!Files.isRegularFile(file)) {
+			return false;
+		}
+		final List<String> lines;
+		try {
+			lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			return false;
+		}
+		boolean changed = false;
+		for (final String line : lines) {
+			changed |= add(dir, line);
+		}
+		return changed;
+	}
+
+	/**
+	 * Adds a rule in the syntax of {@code .gitignore} files.
+	 * @param dir the identifier of the folder of the rule, empty for the root folder
+	 * @param line the rule
+	 * @return {@code true} if a rule was added
+	 */
+	protected boolean add(final String dir, final String line) {
+		String pattern = stripTrailingSpaces(line);
+		if (pattern.isEmpty() || pattern.startsWith("#")) {
+			return false;
+		}
+		final boolean negated = pattern.startsWith("!");
+		if (negated) {
+			pattern = pattern.substring(1);
+		}
+		final boolean folderOnly = pattern.endsWith("/");
+		if (folderOnly) {
+			pattern = pattern.substring(0, pattern.length() - 1);
+		}
+		final boolean anchored = pattern.indexOf('/') >= 0;
+		if (pattern.startsWith("/")) {
+			pattern = pattern.substring(1);
+		}
+		if (pattern.isEmpty()) {
+			return false;
+		}
+		if (!negated && !anchored && dir.isEmpty() && isName(pattern)) {
+			(folderOnly ? folderNames : names).put(pattern, Integer.valueOf(order++));
+			return true;
+		}
+		final StringBuilder regex = new StringBuilder();
+		if (!dir.isEmpty()) {
+			appendLiteral(regex, dir);
+			regex.append('/');
+		}
+		if (!anchored) {
+			regex.append("(.*/)?");
+		}
+		appendGlob(regex, pattern);
+		regex.append(folderOnly ? "/" : "/?");
+		try {
+			rules.add(new Rule(new RegExp(regex.toString(), RegExp.NONE).toAutomaton(), negated, order++));
+			return true;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	private static boolean isName(final String str) {
+		for (int i = 0; i < str.length(); i++) {
+			if (str.charAt(i) == '/' || GLOB_CHARACTERS.indexOf(str.charAt(i)) >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String stripTrailingSpaces(final String line) {
+		int end = line.length();
+		while (end > 0 && line.charAt(end - 1) == ' ' && !(end > 1 && line.charAt(end - 2) == '\\')) {
+			end--;
+		}
+		return line.substring(0, end);
+	}
+
+	/**
+	 * Appends the Lucene regular expression for a glob pattern of a {@code .gitignore} file:
+	 * {@code *} and {@code ?} do not match {@code /}, a leading {@code **}{@code /} matches any
+	 * folders, a trailing {@code /**} anything inside and {@code /**}{@code /} zero or more folders.
+	 * @param regex the regular expression to append to
+	 * @param glob the glob pattern
+	 */
+	protected static void appendGlob(final StringBuilder regex, final String glob) {
+		int i = 0;
+		while (i < glob.length()) {
+			final char c = glob.charAt(i);
+			if (i == 0 && glob.startsWith("**/")) {
+				regex.append("(.*/)?");
+				i += 3;
+			} else if (glob.startsWith("/**/", i)) {
+				regex.append("/(.*/)?");
+				i += 4;
+			} else if (glob.startsWith("/**", i) && i + 3 == glob.length()) {
+				regex.append("/.*");
+				i += 3;
+			} else if (c == '*') {
+				regex.append("[^/]*");
+				i++;
+				while (i < glob.length() && glob.charAt(i) == '*') {
+					i++;
+				}
+			} else if (c == '?') {
+				regex.append("[^/]");
+				i++;
+			} else if (c == '[') {
+				i = appendClass(regex, glob, i);
+			} else if (c == '\\' && i + 1 < glob.length()) {
+				appendLiteral(regex, glob.substring(i + 1, i + 2));
+				i += 2;
+			} else {
+				appendLiteral(regex, glob.substring(i, i + 1));
+				i++;
+			}
+		}
+	}
+
+	private static int appendClass(final StringBuilder regex, final String glob, final int start) {
+		int i = start + 1;
+		final boolean negated = i < glob.length() && (glob.charAt(i) == '!' || glob.charAt(i) == '^');
+		if (negated) {
+			i++;
+		}
+		final int first = i;
+		while (i < glob.length() && (glob.charAt(i) != ']' || i == first)) {
+			i++;
+		}
+		if (i >= glob.length()) {
+			// no closing bracket: a literal bracket
+			appendLiteral(regex, "[");
+			return start + 1;
+		}
+		regex.append('[');
+		if (negated) {
+			regex.append('^');
+		}
+		for (int j = first; j < i; j++) {
+			final char c = glob.charAt(j);
+			if (c == '-' && j > first && j + 1 < i) {
+				regex.append(c);
+			} else {
+				appendLiteral(regex, String.valueOf(c));
+			}
+		}
+		regex.append(']');
+		return i + 1;
+	}
+
+	private static void appendLiteral(final StringBuilder regex, final String str) {
+		for (int i = 0; i < str.length(); i++) {
+			final char c = str.charAt(i);
+			if (!Character.isLetterOrDigit(c)) {
+				regex.append('\\');
+			}
+			regex.append(c);
+		}
+	}
+
+	private Compiled compile() {
+		final List<Automaton> ignored = new ArrayList<>();
+		final List<Automaton> included = new ArrayList<>();
+		for (final Rule rule : rules) {
+			(rule.negated ? included : ignored).add(rule.automaton);
+		}
+		return new Compiled(Matcher.of(ignored), Matcher.of(included), List.copyOf(rules));
+	}
+
+	/**
+	 * A glob pattern with its position in the order of the rules.
+	 */
+	private static final class Rule {
+		final Automaton automaton;
+		final boolean negated;
+		final int order;
+		private CharacterRunAutomaton runAutomaton;
+		Rule(final Automaton automaton, final boolean negated, final int order) {
+			this.automaton = automaton;
+			this.negated = negated;
+			this.order = order;
+		}
+		boolean matches(final String key) {
+			CharacterRunAutomaton run = runAutomaton;
+			if (run == null) {
+				// benign race, the automaton is immutable
+				run = new CharacterRunAutomaton(automaton);
+				runAutomaton = run;
+			}
+			return run.run(key);
+		}
+	}
+
+	/**
+	 * The compiled automata for ignored and re-included paths, and the rules in their order.
+	 */
+	private static final class Compiled {
+		final Matcher ignored;
+		final Matcher included;
+		final List<Rule> rules;
+		Compiled(final Matcher ignored, final Matcher included, final List<Rule> rules) {
+			this.ignored = ignored;
+			this.included = included;
+			this.rules = rules;
+		}
+	}
+
+	/**
+	 * Matches paths against the union of automata; if the union is too complex
+	 * to determinize, against each automaton.
+	 */
+	private static final class Matcher {
+
+		private final List<CharacterRunAutomaton> automata;
+
+		private Matcher(final List<CharacterRunAutomaton> automata) {
+			this.automata = automata;
+		}
+
+		static Matcher of(final List<Automaton> automata) {
+			final List<CharacterRunAutomaton> result = new ArrayList<>();
+			if (!automata.isEmpty()) {
+				try {
+					result.add(new CharacterRunAutomaton(Operations.determinize(Operations.union(automata), Operations.DEFAULT_DETERMINIZE_WORK_LIMIT)));
+				} catch (TooComplexToDeterminizeException e) {
+					for (final Automaton automaton : automata) {
+						result.add(new CharacterRunAutomaton(automaton));
+					}
+				}
+			}
+			return new Matcher(result);
+		}
+
+		boolean matches(final String key) {
+			for (final CharacterRunAutomaton automaton : automata) {
+				if (automaton.run(key)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -1,6 +1,12 @@
 package de.engehausen.maven.projectsearch;
 
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Objects;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Mojo;
@@ -17,19 +23,267 @@ public class IndexMojo extends AbstractSearchMojo {
 	@Parameter(name = Constants.PARAM_IGNORE_FOLDERS, property = Constants.PARAM_IGNORE_FOLDERS, defaultValue = Constants.DEFAULT_IGNORE_FOLDERS, required = false)
 	protected String ignoreFolders;
 
+	/**
+	 * The number of threads reading and analyzing files. With one thread (the default),
+	 * files are indexed on the thread walking the folders. The shards of a sharded index
+	 * share the threads.
+	 */
+	@Parameter(name = Constants.PARAM_THREADS, property = Constants.PARAM_THREADS, defaultValue = Constants.DEFAULT_THREADS, required = false)
+	protected int threads;
+
+	/**
+	 * Flag to only update the index with changed files. Unchanged files are skipped,
+	 * and files no longer existing are removed from the index.
+	 */
+	@Parameter(name = Constants.PARAM_INCREMENTAL, property = Constants.PARAM_INCREMENTAL, defaultValue = "false", required = false)
+	protected boolean incremental;
+
+	/**
+	 * The charset of text files without byte order mark. If not specified,
+	 * UTF-8 is detected and ISO-8859-1 is used otherwise.
+	 */
+	@Parameter(name = Constants.PARAM_ENCODING, property = Constants.PARAM_ENCODING, required = false)
+	protected String encoding;
+
+	/**
+	 * The size in bytes above which files are memory-mapped for indexing.
+	 */
+	@Parameter(name = Constants.PARAM_MAP_THRESHOLD, property = Constants.PARAM_MAP_THRESHOLD, defaultValue = Constants.DEFAULT_MAP_THRESHOLD, required = false)
+	protected long mapThreshold;
+
+	/**
+	 * Flag to store the text of files (or chunks) up to the context size, so that search results
+	 * can show the matching lines with {@code -Dcontext=true}. An existing index with stored text keeps
+	 * storing it when updated.
+	 */
+	@Parameter(name = Constants.PARAM_CONTEXT, property = Constants.PARAM_CONTEXT, defaultValue = "false", required = false)
+	protected boolean context;
+
+	/**
+	 * The maximal number of bytes indexed per file; larger files are truncated.
+	 * Zero means no limit.
+	 */
+	@Parameter(name = Constants.PARAM_MAX_FILE_SIZE, property = Constants.PARAM_MAX_FILE_SIZE, defaultValue = Constants.DEFAULT_MAX_FILE_SIZE, required = false)
+	protected long maxFileSize;
+
+	/**
+	 * The size in bytes above which files are indexed as chunks of about this size,
+	 * each a document of its own; search results collapse the chunks of a file into one result.
+	 * Zero means files are indexed as a whole.
+	 */
+	@Parameter(name = Constants.PARAM_CHUNK_SIZE, property = Constants.PARAM_CHUNK_SIZE, defaultValue = Constants.DEFAULT_CHUNK_SIZE, required = false)
+	protected long chunkSize;
+
+	/**
+	 * The number of lines at the end of a chunk which are repeated at the start of the next chunk,
+	 * so that matches spanning chunks are found.
+	 */
+	@Parameter(name = Constants.PARAM_CHUNK_OVERLAP, property = Constants.PARAM_CHUNK_OVERLAP, defaultValue = Constants.DEFAULT_CHUNK_OVERLAP, required = false)
+	protected int chunkOverlap;
+
+	/**
+	 * Flag to index the trigrams of the contents. Regular expression queries ({@code regex:} or {@code grep:})
+	 * then only check the files containing the trigrams required by the expression, instead of all files.
+	 * An existing index with trigrams keeps them when updated.
+	 */
+	@Parameter(name = Constants.PARAM_TRIGRAMS, property = Constants.PARAM_TRIGRAMS, defaultValue = "false", required = false)
+	protected boolean trigrams;
+
+	/**
+	 * Flag to index the text entries of zip and jar archives, such as {@code -sources.jar} files. Each
+	 * entry is a result of its own, shown as {@code archive!/entry}. Archives are streamed without
+	 * extracting them, several at a time with more than one thread; unchanged archives are not read
+	 * again when updating the index. An existing index with archive entries keeps them when updated.
+	 */
+	@Parameter(name = Constants.PARAM_ARCHIVES, property = Constants.PARAM_ARCHIVES, defaultValue = "false", required = false)
+	protected boolean archives;
+
+	/**
+	 * Flag to analyze identical contents only once. Further files with the same contents are indexed
+	 * as aliases, which are still found individually; this shrinks indexes of trees with many copies
+	 * of the same files. Matching lines are only shown for the file indexed with the contents.
+	 * An existing deduplicated index stays deduplicated when updated.
+	 */
+	@Parameter(name = Constants.PARAM_DEDUP, property = Constants.PARAM_DEDUP, defaultValue = "false", required = false)
+	protected boolean dedup;
+
+	/**
+	 * The shards of the index: comma-separated path prefixes relative to the root folder, each indexed into
+	 * a shard of its own, or {@code *} for one shard per top-level folder. Files outside of the prefixes are
+	 * indexed into a further shard. Shards are built in parallel. {@code none} switches back to a single index.
+	 * If not specified, an existing index keeps its shards. Changing the shards rebuilds the index.
+	 */
+	@Parameter(name = Constants.PARAM_SHARDS, property = Constants.PARAM_SHARDS, required = false)
+	protected String shards;
+
+	/**
+	 * The path prefix of the only shard to index, for rebuilding or updating a single shard of a sharded index.
+	 */
+	@Parameter(name = Constants.PARAM_SHARD, property = Constants.PARAM_SHARD, required = false)
+	protected String shard;
+
+	/**
+	 * The profile of the index: {@code standard}, {@code fast} for a fast build (large RAM buffer, no compound
+	 * files, no norms) or {@code compact} for a small index searched fast (best compression of stored fields,
+	 * no norms, merged into one segment). The settings of the profile can be
+	 * overridden individually. If none of these settings is specified, an existing index keeps its schema;
+	 * otherwise an index with a different schema (norms) is rebuilt.
+	 */
+	@Parameter(name = Constants.PARAM_PROFILE, property = Constants.PARAM_PROFILE, required = false)
+	protected String profile;
+
+	/**
+	 * The size of the RAM buffer of the index writer in megabytes, overriding the profile.
+	 */
+	@Parameter(name = Constants.PARAM_RAM_BUFFER, property = Constants.PARAM_RAM_BUFFER, required = false)
+	protected Double ramBuffer;
+
+	/**
+	 * Flag to write segments as compound files, overriding the profile.
+	 */
+	@Parameter(name = Constants.PARAM_COMPOUND_FILES, property = Constants.PARAM_COMPOUND_FILES, required = false)
+	protected Boolean compoundFiles;
+
+	/**
+	 * Flag to index norms of the contents and identifiers, overriding the profile.
+	 * Without norms, the length of files does not affect the ranking.
+	 */
+	@Parameter(name = Constants.PARAM_NORMS, property = Constants.PARAM_NORMS, required = false)
+	protected Boolean norms;
+
+	/**
+	 * Flag to write stored fields with the best compression instead of the best speed, overriding the profile.
+	 */
+	@Parameter(name = Constants.PARAM_BEST_COMPRESSION, property = Constants.PARAM_BEST_COMPRESSION, required = false)
+	protected Boolean bestCompression;
+
+	/**
+	 * The number of segments to merge the index into after building, zero for no merge, overriding the profile.
+	 */
+	@Parameter(name = Constants.PARAM_MAX_SEGMENTS, property = Constants.PARAM_MAX_SEGMENTS, required = false)
+	protected Integer maxSegments;
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public void execute() throws MojoExecutionException {
 		final Path indexPath = getIndex(root, indexFolder);
+		index(indexPath, layout(indexPath));
+	}
+
+	/**
+	 * Builds or updates the index with the configured settings.
+	 * @param indexPath the index folder
+	 * @param layout the shards of the index, {@code null} for a single index
+	 * @throws MojoExecutionException in case of error
+	 */
+	protected void index(final Path indexPath, final Shards layout) throws MojoExecutionException {
+		final Charset charset;
+		try {
+			charset = encoding != null ? Charset.forName(encoding) : null;
+		} catch (IllegalCharsetNameException|UnsupportedCharsetException e) {
+			throw new MojoExecutionException(String.format("Unsupported encoding: %s", encoding), e);
+		}
+		final IndexProfile indexProfile = createProfile();
+		String only = null;
+		if (shard != null) {
+			only = layout != null ? layout.find(shard) : null;
+			if (only == null) {
+				throw new MojoExecutionException(String.format("Unknown shard: %s", shard));
+			}
+		}
+		index(indexPath, layout, only, path -> createIndexer(path, charset, indexProfile));
+	}
+
+	/**
+	 * Creates the indexer for an index folder.
+	 * @param path the index folder, or the folder of a shard
+	 * @param charset the charset of text files without byte order mark, may be {@code null}
+	 * @param indexProfile the profile of the index, may be {@code null}
+	 * @return the indexer
+	 */
+	protected Indexer createIndexer(final Path path, final Charset charset, final IndexProfile indexProfile) {
 		final Indexer indexer = new Indexer(
 			rootFolder,
-			indexPath,
-			Indexer.createPathMatchers(indexFolder, ignoreFolders),
+			path,
+			new IgnoreRules(rootFolder, indexFolder, ignoreFolders, useIgnoreFiles),
 			ignoreMimeTypes,
 			getLog()
 		);
-		indexer.index(clean);
+		indexer.setThreads(threads);
+		indexer.setIncremental(incremental);
+		indexer.setMapThreshold(mapThreshold);
+		indexer.setMaxFileSize(maxFileSize);
+		indexer.setContext(context);
+		indexer.setContextSize(contextSize);
+		indexer.setChunks(chunkSize, chunkOverlap);
+		indexer.setTrigrams(trigrams);
+		indexer.setDedup(dedup);
+		indexer.setArchives(archives);
+		indexer.setCharset(charset);
+		indexer.setProfile(indexProfile);
+		return indexer;
+	}
+
+	/**
+	 * Creates the profile of the index from the profile parameter and the individual settings.
+	 * @return the profile, or {@code null} if the existing index is to keep its schema
+	 * @throws MojoExecutionException if the profile is unknown
+	 */
+	protected IndexProfile createProfile() throws MojoExecutionException {
+		if (profile == null && ramBuffer == null && compoundFiles == null && norms == null
+			&& bestCompression == null && maxSegments == null) {
+			return null;
+		}
+		final IndexProfile result;
+		try {
+			result = new IndexProfile(IndexProfile.preset(profile != null ? profile : IndexProfile.Preset.standard.name()));
+		} catch (IllegalArgumentException e) {
+			throw new MojoExecutionException(String.format("Unknown profile: %s", profile), e);
+		}
+		if (ramBuffer != null) {
+			result.setRamBuffer(ramBuffer.doubleValue());
+		}
+		if (compoundFiles != null) {
+			result.setCompoundFiles(compoundFiles.booleanValue());
+		}
+		if (norms != null) {
+			result.setNorms(norms.booleanValue());
+		}
+		if (bestCompression != null) {
+			result.setBestCompression(bestCompression.booleanValue());
+		}
+		if (maxSegments != null) {
+			result.setMaxSegments(maxSegments.intValue());
+		}
+		getLog().info(String.format("Index profile: %s", result));
+		return result;
+	}
+
+	/**
+	 * Determines the shards of the index. If the shards differ from those of the
+	 * existing index, the existing index is deleted.
+	 * @param indexPath the index folder
+	 * @return the shards, or {@code null} for a single index
+	 * @throws MojoExecutionException in case of error
+	 */
+	protected Shards layout(final Path indexPath) throws MojoExecutionException {
+		try {
+			final Shards existing = Shards.read(indexPath);
+			final Shards layout = shards == null
+				? existing
+				: Shards.create(rootFolder, indexPath, shards, new IgnoreRules(rootFolder, indexFolder, ignoreFolders, useIgnoreFiles));
+			if (!Objects.equals(existing, layout) && Files.exists(indexPath)) {
+				getLog().info(String.format("Shards of %s have changed, rebuilding the index", indexPath));
+				Shards.delete(indexPath);
+			}
+			if (layout != null) {
+				layout.write();
+			}
+			return layout;
+		} catch (IOException e) {
+			throw new MojoExecutionException("I/O error", e);
+		}
 	}
-}
\ No newline at end of file
+}
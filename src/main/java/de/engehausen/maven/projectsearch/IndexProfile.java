@@ -0,0 +1,200 @@
+package de.engehausen.maven.projectsearch;
+
+import java.util.Locale;
+
+import org.apache.lucene.codecs.lucene95.Lucene95Codec;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexWriterConfig;
+
+/**
+ * Settings trading the time of building an index against its size and the speed of queries.
+ * A profile starts from a {@link Preset}; each setting can be overridden.
+ * <p>Norms are part of the schema of the index: an index cannot be updated with a different
+ * setting, it must be rebuilt. The other settings only affect how the index is written.
+ * Positions are always indexed, as phrase queries without field search the contents and
+ * the identifiers.</p>
+ */
+public class IndexProfile {
+
+	/** default size of the RAM buffer of the index writer in megabytes */
+	public static final double DEFAULT_RAM_BUFFER = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
+
+	/**
+	 * Predefined profiles.
+	 */
+	public enum Preset {
+		/** the defaults of Lucene: norms, compound files, fast stored fields, no final merge */
+		standard(DEFAULT_RAM_BUFFER, true, true, false, 0),
+		/** fast build: large RAM buffer, no compound files, no norms */
+		fast(256, false, false, false, 0),
+		/** compact and search-optimized: best compression of stored fields, no norms, merged into one segment */
+		compact(DEFAULT_RAM_BUFFER, true, false, true, 1);
+
+		final double ramBuffer;
+		final boolean compoundFiles;
+		final boolean norms;
+		final boolean bestCompression;
+		final int maxSegments;
+
+		Preset(final double ramBuffer, final boolean compoundFiles, final boolean norms, final boolean bestCompression, final int maxSegments) {
+			this.ramBuffer = ramBuffer;
+			this.compoundFiles = compoundFiles;
+			this.norms = norms;
+			this.bestCompression = bestCompression;
+			this.maxSegments = maxSegments;
+		}
+	}
+
+	protected double ramBuffer;
+	protected boolean compoundFiles;
+	protected boolean norms;
+	protected boolean bestCompression;
+	protected int maxSegments;
+
+	/**
+	 * Creates a profile with the settings of a preset.
+	 * @param preset the preset
+	 */
+	public IndexProfile(final Preset preset) {
+		this.ramBuffer = preset.ramBuffer;
+		this.compoundFiles = preset.compoundFiles;
+		this.norms = preset.norms;
+		this.bestCompression = preset.bestCompression;
+		this.maxSegments = preset.maxSegments;
+	}
+
+	/**
+	 * Creates a copy of a profile.
+	 * @param other the profile to copy
+	 */
+	public IndexProfile(final IndexProfile other) {
+		this.ramBuffer = other.ramBuffer;
+		this.compoundFiles = other.compoundFiles;
+		this.norms = other.norms;
+		this.bestCompression = other.bestCompression;
+		this.maxSegments = other.maxSegments;
+	}
+
+	/**
+	 * Returns the preset of the given name.
+	 * @param name the name, case-insensitive
+	 * @return the preset
+	 * @throws IllegalArgumentException if there is no such preset
+	 */
+	public static Preset preset(final String name) {
+		return Preset.valueOf(name.toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * Sets the size of the RAM buffer for documents before they are flushed into a segment.
+	 * @param ramBuffer the size in megabytes
+	 */
+	public void setRamBuffer(final double ramBuffer) {
+		this.ramBuffer = ramBuffer;
+	}
+
+	/**
+	 * Sets whether segments are written as compound files.
+	 * @param compoundFiles {@code true} for compound files, with fewer open files; {@code false} for faster flushes and merges
+	 */
+	public void setCompoundFiles(final boolean compoundFiles) {
+		this.compoundFiles = compoundFiles;
+	}
+
+	/**
+	 * Sets whether norms are indexed for the contents and identifiers. Without norms,
+	 * the length of files does not affect the scores, which matters little as results
+	 * are listed in path order.
+	 * @param norms {@code true} to index norms
+	 */
+	public void setNorms(final boolean norms) {
+		this.norms = norms;
+	}
+
+	/**
+	 * Sets whether stored fields are written with the best compression instead of the best speed.
+	 * @param bestCompression {@code true} for the best compression
+	 */
+	public void setBestCompression(final boolean bestCompression) {
+		this.bestCompression = bestCompression;
+	}
+
+	/**
+	 * Sets the number of segments the index is merged into after building.
+	 * @param maxSegments the maximal number of segments, zero or less for no final merge
+	 */
+	public void setMaxSegments(final int maxSegments) {
+		this.maxSegments = maxSegments;
+	}
+
+	/**
+	 * Returns whether norms are indexed for the contents and identifiers.
+	 * @return {@code true} if norms are indexed
+	 */
+	public boolean hasNorms() {
+		return norms;
+	}
+
+	/**
+	 * Returns the number of segments the index is merged into after building.
+	 * @return the maximal number of segments, zero or less for no final merge
+	 */
+	public int getMaxSegments() {
+		return maxSegments;
+	}
+
+	/**
+	 * Applies the settings for writing to the configuration of an index writer.
+	 * @param config the configuration
+	 * @return the configuration
+	 */
+	public IndexWriterConfig configure(final IndexWriterConfig config) {
+		config.setRAMBufferSizeMB(ramBuffer);
+		config.setUseCompoundFile(compoundFiles);
+		if (!compoundFiles) {
+			// merged segments neither
+			config.getMergePolicy().setNoCFSRatio(0d);
+		}
+		if (bestCompression) {
+			config.setCodec(new Lucene95Codec(Lucene95Codec.Mode.BEST_COMPRESSION));
+		}
+		return config;
+	}
+
+	/**
+	 * Checks if an existing index has the schema of this profile.
+	 * @param fieldInfos the fields of the index
+	 * @return {@code true} if the index can be updated with this profile
+	 */
+	public boolean matches(final FieldInfos fieldInfos) {
+		final FieldInfo contents = fieldInfos.fieldInfo(Constants.FIELD_CONTENTS);
+		final FieldInfo identifiers = fieldInfos.fieldInfo(Constants.FIELD_IDENTIFIERS);
+		return (contents == null || contents.omitsNorms() != norms)
+			&& (identifiers == null || identifiers.omitsNorms() != norms);
+	}
+
+	/**
+	 * Takes over the schema of an existing index, so the index can be updated with this profile.
+	 * @param fieldInfos the fields of the index
+	 */
+	public void adopt(final FieldInfos fieldInfos) {
+		final FieldInfo contents = fieldInfos.fieldInfo(Constants.FIELD_CONTENTS);
+		if (contents != null) {
+			norms = !contents.omitsNorms();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "ramBuffer=%.0fMB, compoundFiles=%b, norms=%b, bestCompression=%b, maxSegments=%d",
+			Double.valueOf(ramBuffer),
+			Boolean.valueOf(compoundFiles),
+			Boolean.valueOf(norms),
+			Boolean.valueOf(bestCompression),
+			Integer.valueOf(maxSegments));
+	}
+}
@@ -0,0 +1,299 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timings of an index build, collected by the {@link Indexer} from all
+ * indexing threads and written as JSON report ({@link #REPORT}) into the index folder.
+ * <p>The time of the {@link Phase#walk} is the elapsed time of walking the folders,
+ * including waiting for the workers; the times of the other phases are summed over
+ * all threads, so with several threads they may exceed the elapsed time.</p>
+ */
+public class IndexStats {
+
+	/** name of the report in the index folder */
+	public static final String REPORT = "index-report.json";
+
+	/** number of the slowest files recorded */
+	public static final int SLOWEST = 10;
+
+	private static final double NANOS_PER_MILLI = 1_000_000d;
+	private static final double MEGABYTE = 1024d * 1024d;
+
+	/**
+	 * Reasons for not indexing a file or folder.
+	 */
+	public enum Skip {
+		/** folder ignored by name or ignore rules */
+		ignoredFolder,
+		/** file ignored by ignore rules */
+		ignoredFile,
+		/** file of an ignored MIME type */
+		mimeType,
+		/** binary file */
+		binary,
+		/** file which cannot be read */
+		unreadable,
+		/** file unchanged since the last incremental build */
+		unchanged
+	}
+
+	/**
+	 * Phases of indexing.
+	 */
+	public enum Phase {
+		/** walking the folders */
+		walk,
+		/** reading the head of files and detecting their content type */
+		probe,
+		/** reading the text (and hashing the contents) of files read in memory */
+		read,
+		/** analyzing and adding documents, including decoding memory-mapped files */
+		analyze,
+		/** merging the index into fewer segments, see {@link IndexProfile#setMaxSegments(int)} */
+		merge,
+		/** committing the index */
+		commit
+	}
+
+	private final long started = System.currentTimeMillis();
+	private final LongAdder visited = new LongAdder();
+	private final LongAdder indexed = new LongAdder();
+	private final LongAdder aliased = new LongAdder();
+	private final LongAdder entries = new LongAdder();
+	private final LongAdder chunks = new LongAdder();
+	private final LongAdder truncated = new LongAdder();
+	private final LongAdder removed = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private final Map<Skip, LongAdder> skipped = new EnumMap<>(Skip.class);
+	private final Map<Phase, LongAdder> times = new EnumMap<>(Phase.class);
+	private final PriorityQueue<FileTime> slowest = new PriorityQueue<>(Comparator.comparingLong(FileTime::getNanos));
+
+	/**
+	 * Creates empty statistics.
+	 */
+	public IndexStats() {
+		for (final Skip skip : Skip.values()) {
+			skipped.put(skip, new LongAdder());
+		}
+		for (final Phase phase : Phase.values()) {
+			times.put(phase, new LongAdder());
+		}
+	}
+
+	/**
+	 * Counts a visited file.
+	 */
+	public void visited() {
+		visited.increment();
+	}
+
+	/**
+	 * Counts an indexed file.
+	 * @param id the identifier of the file
+	 * @param nanos the time spent on the file
+	 * @param size the size of the file
+	 */
+	public void indexed(final String id, final long nanos, final long size) {
+		indexed.increment();
+		synchronized (slowest) {
+			if (slowest.size() < SLOWEST || slowest.peek().nanos < nanos) {
+				slowest.add(new FileTime(id, nanos, size));
+				if (slowest.size() > SLOWEST) {
+					slowest.poll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts a file indexed as alias of identical contents, see {@link Indexer#setDedup(boolean)}.
+	 * The file is counted as indexed as well.
+	 */
+	public void aliased() {
+		aliased.increment();
+	}
+
+	/**
+	 * Counts an indexed entry of an archive, see {@link Indexer#setArchives(boolean)}.
+	 */
+	public void entry() {
+		entries.increment();
+	}
+
+	/**
+	 * Counts an indexed chunk of a large file, see {@link Indexer#setChunks(long, int)}.
+	 */
+	public void chunk() {
+		chunks.increment();
+	}
+
+	/**
+	 * Counts a skipped file or folder.
+	 * @param reason the reason
+	 */
+	public void skipped(final Skip reason) {
+		skipped.get(reason).increment();
+	}
+
+	/**
+	 * Counts a file indexed up to the maximal file size only.
+	 */
+	public void truncated() {
+		truncated.increment();
+	}
+
+	/**
+	 * Counts the documents of deleted files removed from the index.
+	 * @param count the number of documents
+	 */
+	public void removed(final long count) {
+		removed.add(count);
+	}
+
+	/**
+	 * Counts bytes read from files.
+	 * @param bytes the number of bytes
+	 */
+	public void read(final long bytes) {
+		bytesRead.add(bytes);
+	}
+
+	/**
+	 * Adds time spent in a phase.
+	 * @param phase the phase
+	 * @param nanos the time in nanoseconds
+	 */
+	public void time(final Phase phase, final long nanos) {
+		times.get(phase).add(nanos);
+	}
+
+	/**
+	 * Returns the number of indexed files.
+	 * @return the number of files
+	 */
+	public long getIndexed() {
+		return indexed.sum();
+	}
+
+	/**
+	 * Returns the number of skipped files (not folders).
+	 * @return the number of files
+	 */
+	public long getSkipped() {
+		return skipped
+			.entrySet()
+			.stream()
+			.filter(entry -> entry.getKey() != Skip.ignoredFolder)
+			.mapToLong(entry -> entry.getValue().sum())
+			.sum();
+	}
+
+	/**
+	 * Returns a summary for the log.
+	 * @return the summary
+	 */
+	public String summary() {
+		return String.format(Locale.ROOT, "Indexed %d of %d files (%d skipped, %.1f MB read) in %d ms",
+			Long.valueOf(getIndexed()),
+			Long.valueOf(visited.sum()),
+			Long.valueOf(getSkipped()),
+			Double.valueOf(bytesRead.sum() / MEGABYTE),
+			Long.valueOf(System.currentTimeMillis() - started));
+	}
+
+	/**
+	 * Returns the report.
+	 * @param rootFolder the root folder of the index
+	 * @param indexPath the index folder
+	 * @return the report as JSON object
+	 */
+	public String toJson(final Path rootFolder, final Path indexPath) {
+		final StringBuilder result = new StringBuilder(1024);
+		result
+			.append("{\n  \"root\": ").append(Json.quote(rootFolder.toAbsolutePath().toString()))
+			.append(",\n  \"index\": ").append(Json.quote(indexPath.toAbsolutePath().toString()))
+			.append(",\n  \"started\": ").append(Json.quote(Instant.ofEpochMilli(started).toString()))
+			.append(",\n  \"elapsedMillis\": ").append(System.currentTimeMillis() - started)
+			.append(",\n  \"files\": {\"visited\": ").append(visited.sum())
+			.append(", \"indexed\": ").append(indexed.sum())
+			.append(", \"aliases\": ").append(aliased.sum())
+			.append(", \"archiveEntries\": ").append(entries.sum())
+			.append(", \"chunks\": ").append(chunks.sum())
+			.append(", \"skipped\": ").append(getSkipped())
+			.append(", \"truncated\": ").append(truncated.sum())
+			.append(", \"removed\": ").append(removed.sum())
+			.append("},\n  \"skipped\": {");
+		for (final Skip skip : Skip.values()) {
+			result
+				.append(skip.ordinal() > 0 ? ", " : "")
+				.append(Json.quote(skip.name())).append(": ").append(skipped.get(skip).sum());
+		}
+		result
+			.append("},\n  \"bytesRead\": ").append(bytesRead.sum())
+			.append(",\n  \"timeMillis\": {");
+		for (final Phase phase : Phase.values()) {
+			result
+				.append(phase.ordinal() > 0 ? ", " : "")
+				.append(Json.quote(phase.name())).append(": ").append(TimeUnit.NANOSECONDS.toMillis(times.get(phase).sum()));
+		}
+		result.append("},\n  \"slowest\": [");
+		final List<FileTime> files;
+		synchronized (slowest) {
+			files = new ArrayList<>(slowest);
+		}
+		files.sort(Comparator.comparingLong(FileTime::getNanos).reversed());
+		for (int i = 0; i < files.size(); i++) {
+			result
+				.append(i > 0 ? "," : "")
+				.append("\n    {\"path\": ").append(Json.quote(files.get(i).id))
+				.append(", \"millis\": ").append(String.format(Locale.ROOT, "%.3f", Double.valueOf(files.get(i).nanos / NANOS_PER_MILLI)))
+				.append(", \"bytes\": ").append(files.get(i).size)
+				.append('}');
+		}
+		return result.append(files.isEmpty() ? "]\n}\n" : "\n  ]\n}\n").toString();
+	}
+
+	/**
+	 * Writes the report into the index folder.
+	 * @param rootFolder the root folder of the index
+	 * @param indexPath the index folder
+	 * @return the report file
+	 * @throws IOException in case of error
+	 */
+	public Path write(final Path rootFolder, final Path indexPath) throws IOException {
+		final Path report = indexPath.resolve(REPORT);
+		Files.writeString(report, toJson(rootFolder, indexPath), StandardCharsets.UTF_8);
+		return report;
+	}
+
+	/**
+	 * Time spent on a file.
+	 */
+	private static final class FileTime {
+		final String id;
+		final long nanos;
+		final long size;
+		FileTime(final String id, final long nanos, final long size) {
+			this.id = id;
+			this.nanos = nanos;
+			this.size = size;
+		}
+		long getNanos() {
+			return nanos;
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Watches the folders indexed by an {@link Indexer} and pushes changed
+ * files into the index writer opened with {@link Indexer#openWriter(org.apache.lucene.store.Directory)}.
+ * Ignored folders are not watched. Each applied change is logged.
+ */
+public class IndexWatcher implements Closeable {
+
+	protected final Indexer indexer;
+	protected final Log log;
+	protected final WatchService watchService;
+	protected final Map<WatchKey, Path> folders;
+	private final Thread thread;
+
+	/**
+	 * Creates the watcher and registers all folders below the root folder of the indexer.
+	 * @param indexer the indexer with an open writer
+	 * @param log the logger
+	 * @throws IOException in case of error
+	 */
+	public IndexWatcher(final Indexer indexer, final Log log) throws IOException {
+		this.indexer = indexer;
+		this.log = log;
+		this.watchService = indexer.rootFolder.getFileSystem().newWatchService();
+		this.folders = new ConcurrentHashMap<>();
+		this.thread = new Thread(this::run, "index-watcher");
+		thread.setDaemon(true);
+		register(indexer.rootFolder, false);
+	}
+
+	/**
+	 * Starts watching for changes.
+	 */
+	public void start() {
+		thread.start();
+	}
+
+	/**
+	 * Stops watching for changes.
+	 * @throws IOException in case of error
+	 */
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	protected void register(final Path folder, final boolean index) throws IOException {
+		Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+				if (indexer.isIgnored(dir, true)) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				folders.put(dir.register(watchService,
+					StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY,
+					StandardWatchEventKinds.ENTRY_DELETE), dir);
+				return FileVisitResult.CONTINUE;
+			}
+			@Override
+			public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+				if (index) {
+					indexer.update(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+			@Override
+			public FileVisitResult visitFileFailed(final Path file, final IOException exception) throws IOException {
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	protected void run() {
+		try {
+			while (true) {
+				final WatchKey key = watchService.take();
+				final Path dir = folders.get(key);
+				if (dir != null) {
+					for (final WatchEvent<?> event : key.pollEvents()) {
+						handle(dir, event);
+					}
+				}
+				if (!key.reset()) {
+					folders.remove(key);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			// watcher was closed
+		}
+	}
+
+	protected void handle(final Path dir, final WatchEvent<?> event) {
+		if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+			log.warn("Too many changes at once, the index may be incomplete");
+			return;
+		}
+		final Path path = dir.resolve((Path) event.context());
+		if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+			indexer.remove(path);
+			log.info(String.format("Removed %s from the index", path));
+		} else if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+			if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+				try {
+					register(path, true);
+				} catch (IOException e) {
+					log.error(String.format("cannot watch %s", path));
+				}
+			}
+		} else if (!indexer.isIgnored(path, false)) {
+			indexer.update(path);
+			log.info(String.format("Updated %s in the index", path));
+		}
+	}
+}
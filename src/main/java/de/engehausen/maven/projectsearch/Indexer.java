@@ -1,74 +1,344 @@
 package de.engehausen.maven.projectsearch;
 
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.List;
-import java.util.Optional;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 
 /**
  * Indexer to create the Lucene index.
+ * <p>By default files are indexed on the thread walking the file tree.
+ * If more than one thread is configured, the walker hands the files
+ * to a pool of workers via a bounded queue; all workers share the
+ * (thread-safe) index writer. If a worker fails, the index is rolled
+ * back to its previous commit once all workers are done.</p>
+ * <p>Each document is keyed by the path of the file relative to the root folder
+ * and records size, modification time and (in incremental mode) a content hash
+ * of the file. Re-indexing without cleaning replaces existing documents and
+ * removes the documents of files which no longer exist; in incremental mode
+ * unchanged files are skipped.</p>
+ * <p>Text is decoded in the charset detected by {@link ContentType}, or
+ * a configured charset for files without byte order mark. Files larger
+ * than a threshold are memory-mapped and decoded directly into the analyzer;
+ * files exceeding the maximal indexed size are truncated.</p>
+ * <p>Optionally the text of files up to a size is stored for showing the matching lines
+ * of search results, see {@link #setContext(boolean)}.</p>
+ * <p>Optionally the trigrams of the text are indexed, see {@link #setTrigrams(boolean)}.</p>
+ * <p>Optionally the text entries of zip and jar archives are indexed, see {@link #setArchives(boolean)}.</p>
+ * <p>Optionally files above a size are indexed as chunks, see {@link #setChunks(long, int)}.</p>
+ * <p>In deduplicated mode (see {@link #setDedup(boolean)}) identical contents are analyzed
+ * once; further files with the same contents are indexed as alias documents.</p>
+ * <p>How the index is written, and whether norms and positions of identifiers are indexed,
+ * is set by an {@link IndexProfile}, see {@link #setProfile(IndexProfile)}.</p>
+ * <p>Counters and timings of each build are collected in {@link IndexStats}, logged
+ * as summary and written as report into the index folder.</p>
+ * <p>The index is sorted by {@link Constants#FIELD_ID}, so the documents
+ * of each segment are in path order.</p>
  */
 public class Indexer implements FileVisitor<Path> {
 
+	private static final int QUEUE_CAPACITY_PER_THREAD = 64;
+	private static final int HASH_BUFFER_SIZE = 65536;
+	private static final String HASH_ALGORITHM = "SHA-256";
+	private static final byte[] LINE_BREAK = { '\n' };
+	/** maximal size of files read into memory for indexing (64 MB) */
+	public static final long MAX_TEXT_SIZE = 1L << 26;
+
+	/** type of the contents field: text with offsets, for showing the lines of matches */
+	protected static final FieldType CONTENTS_TYPE = createContentsType(false, true);
+
+	/** type of the trigrams field: terms only, without frequencies, positions or norms */
+	protected static final FieldType TRIGRAMS_TYPE = createTrigramsType();
+
+	/** sort order of the index: by identifier, i.e. by relative path */
+	public static final Sort INDEX_SORT = new Sort(new SortField(Constants.FIELD_ID, SortField.Type.STRING));
+
+	private static final Set<String> STATE_FIELDS = Set.of(Constants.FIELD_ID, Constants.FIELD_SIZE, Constants.FIELD_MODIFIED, Constants.FIELD_HASH, Constants.FIELD_ALIAS_OF, Constants.FIELD_ARCHIVE);
+
 	protected final Path rootFolder;
 	protected final Path indexPath;
-	protected final List<PathMatcher> ignoreMatchers;
+	protected final IgnoreRules ignoreRules;
 	protected final Pattern ignoredMimeTypes;
 	protected final Log log;
+	protected int threads = 1;
+	protected boolean incremental;
+	protected boolean trigrams;
+	protected boolean dedup;
+	protected boolean archives;
+	protected String scope;
+	protected Set<String> excludedScopes = Set.of();
+	protected String module;
+	protected Map<Path, String> dependencies = Map.of();
+	protected Charset charset;
+	protected long mapThreshold = Long.parseLong(Constants.DEFAULT_MAP_THRESHOLD);
+	protected long maxFileSize;
+	protected boolean context;
+	protected long contextSize = Long.parseLong(Constants.DEFAULT_CONTEXT_SIZE);
+	protected long chunkSize;
+	protected int chunkOverlap;
+	protected IndexProfile profile;
+	private IndexProfile active;
+	private FieldType contentsType;
+	private FieldType storedContentsType;
+	private FieldType identifiersType;
 	private IndexWriter indexWriter;
+	private ExecutorService executor;
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+	private boolean append;
+	private Map<String, FileState> known;
+	private Map<String, String> canonicals = new ConcurrentHashMap<>();
+	private IndexStats stats = new IndexStats();
 
 	/**
 	 * Creates the indexer.
 	 * @param rootFolder the folder to start indexing from
 	 * @param indexPath the folder to store the index in
-	 * @param ignoreMatchers matchers for paths to ignore
+	 * @param ignoreRules the rules for files and folders to ignore
 	 * @param ignoreMimeTypes regular expression for MIME types to ignore
 	 * @param log the logger
 	 */
 	public Indexer(
 		final Path rootFolder,
 		final Path indexPath,
-		final List<PathMatcher> ignoreMatchers,
+		final IgnoreRules ignoreRules,
 		final String ignoreMimeTypes,
 		final Log log) {
 		this.rootFolder = rootFolder.toAbsolutePath();
 		this.indexPath = indexPath;
-		this.ignoreMatchers = ignoreMatchers;
+		this.ignoreRules = ignoreRules;
 		this.ignoredMimeTypes = Pattern.compile(ignoreMimeTypes);
 		this.log = log;
 	}
 
+	/**
+	 * Sets the number of threads used for reading and analyzing files.
+	 * @param threads the number of threads, values smaller than two mean
+	 * indexing on the walking thread only
+	 */
+	public void setThreads(final int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Returns the number of threads used for reading and analyzing files.
+	 * @return the number of threads, at least one
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the incremental mode. In incremental mode files with unchanged
+	 * size and modification time or unchanged contents are not re-indexed,
+	 * and documents of deleted files are removed from the index.
+	 * @param incremental {@code true} to only update changed files, {@code false} to re-index all files
+	 */
+	public void setIncremental(final boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/**
+	 * Sets whether the trigrams of the contents are indexed, for narrowing down the candidates
+	 * of regular expression searches, see {@link GrepQuery}. When updating an index, trigrams are
+	 * always indexed if the index already has them; an index without trigrams is rebuilt if
+	 * trigrams are requested.
+	 * @param trigrams {@code true} to index {@link Constants#FIELD_TRIGRAMS}
+	 */
+	public void setTrigrams(final boolean trigrams) {
+		this.trigrams = trigrams;
+	}
+
+	/**
+	 * Sets whether the text entries of zip and jar archives are indexed. Each text entry becomes a
+	 * document of its own, identified by the identifier of the archive and the name of the entry
+	 * separated by {@link Constants#ARCHIVE_SEPARATOR}, with the archive in {@link Constants#FIELD_ARCHIVE}.
+	 * Entries are streamed from the archive without extracting them; the archive itself is indexed
+	 * without contents. When updating an index, archives with unchanged size and modification time
+	 * are not read again, and an index with archive entries keeps them.
+	 * @param archives {@code true} to index the entries of archives
+	 */
+	public void setArchives(final boolean archives) {
+		this.archives = archives;
+	}
+
+	/**
+	 * Sets whether identical contents are analyzed only once. The contents of all files are hashed;
+	 * the first file with some contents is indexed as usual, further files with the same contents
+	 * become alias documents without contents (see {@link Constants#FIELD_ALIAS_OF}), which are
+	 * found through {@link Aliases#expand(org.apache.lucene.search.IndexSearcher, org.apache.lucene.search.Query)}.
+	 * When the file with the contents changes or is deleted, one of its aliases takes its place.
+	 * As with trigrams, an index keeps deduplication when updated, and an index without is rebuilt
+	 * if deduplication is requested.
+	 * @param dedup {@code true} to deduplicate identical contents
+	 */
+	public void setDedup(final boolean dedup) {
+		this.dedup = dedup;
+	}
+
+	/**
+	 * Restricts indexing to the files below a folder, for building a shard of a sharded index
+	 * (see {@link Shards}). Identifiers stay relative to the root folder.
+	 * @param scope the identifier of the folder to index, {@code null} for the root folder
+	 * @param excludedScopes the identifiers of folders not to index, as they belong to other shards
+	 */
+	public void setScope(final String scope, final Set<String> excludedScopes) {
+		this.scope = scope;
+		this.excludedScopes = excludedScopes;
+	}
+
+	/**
+	 * Sets the module of the indexed files, recorded in {@link Constants#FIELD_MODULE}.
+	 * @param module the name of the module, {@code null} for no module
+	 */
+	public void setModule(final String module) {
+		this.module = module;
+	}
+
+	/**
+	 * Sets archives outside of the walked folders to index along with the files, such as the
+	 * source jars of dependencies. They are indexed as archives after the walk, regardless of the
+	 * ignore rules; their identifiers are their absolute paths.
+	 * @param dependencies the archives, each with its module for {@link Constants#FIELD_MODULE}
+	 */
+	public void setDependencies(final Map<Path, String> dependencies) {
+		this.dependencies = dependencies;
+	}
+
+	/**
+	 * Sets the charset of text files without byte order mark.
+	 * @param charset the charset, or {@code null} to detect UTF-8 and fall back to {@link ContentType#FALLBACK_CHARSET}
+	 */
+	public void setCharset(final Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Sets the size above which files are memory-mapped for reading.
+	 * @param mapThreshold the size in bytes, zero or less to memory-map all files
+	 */
+	public void setMapThreshold(final long mapThreshold) {
+		this.mapThreshold = mapThreshold;
+	}
+
+	/**
+	 * Sets whether the text of files up to the context size is stored along with the offsets of
+	 * their line starts, so search results can show the matching lines (see {@link Snippets}).
+	 * Files with stored text are read into memory regardless of the map threshold. As with archives,
+	 * an index with stored text keeps storing it when updated.
+	 * @param context {@code true} to store the text of files
+	 */
+	public void setContext(final boolean context) {
+		this.context = context;
+	}
+
+	/**
+	 * Sets the size up to which the text of files is stored, see {@link #setContext(boolean)}.
+	 * The limit applies to the indexed text: of truncated files, of chunks and of archive entries.
+	 * @param contextSize the size in bytes, at most {@link #MAX_TEXT_SIZE}
+	 */
+	public void setContextSize(final long contextSize) {
+		this.contextSize = Math.min(contextSize, MAX_TEXT_SIZE);
+	}
+
+	/**
+	 * Sets the maximal number of bytes indexed per file. Larger files are truncated.
+	 * @param maxFileSize the size in bytes, zero or less for no limit
+	 */
+	public void setMaxFileSize(final long maxFileSize) {
+		this.maxFileSize = maxFileSize;
+	}
+
+	/**
+	 * Sets the size above which files are indexed as chunks, see {@link Chunks}.
+	 * The chunk size is limited to {@link #MAX_TEXT_SIZE}.
+	 * @param chunkSize the size in bytes, zero or less to index all files as a whole
+	 * @param chunkOverlap the number of lines repeated at the start of the next chunk
+	 */
+	public void setChunks(final long chunkSize, final int chunkOverlap) {
+		this.chunkSize = Math.min(chunkSize, MAX_TEXT_SIZE);
+		this.chunkOverlap = chunkOverlap;
+	}
+
+	/**
+	 * Sets the profile of the index. When updating an index with a different schema (norms),
+	 * the index is rebuilt. Without profile, the {@link IndexProfile.Preset#standard}
+	 * profile is used, but an existing index keeps its schema.
+	 * @param profile the profile, may be {@code null}
+	 */
+	public void setProfile(final IndexProfile profile) {
+		this.profile = profile;
+	}
+
 	/**
 	 * Creates the index.
 	 * @param clean {@code true} to delete any existing index before indexing, {@code false} otherwise
 	 * @throws MojoExecutionException in case of error
 	 */
 	public void index(final boolean clean) throws MojoExecutionException {
+		stats = new IndexStats();
 		try {
 			if (clean && Files.exists(indexPath)) {
 				Files
@@ -78,17 +348,155 @@ public class Indexer implements FileVisitor<Path> {
 					.forEach(File::delete);
 			}
 			try (final Directory directory = FSDirectory.open(indexPath)) {
-				indexWriter = new IndexWriter(directory, new IndexWriterConfig(new CaseSensitiveAnalyzer()));
+				known = new ConcurrentHashMap<>();
+				failure.set(null);
+				canonicals = new ConcurrentHashMap<>();
+				activate(profile != null ? profile : new IndexProfile(IndexProfile.Preset.standard));
+				append = DirectoryReader.indexExists(directory) && loadState(directory);
+				// an index which cannot be updated is replaced, even if its settings differ
+				indexWriter = new IndexWriter(directory, createConfig()
+					.setOpenMode(append ? IndexWriterConfig.OpenMode.APPEND : IndexWriterConfig.OpenMode.CREATE));
 				try {
-					log.info(String.format("Building index for %s into %s", rootFolder, indexPath));
-					Files.walkFileTree(rootFolder, this);
+					if (append) {
+						log.info(String.format("Updating index for %s in %s", rootFolder, indexPath));
+					} else {
+						log.info(String.format("Building index for %s into %s", rootFolder, indexPath));
+					}
+					if (threads > 1) {
+						executor = createExecutor();
+					}
+					final long walk = System.nanoTime();
+					try {
+						Files.walkFileTree(scope == null ? rootFolder : rootFolder.resolve(scope), this);
+						indexDependencies();
+					} finally {
+						if (executor != null) {
+							awaitWorkers();
+						}
+						stats.time(IndexStats.Phase.walk, System.nanoTime() - walk);
+					}
+					final Throwable failed = failure.getAndSet(null);
+					if (failed != null) {
+						// the index is incomplete, keep the previous commit
+						indexWriter.rollback();
+						throw new MojoExecutionException("Indexing error", failed);
+					}
+					removeDeleted();
+					if (dedup) {
+						repairAliases();
+					}
+					merge();
 				} finally {
+					final long commit = System.nanoTime();
 					indexWriter.close();
+					stats.time(IndexStats.Phase.commit, System.nanoTime() - commit);
+					known = null;
 				}
 			}
+			final Path report = stats.write(rootFolder, indexPath);
+			log.info(String.format("%s, see %s", stats.summary(), report));
 		} catch (IOException e) {
 			throw new MojoExecutionException("I/O error", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Indexing interrupted", e);
+		}
+	}
+
+	/**
+	 * Returns the counters and timings of the last build.
+	 * @return the statistics
+	 */
+	public IndexStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Opens a writer on an existing index for keeping the index up to date
+	 * with {@link #update(Path)} and {@link #remove(Path)}. The caller must
+	 * close the writer. In a deduplicated index, the files with contents are
+	 * read, so copies of their contents are indexed as aliases.
+	 * @param directory the index directory
+	 * @return the index writer
+	 * @throws IOException in case of error
+	 */
+	public IndexWriter openWriter(final Directory directory) throws IOException {
+		known = new ConcurrentHashMap<>();
+		canonicals = new ConcurrentHashMap<>();
+		append = true;
+		final IndexProfile adopted = new IndexProfile(profile != null ? profile : new IndexProfile(IndexProfile.Preset.standard));
+		if (DirectoryReader.indexExists(directory)) {
+			try (final DirectoryReader reader = DirectoryReader.open(directory)) {
+				trigrams |= hasTrigrams(reader);
+				dedup |= isDeduplicated(reader);
+				archives |= hasArchives(reader);
+				context |= hasContext(reader);
+				adopted.adopt(FieldInfos.getMergedFieldInfos(reader));
+				if (dedup) {
+					loadCanonicals(reader);
+				}
+			}
 		}
+		activate(adopted);
+		indexWriter = new IndexWriter(directory, createConfig());
+		return indexWriter;
+	}
+
+	/**
+	 * Adds or replaces the document of the given file in the index opened
+	 * with {@link #openWriter(Directory)}, unless the file is ignored.
+	 * If the file had contents with aliases, the aliases are repaired.
+	 * @param file the file to index
+	 */
+	public void update(final Path file) {
+		if (isIgnored(file, false)) {
+			return;
+		}
+		final String id = relativeId(file);
+		// the file is registered again with its current contents
+		final boolean canonical = canonicals.values().removeIf(id::equals);
+		try {
+			process(file, Files.readAttributes(file, BasicFileAttributes.class));
+			if (canonical) {
+				repairAliases();
+			}
+		} catch (IOException e) {
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("cannot update %s", file));
+			}
+		}
+	}
+
+	/**
+	 * Removes the document of the given file (and its entries if it is an archive), or the documents
+	 * of all files below the given folder, from the index opened with {@link #openWriter(Directory)}.
+	 * Aliases of removed contents are repaired.
+	 * @param path the file or folder to remove
+	 */
+	public void remove(final Path path) {
+		final String id = relativeId(path);
+		try {
+			if (log.isDebugEnabled()) {
+				log.debug("removing " + path);
+			}
+			indexWriter.deleteDocuments(new Term(Constants.FIELD_ID, id), new Term(Constants.FIELD_ARCHIVE, id));
+			indexWriter.deleteDocuments(new PrefixQuery(new Term(Constants.FIELD_ID, id + '/')));
+			if (canonicals.values().removeIf(canonical -> canonical.equals(id) || canonical.startsWith(id + '/'))) {
+				repairAliases();
+			}
+		} catch (IOException e) {
+			log.error(String.format("cannot remove %s from index", path));
+		}
+	}
+
+	/**
+	 * Checks if the given file or folder is ignored for indexing.
+	 * @param path the file or folder to check
+	 * @param folder {@code true} if the path is a folder
+	 * @return {@code true} if the path (and the contents of a folder) is not indexed
+	 */
+	public boolean isIgnored(final Path path, final boolean folder) {
+		return ignoreRules.isIgnored(relativeId(path), folder);
 	}
 
 	/**
@@ -96,11 +504,11 @@ public class Indexer implements FileVisitor<Path> {
 	 */
 	@Override
 	public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
-		if (!ignoreMatchers
-			.stream()
-			.filter(matcher -> matcher.matches(dir))
-			.findAny()
-			.isEmpty()) {
+		if (excludedScopes.contains(relativeId(dir))) {
+			return FileVisitResult.SKIP_SUBTREE;
+		}
+		if (isIgnored(dir, true)) {
+			stats.skipped(IndexStats.Skip.ignoredFolder);
 			if (log.isDebugEnabled()) {
 				log.debug("ignoring folder " + dir);
 			}
@@ -117,20 +525,52 @@ public class Indexer implements FileVisitor<Path> {
 	 */
 	@Override
 	public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
-		final String mimeType = Optional.ofNullable(Files.probeContentType(file)).orElse("text/plain");
-		if (!ignoredMimeTypes.matcher(mimeType).matches()) {
-			addToIndex(file);
-		} else if (log.isDebugEnabled()) {
-			log.debug(String.format("skipping file %s because of mime type %s", file, mimeType));
+		if (dependencies.containsKey(file)) {
+			// indexed after the walk
+			return FileVisitResult.CONTINUE;
+		}
+		stats.visited();
+		if (isIgnored(file, false)) {
+			stats.skipped(IndexStats.Skip.ignoredFile);
+			if (log.isDebugEnabled()) {
+				log.debug("ignoring file " + file);
+			}
+		} else if (executor != null) {
+			submit(file, attrs);
+		} else {
+			process(file, attrs);
 		}
 		return FileVisitResult.CONTINUE;
 	}
 
+	/**
+	 * Indexes the archives set with {@link #setDependencies(Map)}, on the workers if any.
+	 */
+	protected void indexDependencies() {
+		for (final Path file : dependencies.keySet()) {
+			stats.visited();
+			final BasicFileAttributes attrs;
+			try {
+				attrs = Files.readAttributes(file, BasicFileAttributes.class);
+			} catch (IOException e) {
+				stats.skipped(IndexStats.Skip.unreadable);
+				continue;
+			}
+			if (executor != null) {
+				submit(file, attrs);
+			} else {
+				process(file, attrs);
+			}
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public FileVisitResult visitFileFailed(final Path file, final IOException exception) throws IOException {
+		stats.visited();
+		stats.skipped(IndexStats.Skip.unreadable);
 		return FileVisitResult.CONTINUE;
 	}
 
@@ -142,36 +582,877 @@ public class Indexer implements FileVisitor<Path> {
 		return FileVisitResult.CONTINUE;
 	}
 
-	protected void addToIndex(final Path path) {
+	protected void process(final Path file, final BasicFileAttributes attrs) {
+		process(file, attrs, false);
+	}
+
+	/**
+	 * Indexes a file.
+	 * @param file the file
+	 * @param attrs the attributes of the file
+	 * @param force {@code true} to index the file even if it is unchanged
+	 */
+	protected void process(final Path file, final BasicFileAttributes attrs, final boolean force) {
+		final long start = System.nanoTime();
 		try {
-			if (Files.isRegularFile(path)) {
+			final BasicFileAttributes fileAttrs = attrs.isSymbolicLink() ? Files.readAttributes(file, BasicFileAttributes.class) : attrs;
+			if (!fileAttrs.isRegularFile()) {
+				return;
+			}
+			final String id = relativeId(file);
+			final FileState previous = known.remove(id);
+			if (!force && incremental && previous != null && previous.size == fileAttrs.size() && previous.modified == fileAttrs.lastModifiedTime().toMillis()) {
+				stats.skipped(IndexStats.Skip.unchanged);
 				if (log.isDebugEnabled()) {
-					log.debug("adding file " + path);
+					log.debug("unchanged file " + file);
+				}
+				return;
+			}
+			try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				final byte[] head = readHead(channel);
+				final ContentType type = ContentType.detect(file.getFileName().toString(), head, head.length < ContentType.HEAD_SIZE, charset);
+				stats.read(head.length);
+				stats.time(IndexStats.Phase.probe, System.nanoTime() - start);
+				if (ignoredMimeTypes.matcher(type.getMimeType()).matches()) {
+					stats.skipped(IndexStats.Skip.mimeType);
+					if (log.isDebugEnabled()) {
+						log.debug(String.format("skipping file %s because of mime type %s", file, type.getMimeType()));
+					}
+					discard(id);
+					forget(id, previous);
+				} else if ((archives || dependencies.containsKey(file)) && ContentType.ZIP.equals(type.getMimeType())) {
+					addArchive(file, id, fileAttrs, previous, force, start);
+				} else if (type.isBinary()) {
+					stats.skipped(IndexStats.Skip.binary);
+					if (log.isDebugEnabled()) {
+						log.debug(String.format("skipping binary file %s of mime type %s", file, type.getMimeType()));
+					}
+					discard(id);
+					forget(id, previous);
+				} else {
+					String hash = null;
+					if (incremental || dedup) {
+						final long hashing = System.nanoTime();
+						hash = hash(file);
+						stats.read(fileAttrs.size());
+						stats.time(IndexStats.Phase.read, System.nanoTime() - hashing);
+						if (!force && incremental && previous != null && previous.size == fileAttrs.size() && hash.equals(previous.hash)) {
+							stats.skipped(IndexStats.Skip.unchanged);
+							if (log.isDebugEnabled()) {
+								log.debug("unchanged contents of file " + file);
+							}
+							// the new modification time spares hashing the file on the next update
+							indexWriter.updateNumericDocValue(new Term(Constants.FIELD_ID, id), Constants.FIELD_MODIFIED, fileAttrs.lastModifiedTime().toMillis());
+							return;
+						}
+					}
+					final boolean alias = dedup && !register(id, hash, previous);
+					if (log.isDebugEnabled()) {
+						log.debug((alias ? "adding alias " : "adding file ") + file);
+					}
+					try {
+						if (!alias && isChunked(type, fileAttrs.size())) {
+							addChunks(file, id, fileAttrs, hash, channel, head, type);
+						} else {
+							final Document document = createDocument(file, id, fileAttrs, hash);
+							if (alias) {
+								document.add(new StringField(Constants.FIELD_ALIAS_OF, hash, Field.Store.YES));
+								stats.aliased();
+							} else {
+								if (dedup) {
+									document.add(new SortedDocValuesField(Constants.FIELD_CONTENT_HASH, new BytesRef(hash)));
+								}
+								addContents(document, file, channel, head, type, fileAttrs.size());
+							}
+							final long analyze = System.nanoTime();
+							addToIndex(id, document);
+							stats.time(IndexStats.Phase.analyze, System.nanoTime() - analyze);
+						}
+					} catch (IOException e) {
+						if (dedup && !alias) {
+							// its aliases are repaired
+							canonicals.remove(hash, id);
+						}
+						throw e;
+					}
+					stats.indexed(id, System.nanoTime() - start, fileAttrs.size());
+				}
+			}
+		} catch (IOException e) {
+			stats.skipped(IndexStats.Skip.unreadable);
+			log.error(String.format("cannot add %s to index", file));
+		}
+	}
+
+	/**
+	 * Adds the fields for the text of a file of which the head has already been read:
+	 * the contents, the identifiers split by {@link CodeAnalyzer} and, if enabled, the trigrams.
+	 * Files up to the map threshold (but at most {@link #MAX_TEXT_SIZE} bytes), and files
+	 * whose text is stored (see {@link #setContext(boolean)}), are read into memory. Larger
+	 * files, and truncated files, are decoded from memory-mapped windows.
+	 * @param document the document to add the fields to
+	 * @param file the file
+	 * @param channel the channel of the file, positioned after the head
+	 * @param head the head of the file
+	 * @param type the detected content type
+	 * @param size the size of the file
+	 * @throws IOException in case of error
+	 */
+	protected void addContents(final Document document, final Path file, final FileChannel channel, final byte[] head, final ContentType type, final long size) throws IOException {
+		long length = size;
+		if (maxFileSize > 0 && size > maxFileSize) {
+			log.info(String.format("Truncating %s: indexing %d of %d bytes", file, Long.valueOf(maxFileSize), Long.valueOf(size)));
+			length = maxFileSize;
+			stats.truncated();
+		}
+		// the head has already been counted
+		stats.read(Math.max(0, length - head.length));
+		if (length < size) {
+			document.add(new StoredField(Constants.FIELD_END, length));
+		}
+		final boolean context = isStored(length);
+		if (!context && (length > Math.min(mapThreshold, MAX_TEXT_SIZE) || length < size)) {
+			final long start = Math.min(type.getOffset(), length);
+			document.add(new Field(Constants.FIELD_CONTENTS, new MappedFileReader(channel, start, length - start, type.getCharset()), contentsType));
+			document.add(new Field(Constants.FIELD_IDENTIFIERS, new MappedFileReader(channel, start, length - start, type.getCharset()), identifiersType));
+			if (trigrams) {
+				document.add(new Field(Constants.FIELD_TRIGRAMS, new MappedFileReader(channel, start, length - start, type.getCharset()), TRIGRAMS_TYPE));
+			}
+		} else {
+			final long read = System.nanoTime();
+			final String text = readText(channel, head, type, (int) length);
+			stats.time(IndexStats.Phase.read, System.nanoTime() - read);
+			addText(document, text, context);
+		}
+	}
+
+	/**
+	 * Checks if a file is indexed as chunks: if chunks are enabled, the file is larger than
+	 * the chunk size and its charset encodes line breaks as single bytes (not UTF-16 or UTF-32).
+	 * @param type the detected content type of the file
+	 * @param size the size of the file
+	 * @return {@code true} if the file is indexed as chunks
+	 */
+	protected boolean isChunked(final ContentType type, final long size) {
+		return chunkSize > 0 && size > chunkSize && Arrays.equals(LINE_BREAK, "\n".getBytes(type.getCharset()));
+	}
+
+	/**
+	 * Indexes a large file as chunks of about the chunk size, each a document with the identifier
+	 * of the file. Chunks end at line breaks and start with the last lines of the previous
+	 * chunk (the overlap), so matches spanning the end of a chunk are found in the next chunk.
+	 * Each chunk records its number, its offset in bytes and its first line; its text is stored
+	 * if the chunk is within the context size, so search results can show the matching lines.
+	 * The file is streamed, at most one chunk is held in memory. Previously indexed
+	 * documents of the file are replaced.
+	 * @param file the file
+	 * @param id the identifier of the file
+	 * @param attrs the attributes of the file
+	 * @param hash the content hash of the file, may be {@code null}
+	 * @param channel the channel of the file
+	 * @param head the head of the file
+	 * @param type the detected content type
+	 * @throws IOException in case of error
+	 */
+	protected void addChunks(final Path file, final String id, final BasicFileAttributes attrs, final String hash, final FileChannel channel, final byte[] head, final ContentType type) throws IOException {
+		long length = attrs.size();
+		if (maxFileSize > 0 && length > maxFileSize) {
+			log.info(String.format("Truncating %s: indexing %d of %d bytes", file, Long.valueOf(maxFileSize), Long.valueOf(length)));
+			length = maxFileSize;
+			stats.truncated();
+		}
+		// the head has already been counted
+		stats.read(Math.max(0, length - head.length));
+		if (append) {
+			indexWriter.deleteDocuments(new Term(Constants.FIELD_ID, id));
+		}
+		final long start = Math.min(type.getOffset(), length);
+		channel.position(start);
+		// not closed, the channel is closed by the caller
+		final InputStream in = new BufferedInputStream(Channels.newInputStream(channel), HASH_BUFFER_SIZE);
+		byte[] buffer = new byte[(int) chunkSize + HASH_BUFFER_SIZE];
+		long remaining = length - start;
+		long offset = start;
+		int line = 1;
+		int carried = 0;
+		long analyze = 0;
+		final long reading = System.nanoTime();
+		for (int chunk = 0; remaining > 0; chunk++) {
+			final int count = (int) Math.min(chunkSize, remaining);
+			if (buffer.length < carried + count) {
+				buffer = Arrays.copyOf(buffer, carried + count + HASH_BUFFER_SIZE);
+			}
+			int size = carried + in.readNBytes(buffer, carried, count);
+			// complete the last line, unless it is much longer than a chunk
+			while (size < remaining + carried && (size == 0 || buffer[size - 1] != '\n') && size < 2 * chunkSize) {
+				final int next = in.read();
+				if (next < 0) {
+					break;
+				}
+				if (size == buffer.length) {
+					buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+				}
+				buffer[size++] = (byte) next;
+			}
+			if (size == carried) {
+				break;
+			}
+			remaining -= size - carried;
+			final Document document = createDocument(file, id, attrs, hash);
+			if (dedup) {
+				document.add(new SortedDocValuesField(Constants.FIELD_CONTENT_HASH, new BytesRef(hash)));
+			}
+			document.add(new NumericDocValuesField(Constants.FIELD_CHUNK, chunk));
+			document.add(new StoredField(Constants.FIELD_CHUNK, chunk));
+			document.add(new StoredField(Constants.FIELD_CHUNK_OFFSET, offset));
+			document.add(new StoredField(Constants.FIELD_END, offset + size));
+			document.add(new NumericDocValuesField(Constants.FIELD_CHUNK_LINE, line));
+			addText(document, new String(buffer, 0, size, type.getCharset()), isStored(size));
+			final long adding = System.nanoTime();
+			indexWriter.addDocument(document);
+			analyze += System.nanoTime() - adding;
+			stats.chunk();
+			// carry the overlapping lines over to the next chunk, at most half of the chunk
+			carried = 0;
+			for (int lines = 0, i = size - 2; i >= size / 2 && lines < chunkOverlap; i--) {
+				if (buffer[i] == '\n') {
+					carried = size - i - 1;
+					lines++;
+				}
+			}
+			for (int i = 0; i < size - carried; i++) {
+				if (buffer[i] == '\n') {
+					line++;
+				}
+			}
+			offset += size - carried;
+			System.arraycopy(buffer, size - carried, buffer, 0, carried);
+		}
+		stats.time(IndexStats.Phase.analyze, analyze);
+		stats.time(IndexStats.Phase.read, System.nanoTime() - reading - analyze);
+	}
+
+	/**
+	 * Checks if the text of a file is stored, see {@link #setContext(boolean)}.
+	 * @param length the number of bytes of the indexed text
+	 * @return {@code true} if the text is stored
+	 */
+	protected boolean isStored(final long length) {
+		return context && length <= contextSize;
+	}
+
+	/**
+	 * Adds the fields for text read in memory: the contents, the identifiers,
+	 * if enabled the trigrams, and when indexing with context the line starts of stored text.
+	 * @param document the document to add the fields to
+	 * @param text the text
+	 * @param stored {@code true} to store the text
+	 */
+	protected void addText(final Document document, final String text, final boolean stored) {
+		document.add(new Field(Constants.FIELD_CONTENTS, text, stored ? storedContentsType : contentsType));
+		document.add(new Field(Constants.FIELD_IDENTIFIERS, text, identifiersType));
+		if (trigrams) {
+			document.add(new Field(Constants.FIELD_TRIGRAMS, text, TRIGRAMS_TYPE));
+		}
+		if (stored && context) {
+			document.add(new BinaryDocValuesField(Constants.FIELD_LINES, LineStarts.encode(text)));
+		}
+	}
+
+	/**
+	 * Indexes the text entries of a zip or jar archive, streamed without extracting them.
+	 * The text of the entries is always stored, as they cannot be read again for regular expressions.
+	 * The previously indexed entries of the archive are replaced, unless the size and the
+	 * modification time of the archive are unchanged. Entries are read up to the maximal
+	 * file size, at most {@link #MAX_TEXT_SIZE} bytes; nested archives are not opened.
+	 * @param file the archive
+	 * @param id the identifier of the archive
+	 * @param attrs the attributes of the archive
+	 * @param previous the state of the archive in the existing index, may be {@code null}
+	 * @param force {@code true} to read the archive even if it is unchanged
+	 * @param start the start time of processing the archive
+	 * @throws IOException in case of error
+	 */
+	protected void addArchive(final Path file, final String id, final BasicFileAttributes attrs, final FileState previous, final boolean force, final long start) throws IOException {
+		if (!force && previous != null && previous.size == attrs.size() && previous.modified == attrs.lastModifiedTime().toMillis()) {
+			stats.skipped(IndexStats.Skip.unchanged);
+			if (log.isDebugEnabled()) {
+				log.debug("unchanged archive " + file);
+			}
+			return;
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("adding archive " + file);
+		}
+		if (append) {
+			indexWriter.deleteDocuments(new Term(Constants.FIELD_ARCHIVE, id));
+		}
+		final long limit = maxFileSize > 0 ? Math.min(maxFileSize, MAX_TEXT_SIZE) : MAX_TEXT_SIZE;
+		long analyze = 0;
+		int entries = 0;
+		try (final ZipInputStream zip = new ZipInputStream(new BufferedInputStream(Files.newInputStream(file), HASH_BUFFER_SIZE))) {
+			for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+				if (entry.isDirectory()) {
+					continue;
+				}
+				final byte[] bytes = zip.readNBytes((int) limit);
+				stats.read(bytes.length);
+				final boolean complete = zip.read() < 0;
+				final String name = entry.getName();
+				final String fileName = name.substring(name.lastIndexOf('/') + 1);
+				final ContentType type = ContentType.detect(fileName, Arrays.copyOf(bytes, Math.min(bytes.length, ContentType.HEAD_SIZE)), complete && bytes.length <= ContentType.HEAD_SIZE, charset);
+				if (type.isBinary() || ignoredMimeTypes.matcher(type.getMimeType()).matches()) {
+					continue;
 				}
+				final String entryId = id + Constants.ARCHIVE_SEPARATOR + name;
+				final int offset = Math.min(type.getOffset(), bytes.length);
 				final Document document = new Document();
-				document.add(new StringField(Constants.FIELD_PATH, relativePath(path.getParent()), Field.Store.YES));
-				final File file = path.toFile();
-				document.add(new StringField(Constants.FIELD_FILENAME, file.getName(), Field.Store.YES));
-				document.add(new TextField(Constants.FIELD_CONTENTS, new FileReader(file)));
+				document.add(new StringField(Constants.FIELD_ID, entryId, Field.Store.YES));
+				document.add(new SortedDocValuesField(Constants.FIELD_ID, new BytesRef(entryId)));
+				document.add(new StringField(Constants.FIELD_PATH, entryId.substring(0, entryId.length() - fileName.length() - 1), Field.Store.YES));
+				document.add(new StringField(Constants.FIELD_FILENAME, fileName, Field.Store.YES));
+				document.add(new StringField(Constants.FIELD_ARCHIVE, id, Field.Store.YES));
+				addModule(document, file);
+				addFacets(document, entryId, fileName);
+				document.add(new StoredField(Constants.FIELD_SIZE, entry.getSize() >= 0 ? entry.getSize() : bytes.length));
+				final long modified = entry.getTime() >= 0 ? entry.getTime() : attrs.lastModifiedTime().toMillis();
+				document.add(new StoredField(Constants.FIELD_MODIFIED, modified));
+				document.add(new NumericDocValuesField(Constants.FIELD_MODIFIED, modified));
+				// entries cannot be read again for regular expressions
+				addText(document, new String(bytes, offset, bytes.length - offset, type.getCharset()), true);
+				final long adding = System.nanoTime();
+				// the previous entries have been deleted
 				indexWriter.addDocument(document);
+				analyze += System.nanoTime() - adding;
+				stats.entry();
+				entries++;
+			}
+		}
+		stats.read(attrs.size());
+		final Document document = createDocument(file, id, attrs, null);
+		document.add(new StoredField(Constants.FIELD_ENTRIES, entries));
+		addToIndex(id, document);
+		stats.time(IndexStats.Phase.analyze, analyze);
+		stats.time(IndexStats.Phase.read, System.nanoTime() - start - analyze);
+		stats.indexed(id, System.nanoTime() - start, attrs.size());
+	}
+
+	protected Document createDocument(final Path path, final String id, final BasicFileAttributes attrs, final String hash) {
+		final Document document = new Document();
+		document.add(new StringField(Constants.FIELD_ID, id, Field.Store.YES));
+		document.add(new SortedDocValuesField(Constants.FIELD_ID, new BytesRef(id)));
+		document.add(new StringField(Constants.FIELD_PATH, relativePath(path.getParent()), Field.Store.YES));
+		document.add(new StringField(Constants.FIELD_FILENAME, path.getFileName().toString(), Field.Store.YES));
+		addModule(document, path);
+		addFacets(document, id, path.getFileName().toString());
+		document.add(new StoredField(Constants.FIELD_SIZE, attrs.size()));
+		document.add(new StoredField(Constants.FIELD_MODIFIED, attrs.lastModifiedTime().toMillis()));
+		document.add(new NumericDocValuesField(Constants.FIELD_MODIFIED, attrs.lastModifiedTime().toMillis()));
+		if (hash != null) {
+			document.add(new StoredField(Constants.FIELD_HASH, hash));
+		}
+		return document;
+	}
+
+	/**
+	 * Adds the module of a file, if any: the module of its dependency or the module set for the indexer.
+	 * @param document the document to add the field to
+	 * @param file the file
+	 */
+	protected void addModule(final Document document, final Path file) {
+		final String name = dependencies.getOrDefault(file, module);
+		if (name != null) {
+			document.add(new StringField(Constants.FIELD_MODULE, name, Field.Store.YES));
+			document.add(new SortedDocValuesField(Constants.FIELD_FACET_MODULE, new BytesRef(name)));
+		}
+	}
+
+	/**
+	 * Adds the facet fields of the top-level folder and the extension of a file, see {@link Facets}.
+	 * @param document the document to add the fields to
+	 * @param id the identifier of the file
+	 * @param fileName the name of the file
+	 */
+	protected void addFacets(final Document document, final String id, final String fileName) {
+		document.add(new SortedDocValuesField(Constants.FIELD_FACET_DIRECTORY, new BytesRef(Facets.directory(id))));
+		final String extension = Facets.extension(fileName);
+		if (extension != null) {
+			document.add(new SortedDocValuesField(Constants.FIELD_FACET_EXTENSION, new BytesRef(extension)));
+		}
+	}
+
+	protected void addToIndex(final String id, final Document document) throws IOException {
+		if (append) {
+			indexWriter.updateDocument(new Term(Constants.FIELD_ID, id), document);
+		} else {
+			indexWriter.addDocument(document);
+		}
+	}
+
+	/**
+	 * Removes a previously indexed document of a file which is no longer indexed,
+	 * along with its entries if it was an archive.
+	 * @param id the identifier of the file
+	 * @throws IOException in case of error
+	 */
+	protected void discard(final String id) throws IOException {
+		if (append) {
+			indexWriter.deleteDocuments(new Term(Constants.FIELD_ID, id), new Term(Constants.FIELD_ARCHIVE, id));
+		}
+	}
+
+	/**
+	 * Reads the recorded state of the indexed files. Indexes created before
+	 * documents were keyed and sorted by {@link Constants#FIELD_ID}, before
+	 * offsets were recorded for {@link Constants#FIELD_CONTENTS}, without
+	 * {@link Constants#FIELD_IDENTIFIERS}, or without the modification time
+	 * as doc values, cannot be updated.
+	 * <p>An index without trigrams is rebuilt if trigrams are requested, and
+	 * an index without deduplication if deduplication is requested. Trigrams,
+	 * deduplication, archive entries and stored text are kept otherwise.
+	 * An index with another schema than the configured profile is rebuilt.
+	 * Without a configured profile, the index keeps its schema.</p>
+	 * @param directory the index directory
+	 * @return {@code true} if the existing index can be updated, {@code false} if it must be rebuilt
+	 * @throws IOException in case of error
+	 */
+	protected boolean loadState(final Directory directory) throws IOException {
+		try (final DirectoryReader reader = DirectoryReader.open(directory)) {
+			if (reader.numDocs() > 0 && !isCompatible(reader)) {
+				log.warn("Existing index was built by an older version and will be rebuilt");
+				return false;
 			}
-		} catch(IOException e) {
-			log.error(String.format("cannot add %s to index", path));
+			if (reader.numDocs() > 0) {
+				final boolean indexed = hasTrigrams(reader);
+				if (trigrams && !indexed) {
+					log.info("Existing index has no trigrams and will be rebuilt");
+					return false;
+				}
+				trigrams = indexed;
+				final boolean deduplicated = isDeduplicated(reader);
+				if (dedup && !deduplicated) {
+					log.info("Existing index is not deduplicated and will be rebuilt");
+					return false;
+				}
+				dedup = deduplicated;
+				archives |= hasArchives(reader);
+				context |= hasContext(reader);
+			}
+			// the schema is checked even without live documents, as it cannot be changed
+			final FieldInfos fieldInfos = FieldInfos.getMergedFieldInfos(reader);
+			if (profile == null) {
+				active.adopt(fieldInfos);
+				activate(active);
+			} else if (!profile.matches(fieldInfos)) {
+				log.info("Existing index was built with a different profile and will be rebuilt");
+				return false;
+			}
+			for (final LeafReaderContext context : reader.leaves()) {
+				final Bits liveDocs = context.reader().getLiveDocs();
+				final StoredFields storedFields = context.reader().storedFields();
+				final NumericDocValues modifiedTimes = context.reader().getNumericDocValues(Constants.FIELD_MODIFIED);
+				for (int i = 0; i < context.reader().maxDoc(); i++) {
+					if (liveDocs == null || liveDocs.get(i)) {
+						final Document document = storedFields.document(i, STATE_FIELDS);
+						final String id = document.get(Constants.FIELD_ID);
+						final String hash = document.get(Constants.FIELD_HASH);
+						if (archives && document.get(Constants.FIELD_ARCHIVE) != null) {
+							// replaced with their archive
+							continue;
+						}
+						// the doc values have the modification time of touched files
+						known.put(id, new FileState(
+							document.getField(Constants.FIELD_SIZE).numericValue().longValue(),
+							modifiedTimes != null && modifiedTimes.advanceExact(i) ? modifiedTimes.longValue() : document.getField(Constants.FIELD_MODIFIED).numericValue().longValue(),
+							hash
+						));
+						if (dedup && hash != null && document.get(Constants.FIELD_ALIAS_OF) == null) {
+							canonicals.put(hash, id);
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the identifiers of the files with contents in a deduplicated index by their content hash.
+	 * @param reader the index reader
+	 * @throws IOException in case of error
+	 */
+	private void loadCanonicals(final DirectoryReader reader) throws IOException {
+		for (final LeafReaderContext context : reader.leaves()) {
+			final Bits liveDocs = context.reader().getLiveDocs();
+			final StoredFields storedFields = context.reader().storedFields();
+			for (int i = 0; i < context.reader().maxDoc(); i++) {
+				if (liveDocs == null || liveDocs.get(i)) {
+					final Document document = storedFields.document(i, STATE_FIELDS);
+					final String hash = document.get(Constants.FIELD_HASH);
+					if (hash != null && document.get(Constants.FIELD_ALIAS_OF) == null) {
+						canonicals.put(hash, document.get(Constants.FIELD_ID));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if an index must be rebuilt before it can be searched, because it
+	 * does not exist or was built by an older version.
+	 * @param indexPath the index folder
+	 * @return {@code true} if the index must be (re)built
+	 * @throws IOException in case of error
+	 */
+	public static boolean needsRebuild(final Path indexPath) throws IOException {
+		try (final Directory directory = FSDirectory.open(indexPath)) {
+			if (!DirectoryReader.indexExists(directory)) {
+				return true;
+			}
+			try (final DirectoryReader reader = DirectoryReader.open(directory)) {
+				return reader.numDocs() > 0 && !isCompatible(reader);
+			}
+		}
+	}
+
+	protected static boolean isCompatible(final DirectoryReader reader) {
+		final FieldInfos fieldInfos = FieldInfos.getMergedFieldInfos(reader);
+		final FieldInfo id = fieldInfos.fieldInfo(Constants.FIELD_ID);
+		final FieldInfo contents = fieldInfos.fieldInfo(Constants.FIELD_CONTENTS);
+		final FieldInfo modified = fieldInfos.fieldInfo(Constants.FIELD_MODIFIED);
+		return id != null
+			&& id.getDocValuesType() == DocValuesType.SORTED
+			&& (modified == null || modified.getDocValuesType() == DocValuesType.NUMERIC)
+			&& (contents == null || contents.getIndexOptions() == CONTENTS_TYPE.indexOptions())
+			&& (contents == null || fieldInfos.fieldInfo(Constants.FIELD_IDENTIFIERS) != null)
+			&& reader
+				.leaves()
+				.stream()
+				.allMatch(context -> INDEX_SORT.equals(context.reader().getMetaData().getSort()));
+	}
+
+	/**
+	 * Checks if an index has stored text for showing matching lines.
+	 * @param reader the index reader
+	 * @return {@code true} if {@link Constants#FIELD_LINES} is indexed
+	 */
+	protected static boolean hasContext(final IndexReader reader) {
+		return FieldInfos.getMergedFieldInfos(reader).fieldInfo(Constants.FIELD_LINES) != null;
+	}
+
+	/**
+	 * Checks if an index has trigrams.
+	 * @param reader the index reader
+	 * @return {@code true} if {@link Constants#FIELD_TRIGRAMS} is indexed
+	 */
+	protected static boolean hasTrigrams(final IndexReader reader) {
+		return FieldInfos.getMergedFieldInfos(reader).fieldInfo(Constants.FIELD_TRIGRAMS) != null;
+	}
+
+	/**
+	 * Checks if an index has entries of archives.
+	 * @param reader the index reader
+	 * @return {@code true} if {@link Constants#FIELD_ARCHIVE} is indexed
+	 */
+	protected static boolean hasArchives(final IndexReader reader) {
+		return FieldInfos.getMergedFieldInfos(reader).fieldInfo(Constants.FIELD_ARCHIVE) != null;
+	}
+
+	/**
+	 * Checks if an index is deduplicated.
+	 * @param reader the index reader
+	 * @return {@code true} if {@link Constants#FIELD_CONTENT_HASH} is indexed
+	 */
+	protected static boolean isDeduplicated(final IndexReader reader) {
+		return FieldInfos.getMergedFieldInfos(reader).fieldInfo(Constants.FIELD_CONTENT_HASH) != null;
+	}
+
+	/**
+	 * Registers the contents of a file in deduplicated mode.
+	 * @param id the identifier of the file
+	 * @param hash the hash of the contents
+	 * @param previous the state of the file in the existing index, may be {@code null}
+	 * @return {@code true} if the file is indexed with its contents, {@code false} if it is an alias
+	 */
+	private boolean register(final String id, final String hash, final FileState previous) {
+		if (previous != null && !hash.equals(previous.hash)) {
+			forget(id, previous);
 		}
+		final String canonical = canonicals.putIfAbsent(hash, id);
+		return canonical == null || canonical.equals(id);
+	}
+
+	/**
+	 * Forgets the contents of a file which are no longer indexed with the file.
+	 * @param id the identifier of the file
+	 * @param previous the state of the file in the existing index, may be {@code null}
+	 */
+	private void forget(final String id, final FileState previous) {
+		if (previous != null && previous.hash != null) {
+			canonicals.remove(previous.hash, id);
+		}
+	}
+
+	/**
+	 * Indexes an alias with its contents for each contents which are no longer indexed,
+	 * as the file with the contents was changed or deleted.
+	 * @throws IOException in case of error
+	 */
+	protected void repairAliases() throws IOException {
+		final Map<String, String> orphans = new HashMap<>();
+		try (final DirectoryReader reader = DirectoryReader.open(indexWriter)) {
+			for (final LeafReaderContext context : reader.leaves()) {
+				final Terms terms = context.reader().terms(Constants.FIELD_ALIAS_OF);
+				if (terms == null) {
+					continue;
+				}
+				final Bits liveDocs = context.reader().getLiveDocs();
+				final StoredFields storedFields = context.reader().storedFields();
+				final TermsEnum termsEnum = terms.iterator();
+				PostingsEnum postings = null;
+				for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+					final String hash = term.utf8ToString();
+					if (canonicals.containsKey(hash) || orphans.containsKey(hash)) {
+						continue;
+					}
+					postings = termsEnum.postings(postings, PostingsEnum.NONE);
+					for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+						if (liveDocs == null || liveDocs.get(doc)) {
+							orphans.put(hash, storedFields.document(doc, STATE_FIELDS).get(Constants.FIELD_ID));
+							break;
+						}
+					}
+				}
+			}
+		}
+		// the alias documents are replaced
+		append = true;
+		for (final String id : orphans.values()) {
+			final Path file = rootFolder.resolve(id);
+			if (log.isDebugEnabled()) {
+				log.debug("indexing contents of alias " + file);
+			}
+			try {
+				process(file, Files.readAttributes(file, BasicFileAttributes.class), true);
+			} catch (IOException e) {
+				discard(id);
+			}
+		}
+	}
+
+	/**
+	 * Removes the documents of all previously indexed files which
+	 * have not been seen during the walk.
+	 * @throws IOException in case of error
+	 */
+	protected void removeDeleted() throws IOException {
+		if (!known.isEmpty()) {
+			known.forEach(this::forget);
+			stats.removed(known.size());
+			log.info(String.format("Removing %d deleted files from index", Integer.valueOf(known.size())));
+			indexWriter.deleteDocuments(known
+				.keySet()
+				.stream()
+				.flatMap(id -> Stream.of(new Term(Constants.FIELD_ID, id), new Term(Constants.FIELD_ARCHIVE, id)))
+				.toArray(Term[]::new));
+		}
+	}
+
+	/**
+	 * Opens a reader on the indexed text of a file, decoded in the detected charset from
+	 * memory-mapped windows. A byte order mark at the start of the file is skipped.
+	 * @param file the file
+	 * @param channel the channel of the file, positioned at its start; not closed by the reader
+	 * @param start the position in bytes of the text, zero for the whole file
+	 * @param end the end in bytes of the text, see {@link Constants#FIELD_END}
+	 * @param charset the charset for files without byte order mark, may be {@code null}
+	 * @return the reader
+	 * @throws IOException in case of error
+	 */
+	public static Reader openText(final Path file, final FileChannel channel, final long start, final long end, final Charset charset) throws IOException {
+		final byte[] head = readHead(channel);
+		final ContentType type = ContentType.detect(file.getFileName().toString(), head, head.length < ContentType.HEAD_SIZE, charset);
+		final long from = Math.max(start, Math.min(type.getOffset(), end));
+		return new MappedFileReader(channel, from, Math.max(0, Math.min(end, channel.size()) - from), type.getCharset());
+	}
+
+	private static String readText(final FileChannel channel, final byte[] head, final ContentType type, final int length) throws IOException {
+		final byte[] bytes = Arrays.copyOf(head, length);
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		buffer.position(Math.min(head.length, length));
+		while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+			// fill the buffer
+		}
+		final int offset = Math.min(type.getOffset(), buffer.position());
+		return new String(bytes, offset, buffer.position() - offset, type.getCharset());
+	}
+
+	private static byte[] readHead(final FileChannel channel) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(ContentType.HEAD_SIZE);
+		while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+			// fill the buffer
+		}
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	/**
+	 * Computes the hash of the contents of the given file.
+	 * @param path the file to hash
+	 * @return the hash as hexadecimal string
+	 * @throws IOException in case of error
+	 */
+	protected static String hash(final Path path) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		try (final InputStream in = Files.newInputStream(path)) {
+			final byte[] buffer = new byte[HASH_BUFFER_SIZE];
+			int count;
+			while ((count = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, count);
+			}
+		}
+		final StringBuilder result = new StringBuilder(2 * digest.getDigestLength());
+		for (final byte b : digest.digest()) {
+			result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Merges the index into the number of segments of the profile, if any.
+	 * @throws IOException in case of error
+	 */
+	protected void merge() throws IOException {
+		if (active.getMaxSegments() > 0) {
+			final long merge = System.nanoTime();
+			indexWriter.forceMerge(active.getMaxSegments());
+			stats.time(IndexStats.Phase.merge, System.nanoTime() - merge);
+		}
+	}
+
+	/**
+	 * Creates the configuration for the index writer.
+	 * @return the index writer configuration
+	 */
+	protected IndexWriterConfig createConfig() {
+		return active.configure(new IndexWriterConfig(CodeAnalyzer.perField(true))
+			.setIndexSort(INDEX_SORT));
+	}
+
+	/**
+	 * Makes a profile the one in effect, creating the field types for its schema.
+	 * @param profile the profile
+	 */
+	private void activate(final IndexProfile profile) {
+		active = profile;
+		contentsType = createContentsType(false, profile.hasNorms());
+		storedContentsType = createContentsType(true, profile.hasNorms());
+		identifiersType = createIdentifiersType(profile.hasNorms());
+	}
+
+	/**
+	 * Creates the worker pool. The queue is bounded, so the walker cannot
+	 * run arbitrarily far ahead of the workers; if the queue is full, the
+	 * walker processes the file itself.
+	 * @return the executor for indexing files
+	 */
+	protected ExecutorService createExecutor() {
+		return new ThreadPoolExecutor(
+			threads,
+			threads,
+			0L,
+			TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(QUEUE_CAPACITY_PER_THREAD * threads),
+			new ThreadPoolExecutor.CallerRunsPolicy()
+		);
+	}
+
+	/**
+	 * Hands a file to the workers. The first failure of a worker is recorded
+	 * and thrown once the workers are done.
+	 * @param file the file
+	 * @param attrs the attributes of the file
+	 */
+	private void submit(final Path file, final BasicFileAttributes attrs) {
+		executor.execute(() -> {
+			try {
+				process(file, attrs);
+			} catch (RuntimeException|Error e) {
+				failure.compareAndSet(null, e);
+			}
+		});
+	}
+
+	private void awaitWorkers() throws InterruptedException {
+		executor.shutdown();
+		while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+			log.info("Waiting for indexing to finish...");
+		}
+		executor = null;
 	}
 
 	protected String relativePath(final Path path) {
-		return rootFolder.relativize(path).toString();
-	}
-
-	protected static List<PathMatcher> createPathMatchers(final String indexFolder, final String ignoreFolders) {
-		final FileSystem fs = FileSystems.getDefault();
-		return Stream.concat(
-				Stream.of(indexFolder),
-				ignoreFolders != null ? Arrays.stream(ignoreFolders.split(",")) : Stream.empty()
-			)
-			.map(name -> String.format("glob:**/%s", name))
-			.map(fs::getPathMatcher)
-			.collect(Collectors.toList());
+		return path.startsWith(rootFolder) ? rootFolder.relativize(path).toString() : path.toString();
+	}
+
+	/**
+	 * Returns the identifier of a file, which is its path relative
+	 * to the root folder using {@code /} as separator on all platforms.
+	 * Files outside of the root folder (dependencies) are identified by their absolute path.
+	 * @param path the file
+	 * @return the identifier
+	 */
+	protected String relativeId(final Path path) {
+		if (!path.startsWith(rootFolder)) {
+			return path.toString().replace(File.separatorChar, '/');
+		}
+		final StringBuilder result = new StringBuilder();
+		for (final Path element : rootFolder.relativize(path)) {
+			if (result.length() > 0) {
+				result.append('/');
+			}
+			result.append(element.toString());
+		}
+		return result.toString();
+	}
+
+	private static FieldType createContentsType(final boolean stored, final boolean norms) {
+		final FieldType result = new FieldType(TextField.TYPE_NOT_STORED);
+		result.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+		result.setStored(stored);
+		result.setOmitNorms(!norms);
+		result.freeze();
+		return result;
+	}
+
+	private static FieldType createIdentifiersType(final boolean norms) {
+		final FieldType result = new FieldType(TextField.TYPE_NOT_STORED);
+		result.setOmitNorms(!norms);
+		result.freeze();
+		return result;
+	}
+
+	private static FieldType createTrigramsType() {
+		final FieldType result = new FieldType();
+		result.setTokenized(true);
+		result.setOmitNorms(true);
+		result.setIndexOptions(IndexOptions.DOCS);
+		result.freeze();
+		return result;
+	}
+
+	private static final class FileState {
+		final long size;
+		final long modified;
+		final String hash;
+		FileState(final long size, final long modified, final String hash) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
 	}
 }
\ No newline at end of file
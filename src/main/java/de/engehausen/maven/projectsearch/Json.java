@@ -0,0 +1,46 @@
+package de.engehausen.maven.projectsearch;
+
+/**
+ * Minimal helper for writing JSON.
+ */
+public final class Json {
+
+	private Json() {}
+
+	/**
+	 * Returns the given string as JSON string literal, including the quotes.
+	 * @param str the string, must not be {@code null}
+	 * @return the quoted and escaped string
+	 */
+	public static String quote(final String str) {
+		final StringBuilder result = new StringBuilder(str.length() + 2);
+		result.append('"');
+		for (int i = 0; i < str.length(); i++) {
+			final char c = str.charAt(i);
+			switch (c) {
+			case '"':
+				result.append("\\\"");
+				break;
+			case '\\':
+				result.append("\\\\");
+				break;
+			case '\n':
+				result.append("\\n");
+				break;
+			case '\r':
+				result.append("\\r");
+				break;
+			case '\t':
+				result.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					result.append(String.format("\\u%04x", Integer.valueOf(c)));
+				} else {
+					result.append(c);
+				}
+			}
+		}
+		return result.append('"').toString();
+	}
+}
@@ -0,0 +1,72 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Encodes the character offsets at which the lines of a text start,
+ * for storing them in the {@link Constants#FIELD_LINES} doc values.
+ * The offsets are stored as variable-length deltas; the first line,
+ * starting at offset zero, is implicit.
+ */
+public final class LineStarts {
+
+	private LineStarts() {}
+
+	/**
+	 * Encodes the line starts of the given text. Lines end with
+	 * {@code \n}, {@code \r\n} or {@code \r}.
+	 * @param text the text
+	 * @return the encoded line starts
+	 */
+	public static BytesRef encode(final CharSequence text) {
+		final ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+		int last = 0;
+		final int length = text.length();
+		for (int i = 0; i < length; i++) {
+			final char c = text.charAt(i);
+			if (c == '\n' || (c == '\r' && (i + 1 == length || text.charAt(i + 1) != '\n'))) {
+				try {
+					out.writeVInt(i + 1 - last);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				last = i + 1;
+			}
+		}
+		return new BytesRef(out.toArrayCopy());
+	}
+
+	/**
+	 * Decodes line starts.
+	 * @param bytes the encoded line starts
+	 * @return the offsets of all line starts, beginning with zero for the first line
+	 */
+	public static int[] decode(final BytesRef bytes) {
+		final ByteArrayDataInput in = new ByteArrayDataInput(bytes.bytes, bytes.offset, bytes.length);
+		// each delta takes at least one byte
+		final int[] result = new int[bytes.length + 1];
+		int count = 1;
+		while (!in.eof()) {
+			result[count] = result[count - 1] + in.readVInt();
+			count++;
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Returns the index of the line containing the given offset.
+	 * @param starts the line starts
+	 * @param offset the character offset
+	 * @return the zero-based index of the line
+	 */
+	public static int lineOf(final int[] starts, final int offset) {
+		final int index = Arrays.binarySearch(starts, offset);
+		return index >= 0 ? index : -index - 2;
+	}
+}
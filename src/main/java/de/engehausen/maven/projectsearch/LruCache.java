@@ -0,0 +1,33 @@
+package de.engehausen.maven.projectsearch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Map with a bounded number of entries, evicting the least recently used entry.
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class LruCache<K, V> extends LinkedHashMap<K, V> {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final int capacity;
+
+	/**
+	 * Creates the cache.
+	 * @param capacity the maximal number of entries
+	 */
+	public LruCache(final int capacity) {
+		super(16, 0.75f, true);
+		this.capacity = capacity;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+		return size() > capacity;
+	}
+}
@@ -0,0 +1,83 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reader decoding a region of a file directly from memory-mapped windows
+ * of the file, without copying the bytes through the heap. Malformed input
+ * is replaced. The reader does not close the channel.
+ */
+public class MappedFileReader extends Reader {
+
+	/** maximal size of a memory-mapped window (256 MB) */
+	public static final long WINDOW_SIZE = 1L << 28;
+
+	protected final FileChannel channel;
+	protected final long end;
+	protected final CharsetDecoder decoder;
+	private long position;
+	private MappedByteBuffer window;
+	private boolean finished;
+
+	/**
+	 * Creates the reader.
+	 * @param channel the channel of the file to read
+	 * @param start the position of the first byte to read
+	 * @param length the number of bytes to read
+	 * @param charset the charset of the text
+	 */
+	public MappedFileReader(final FileChannel channel, final long start, final long length, final Charset charset) {
+		this.channel = channel;
+		this.position = start;
+		this.end = start + length;
+		this.decoder = charset
+			.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int read(final char[] cbuf, final int off, final int len) throws IOException {
+		final CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+		while (out.hasRemaining() && !finished) {
+			if (window == null) {
+				window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, end - position));
+			}
+			final boolean last = position + window.limit() >= end;
+			if (decoder.decode(window, out, last).isOverflow()) {
+				break;
+			}
+			if (last) {
+				if (decoder.flush(out).isOverflow()) {
+					break;
+				}
+				finished = true;
+			} else {
+				// continue with the next window, including an incomplete character at the end of this one
+				position += window.position();
+				window = null;
+			}
+		}
+		final int count = out.position() - off;
+		return count == 0 && finished ? -1 : count;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		window = null;
+		finished = true;
+	}
+}
@@ -0,0 +1,215 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.stream.IntStream;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Parses and runs queries against the index of a root folder: presets, parsing,
+ * whitelisting, the limit and writing the results. This is the search path of the
+ * goals, independent of Maven, so it can be run and measured on its own.
+ */
+public class Queries {
+
+	protected final Path rootFolder;
+
+	/**
+	 * Creates the queries.
+	 * @param rootFolder the root folder of the index
+	 */
+	public Queries(final Path rootFolder) {
+		this.rootFolder = rootFolder.toAbsolutePath();
+	}
+
+	/**
+	 * Creates the parser for queries. Terms without field are searched in the
+	 * {@link Constants#DEFAULT_FIELDS}: the contents and the identifiers. Terms of the
+	 * {@link Constants#KEYWORD_FIELDS} are not analyzed, so {@code module:my-module} is a single term.
+	 * @return the query parser
+	 */
+	public static QueryParser createParser() {
+		return new MultiFieldQueryParser(Constants.DEFAULT_FIELDS, CodeAnalyzer.perField(false)) {
+			@Override
+			protected Query getFieldQuery(final String field, final String queryText, final boolean quoted) throws ParseException {
+				if (field != null && Constants.KEYWORD_FIELDS.contains(field)) {
+					return new TermQuery(new Term(field, queryText));
+				}
+				return super.getFieldQuery(field, queryText, quoted);
+			}
+		};
+	}
+
+	/**
+	 * Returns all preset queries by name, see {@link PresetProvider}.
+	 * @return the presets
+	 */
+	public static Map<String, String> loadPresets() {
+		final Map<String, String> presets = new HashMap<>();
+		ServiceLoader
+			.load(PresetProvider.class)
+			.forEach(provider -> presets.putAll(provider.get()));
+		return presets;
+	}
+
+	/**
+	 * Parses a query. Queries starting with {@link Constants#REGEX_PREFIX} or {@link Constants#GREP_PREFIX}
+	 * are Java regular expressions searched for in the contents, see {@link GrepQuery}; all other
+	 * queries use the Lucene query syntax.
+	 * @param parser the query parser
+	 * @param query the query
+	 * @return the parsed query
+	 * @throws ParseException if the query is invalid
+	 */
+	public Query parse(final QueryParser parser, final String query) throws ParseException {
+		for (final String prefix : List.of(Constants.REGEX_PREFIX, Constants.GREP_PREFIX)) {
+			if (query.startsWith(prefix)) {
+				return new GrepQuery(query.substring(prefix.length()), rootFolder);
+			}
+		}
+		return parser.parse(query);
+	}
+
+	/**
+	 * Searches and writes the accepted results in path order. Whitelisted documents are
+	 * excluded by the query where possible; they are listed by a separate query without scoring.
+	 * In a deduplicated index, the aliases of the matches are results as well. The matching
+	 * chunks of a file are one result, see {@link Chunks}; the limit applies to the chunks.
+	 * @param searcher the searcher
+	 * @param parsed the query
+	 * @param whitelist the whitelist
+	 * @param max the maximal number of results, zero or less for all results
+	 * @param snippets the snippets for showing matching lines, may be {@code null}
+	 * @param writer the writer for the results
+	 * @param ignored receives the paths of results rejected by the whitelist
+	 * @param timings receives the time spent searching and assembling the results, may be {@code null}
+	 * @return the number of accepted results
+	 * @throws IOException in case of error
+	 */
+	public long search(final IndexSearcher searcher, final Query parsed, final Whitelist whitelist, final int max, final Snippets snippets, final ResultWriter writer, final Deque<String> ignored, final QueryTimings timings) throws IOException {
+		final long start = System.nanoTime();
+		final Query expanded = Aliases.expand(searcher, parsed);
+		final Query filtered = whitelist.exclude(expanded);
+		final long[] assembly = new long[1];
+		final long[] accepted = new long[1];
+		final Chunks chunks = new Chunks(searcher.getIndexReader(), hit -> accepted[0] += write(hit, whitelist, snippets, writer, ignored));
+		if (max > 0) {
+			final ScoreDoc[] scoreDocs = searcher.search(filtered, max).scoreDocs;
+			final long searched = System.nanoTime();
+			for (final Hit hit : toHits(searcher, scoreDocs)) {
+				chunks.add(hit);
+			}
+			assembly[0] = System.nanoTime() - searched;
+		} else {
+			new HitStream(searcher, filtered).forEach((id, doc) -> {
+				final long hit = System.nanoTime();
+				chunks.add(new Hit(rootFolder.resolve(id).toString(), doc));
+				assembly[0] += System.nanoTime() - hit;
+			});
+		}
+		final long finish = System.nanoTime();
+		chunks.finish();
+		writer.finish();
+		assembly[0] += System.nanoTime() - finish;
+		final Query excluded = whitelist.ignored(expanded);
+		if (excluded != null) {
+			new HitStream(searcher, excluded).forEach((id, doc) -> {
+				final String path = rootFolder.resolve(id).toString();
+				// the chunks of a file are ignored once
+				if (!path.equals(ignored.peek())) {
+					ignored.push(path);
+				}
+			});
+		}
+		if (timings != null) {
+			timings.addAssembly(assembly[0]);
+			timings.addSearch(System.nanoTime() - start - assembly[0]);
+		}
+		return accepted[0];
+	}
+
+	/**
+	 * Creates the hits for matching documents. The paths are taken from the
+	 * {@link Constants#FIELD_ID} doc values, without loading stored fields.
+	 * @param searcher the searcher
+	 * @param scoreDocs the matching documents
+	 * @return the hits, sorted by identifier as in {@link Indexer#INDEX_SORT}
+	 * @throws IOException in case of error
+	 */
+	public List<Hit> toHits(final IndexSearcher searcher, final ScoreDoc[] scoreDocs) throws IOException {
+		final int[] docs = Arrays.stream(scoreDocs)
+			.mapToInt(scoreDoc -> scoreDoc.doc)
+			.sorted()
+			.toArray();
+		final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+		final BytesRef[] ids = new BytesRef[docs.length];
+		int count = 0;
+		LeafReaderContext leaf = null;
+		SortedDocValues values = null;
+		for (final int doc : docs) {
+			if (leaf == null || doc >= leaf.docBase + leaf.reader().maxDoc()) {
+				leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+				values = DocValues.getSorted(leaf.reader(), Constants.FIELD_ID);
+			}
+			if (values.advanceExact(doc - leaf.docBase)) {
+				ids[count] = BytesRef.deepCopyOf(values.lookupOrd(values.ordValue()));
+				docs[count++] = doc;
+			}
+		}
+		// the segments are sorted on their own; the sort is stable, so the chunks of a file keep their order
+		final Integer[] order = IntStream.range(0, count).boxed().toArray(Integer[]::new);
+		Arrays.sort(order, Comparator.comparing(i -> ids[i]));
+		final List<Hit> result = new ArrayList<>(count);
+		for (final Integer i : order) {
+			result.add(toHit(ids[i], docs[i]));
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the hit for a document.
+	 * @param id the identifier of the document, see {@link Constants#FIELD_ID}
+	 * @param doc the document number
+	 * @return the hit
+	 */
+	public Hit toHit(final BytesRef id, final int doc) {
+		return new Hit(rootFolder.resolve(id.utf8ToString()).toString(), doc);
+	}
+
+	private static boolean accepted(final Whitelist whitelist, final String str, final Deque<String> ignored) {
+		if (!whitelist.accepts(str)) {
+			ignored.push(str);
+			return false;
+		}
+		return true;
+	}
+
+	private static int write(final Hit hit, final Whitelist whitelist, final Snippets snippets, final ResultWriter writer, final Deque<String> ignored) throws IOException {
+		if (!accepted(whitelist, hit.getPath(), ignored)) {
+			return 0;
+		}
+		writer.write(hit, snippets != null ? snippets.lines(hit) : List.of());
+		return 1;
+	}
+}
@@ -0,0 +1,53 @@
+package de.engehausen.maven.projectsearch;
+
+import java.util.Locale;
+
+/**
+ * Latencies of running a query: parsing the query, searching the index and assembling
+ * the results (resolving paths, reading matching lines and writing the results).
+ * A single query is timed on one thread; the timings are not thread-safe.
+ */
+public class QueryTimings {
+
+	private static final double NANOS_PER_MILLI = 1_000_000d;
+
+	protected long parse;
+	protected long search;
+	protected long assembly;
+
+	/**
+	 * Adds time spent parsing the query.
+	 * @param nanos the time in nanoseconds
+	 */
+	public void addParse(final long nanos) {
+		parse += nanos;
+	}
+
+	/**
+	 * Adds time spent searching the index.
+	 * @param nanos the time in nanoseconds
+	 */
+	public void addSearch(final long nanos) {
+		search += nanos;
+	}
+
+	/**
+	 * Adds time spent assembling the results.
+	 * @param nanos the time in nanoseconds
+	 */
+	public void addAssembly(final long nanos) {
+		assembly += nanos;
+	}
+
+	/**
+	 * Returns the timings as {@code parse 0.12 ms, search 1.50 ms, result assembly 0.30 ms}.
+	 * @return the timings
+	 */
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "parse %.2f ms, search %.2f ms, result assembly %.2f ms",
+			Double.valueOf(parse / NANOS_PER_MILLI),
+			Double.valueOf(search / NANOS_PER_MILLI),
+			Double.valueOf(assembly / NANOS_PER_MILLI));
+	}
+}
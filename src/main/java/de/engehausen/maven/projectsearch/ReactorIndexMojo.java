@@ -0,0 +1,137 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Mojo to create the search index of a multi-module project. The modules of the reactor
+ * are indexed as shards of one index in the folder of the top-level project, in parallel
+ * and without their build output folders; each file records its module in
+ * {@link Constants#FIELD_MODULE}, so {@code module:<artifactId>} restricts queries to a module.
+ * The source jars of the resolved dependencies found in the local repository are indexed as
+ * archives with the module {@code groupId:artifactId}.
+ * <p>The index is searched with the other goals like any sharded index.</p>
+ */
+@Mojo(name = Constants.INDEX_REACTOR_NAME, aggregator = true, requiresProject = true, requiresDependencyResolution = ResolutionScope.TEST)
+public class ReactorIndexMojo extends IndexMojo {
+
+	/** suffix of the source jars of artifacts in the local repository */
+	public static final String SOURCES_SUFFIX = "-sources.jar";
+
+	/**
+	 * Flag to index the source jars of the dependencies of the modules. Only source jars
+	 * already in the local repository are indexed, they are not downloaded.
+	 */
+	@Parameter(name = Constants.PARAM_DEPENDENCY_SOURCES, property = Constants.PARAM_DEPENDENCY_SOURCES, defaultValue = "true", required = false)
+	protected boolean dependencySources;
+
+	@Parameter(defaultValue = "${session}", readonly = true, required = true)
+	protected MavenSession session;
+
+	/** artifact identifiers of the modules by path prefix, the empty prefix for the top-level project */
+	protected Map<String, String> modules;
+	protected Shards layout;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void execute() throws MojoExecutionException {
+		root = session.getTopLevelProject().getBasedir().getAbsolutePath();
+		final Path indexPath = getIndex(root, indexFolder);
+		final Path absoluteRoot = rootFolder.toAbsolutePath();
+		modules = new TreeMap<>();
+		final StringJoiner ignored = new StringJoiner(",");
+		if (ignoreFolders != null) {
+			ignored.add(ignoreFolders);
+		}
+		for (final MavenProject project : session.getProjects()) {
+			final Path basedir = project.getBasedir().toPath().toAbsolutePath();
+			if (!basedir.startsWith(absoluteRoot)) {
+				getLog().warn(String.format("Skipping module %s outside of %s", project.getArtifactId(), absoluteRoot));
+				continue;
+			}
+			final String prefix = toId(absoluteRoot.relativize(basedir));
+			modules.put(prefix, project.getArtifactId());
+			final Path buildFolder = basedir.resolve(project.getBuild().getDirectory()).toAbsolutePath();
+			if (buildFolder.startsWith(absoluteRoot) && !buildFolder.equals(absoluteRoot)) {
+				ignored.add('/' + toId(absoluteRoot.relativize(buildFolder)));
+			}
+		}
+		ignoreFolders = ignored.toString();
+		// the top-level project (empty prefix) is indexed by the remaining shard
+		shards = String.join(",", modules.keySet());
+		layout = layout(indexPath);
+		getLog().info(String.format("Indexing %d modules of %s", Integer.valueOf(modules.size()), absoluteRoot));
+		index(indexPath, layout);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * The indexer records the module of the shard; the indexer of the remaining
+	 * shard also indexes the source jars of the dependencies.
+	 */
+	@Override
+	protected Indexer createIndexer(final Path path, final Charset charset, final IndexProfile indexProfile) {
+		final Indexer indexer = super.createIndexer(path, charset, indexProfile);
+		final String prefix = layout.prefix(path.getFileName().toString());
+		indexer.setModule(modules.get(prefix));
+		if (dependencySources && "".equals(prefix)) {
+			final Map<Path, String> sources = findDependencySources();
+			getLog().info(String.format("Indexing %d source jars of dependencies", Integer.valueOf(sources.size())));
+			indexer.setDependencies(sources);
+		}
+		return indexer;
+	}
+
+	/**
+	 * Finds the source jars of the resolved dependencies of all modules next to the
+	 * dependencies in the local repository. The modules themselves are not looked up.
+	 * @return the source jars, each with the {@code groupId:artifactId} of its dependency
+	 */
+	protected Map<Path, String> findDependencySources() {
+		final Set<String> reactor = new HashSet<>();
+		for (final MavenProject project : session.getProjects()) {
+			reactor.add(project.getGroupId() + ':' + project.getArtifactId());
+		}
+		final Map<Path, String> result = new LinkedHashMap<>();
+		for (final MavenProject project : session.getProjects()) {
+			for (final Artifact artifact : project.getArtifacts()) {
+				final String key = artifact.getGroupId() + ':' + artifact.getArtifactId();
+				final File file = artifact.getFile();
+				if (file == null || reactor.contains(key)) {
+					continue;
+				}
+				for (final String version : List.of(artifact.getBaseVersion(), artifact.getVersion())) {
+					final Path sources = file.toPath().toAbsolutePath().normalize().resolveSibling(artifact.getArtifactId() + '-' + version + SOURCES_SUFFIX);
+					if (Files.isRegularFile(sources)) {
+						result.putIfAbsent(sources, key);
+						break;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private static String toId(final Path relative) {
+		return relative.toString().replace(File.separatorChar, '/');
+	}
+}
@@ -0,0 +1,259 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.lucene.index.IndexNotFoundException;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.StringHelper;
+
+/**
+ * Cache of search results in the index folder, so repeated queries on an unchanged
+ * index are answered without opening the index, see {@link #lookup(Path, String)}.
+ * <p>Results are cached per key (the normalized query and all settings affecting the
+ * results) in a file of their own. The cache is valid for one state of the index, given
+ * by the identifier and generation of the last commit of the index or of each shard:
+ * any new commit clears the cache when it is next opened. The number of entries is
+ * bounded; the least recently used entries are evicted, by the modification time of
+ * their files, which is updated on each hit. Results larger than {@link #MAX_ENTRY_SIZE}
+ * are not cached.</p>
+ */
+public class ResultCache {
+
+	/** name of the cache folder in the index folder */
+	public static final String FOLDER = "query-cache";
+
+	/** name of the file recording the state of the index the cache is valid for */
+	public static final String STATE = "state";
+
+	/** maximal size in bytes of cached results */
+	public static final int MAX_ENTRY_SIZE = 1 << 20;
+
+	private static final String ENTRY_SUFFIX = ".results";
+	private static final String KEY_ALGORITHM = "SHA-256";
+
+	protected final Path folder;
+	protected final int capacity;
+
+	/**
+	 * Opens the cache of an index, clearing it if the index has changed since the results were cached.
+	 * @param indexPath the index folder
+	 * @param capacity the maximal number of cached results
+	 * @throws IOException in case of error
+	 */
+	public ResultCache(final Path indexPath, final int capacity) throws IOException {
+		this.folder = indexPath.resolve(FOLDER);
+		this.capacity = capacity;
+		final String state = state(indexPath);
+		final Path stateFile = folder.resolve(STATE);
+		if (!Files.isRegularFile(stateFile) || !state.equals(Files.readString(stateFile, StandardCharsets.UTF_8))) {
+			clear();
+			Files.createDirectories(folder);
+			write(stateFile, state.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Returns the state of an index: the identifiers and generations of the last commits
+	 * of the index or of its shards.
+	 * @param indexPath the index folder
+	 * @return the state
+	 * @throws IOException in case of error
+	 */
+	public static String state(final Path indexPath) throws IOException {
+		final Shards shards = Shards.read(indexPath);
+		final StringBuilder result = new StringBuilder();
+		for (final Path path : shards == null ? List.of(indexPath) : shards.paths()) {
+			try (final Directory directory = FSDirectory.open(path)) {
+				final SegmentInfos infos = SegmentInfos.readLatestCommit(directory);
+				result
+					.append(path.getFileName())
+					.append(':')
+					.append(StringHelper.idToString(infos.getId()))
+					.append(':')
+					.append(infos.getGeneration())
+					.append('\n');
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Creates the key of results.
+	 * @param parts the normalized query and the settings affecting the results
+	 * @return the key
+	 */
+	public static String key(final Object... parts) {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(KEY_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		for (final Object part : parts) {
+			digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+		final StringBuilder result = new StringBuilder(2 * digest.getDigestLength());
+		for (final byte b : digest.digest()) {
+			result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Returns cached results without opening the index or the cache. The state of the index
+	 * is read from the last commits only. As results are only cached for an index which was
+	 * searched, cached results also mean the index does not have to be rebuilt.
+	 * @param indexPath the index folder
+	 * @param key the key of the results
+	 * @return the results, or {@code null} if they are not cached, or if the index
+	 * does not exist or has changed since the results were cached
+	 * @throws IOException in case of error
+	 */
+	public static SearchClient.Response lookup(final Path indexPath, final String key) throws IOException {
+		final Path folder = indexPath.resolve(FOLDER);
+		final Path stateFile = folder.resolve(STATE);
+		if (!Files.isRegularFile(stateFile)) {
+			return null;
+		}
+		final String state;
+		try {
+			state = state(indexPath);
+		} catch (IndexNotFoundException|NoSuchFileException e) {
+			return null;
+		}
+		return state.equals(Files.readString(stateFile, StandardCharsets.UTF_8)) ? read(folder.resolve(key + ENTRY_SUFFIX)) : null;
+	}
+
+	/**
+	 * Returns cached results, marking them as recently used.
+	 * @param key the key of the results
+	 * @return the results, or {@code null} if they are not cached
+	 * @throws IOException in case of error
+	 */
+	public SearchClient.Response get(final String key) throws IOException {
+		return read(folder.resolve(key + ENTRY_SUFFIX));
+	}
+
+	private static SearchClient.Response read(final Path file) throws IOException {
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			final long count = in.readLong();
+			final int size = in.readInt();
+			final List<String> ignored = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				ignored.add(in.readUTF());
+			}
+			final String results = new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			return new SearchClient.Response(count, results, ignored, null, null);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Caches results, evicting the least recently used results if the cache is full.
+	 * @param key the key of the results
+	 * @param count the number of accepted results
+	 * @param results the formatted results
+	 * @param ignored the paths of the results rejected by the whitelist
+	 * @return {@code true} if the results were cached, {@code false} if they are too large
+	 * @throws IOException in case of error
+	 */
+	public boolean put(final String key, final long count, final String results, final List<String> ignored) throws IOException {
+		final byte[] bytes = results.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > MAX_ENTRY_SIZE) {
+			return false;
+		}
+		final Path temporary = Files.createTempFile(folder, key, null);
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			out.writeLong(count);
+			out.writeInt(ignored.size());
+			for (final String path : ignored) {
+				out.writeUTF(path);
+			}
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		move(temporary, folder.resolve(key + ENTRY_SUFFIX));
+		evict();
+		return true;
+	}
+
+	/**
+	 * Deletes the least recently used results beyond the capacity.
+	 * @throws IOException in case of error
+	 */
+	protected void evict() throws IOException {
+		final List<Path> entries;
+		try (final Stream<Path> files = Files.list(folder)) {
+			entries = files
+				.filter(file -> file.getFileName().toString().endsWith(ENTRY_SUFFIX))
+				.collect(Collectors.toList());
+		}
+		if (entries.size() > capacity) {
+			entries.sort(Comparator.comparing(ResultCache::lastModified).reversed());
+			for (final Path file : entries.subList(capacity, entries.size())) {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	/**
+	 * Deletes all cached results.
+	 * @throws IOException in case of error
+	 */
+	public void clear() throws IOException {
+		if (Files.exists(folder)) {
+			try (final Stream<Path> paths = Files.walk(folder)) {
+				paths
+					.sorted(Comparator.reverseOrder())
+					.map(Path::toFile)
+					.forEach(File::delete);
+			}
+		}
+	}
+
+	private void write(final Path file, final byte[] bytes) throws IOException {
+		final Path temporary = Files.createTempFile(folder, file.getFileName().toString(), null);
+		Files.write(temporary, bytes);
+		move(temporary, file);
+	}
+
+	private static void move(final Path source, final Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static FileTime lastModified(final Path file) {
+		try {
+			return Files.getLastModifiedTime(file);
+		} catch (IOException e) {
+			return FileTime.fromMillis(0L);
+		}
+	}
+}
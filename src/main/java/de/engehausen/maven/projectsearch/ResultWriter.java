@@ -0,0 +1,246 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Writer for search results. Results are written one by one as they
+ * are found, so the memory used does not depend on the number of results.
+ */
+public interface ResultWriter {
+
+	/**
+	 * Writes a search hit.
+	 * @param hit the hit
+	 * @param lines the matching lines of the hit, may be empty
+	 * @throws IOException in case of error
+	 */
+	void write(Hit hit, List<Snippets.Line> lines) throws IOException;
+
+	/**
+	 * Completes the output after the last hit. The underlying writer is flushed, not closed.
+	 * @throws IOException in case of error
+	 */
+	default void finish() throws IOException {
+		// nothing to do
+	}
+
+	/**
+	 * Creates a result writer for the given format.
+	 * @param format the output format
+	 * @param out the writer to write to
+	 * @param query the search query
+	 * @return the result writer
+	 */
+	static ResultWriter create(final Constants.OutputFormat format, final Writer out, final String query) {
+		switch (format) {
+		case json:
+			return new JsonLines(out);
+		case sarif:
+			return new Sarif(out, query);
+		default:
+			return new Text(out);
+		}
+	}
+
+	/**
+	 * Creates a result writer logging the hits as {@code path} or {@code path:line: text},
+	 * preceded by {@code Found:}.
+	 * @param log the log
+	 * @return the result writer
+	 */
+	static ResultWriter forLog(final Log log) {
+		final ResultWriter lines = forLines(log::info);
+		return new ResultWriter() {
+			private boolean found;
+			@Override
+			public void write(final Hit hit, final List<Snippets.Line> matches) throws IOException {
+				if (!found) {
+					log.info("Found:");
+					found = true;
+				}
+				lines.write(hit, matches);
+			}
+		};
+	}
+
+	/**
+	 * Creates a result writer passing indented lines {@code path} or {@code path:line: text}
+	 * to the given consumer.
+	 * @param consumer the consumer of the lines
+	 * @return the result writer
+	 */
+	static ResultWriter forLines(final Consumer<String> consumer) {
+		return (hit, lines) -> {
+			if (lines.isEmpty()) {
+				consumer.accept(String.format("  %s", hit));
+			} else {
+				for (final Snippets.Line line : lines) {
+					consumer.accept(String.format("  %s:%s", hit.getPath(), line));
+				}
+			}
+		};
+	}
+
+	/**
+	 * Plain text: one line per hit or matching line, as {@code path} or {@code path:line: text}.
+	 * Hits of files indexed as chunks without lines are written with their chunks, see {@link Hit#toString()}.
+	 */
+	class Text implements ResultWriter {
+
+		protected final Writer out;
+
+		/**
+		 * Creates the writer.
+		 * @param out the writer to write to
+		 */
+		public Text(final Writer out) {
+			this.out = out;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(final Hit hit, final List<Snippets.Line> lines) throws IOException {
+			if (lines.isEmpty()) {
+				out.write(String.format("%s%n", hit));
+			} else {
+				for (final Snippets.Line line : lines) {
+					out.write(String.format("%s:%s%n", hit.getPath(), line));
+				}
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void finish() throws IOException {
+			out.flush();
+		}
+	}
+
+	/**
+	 * JSON lines: one object per hit, as {@code {"path":...,"chunks":[...],"lines":[{"line":...,"text":...}]}};
+	 * the chunks are only present for files indexed as chunks, and the lines only if known.
+	 */
+	class JsonLines extends Text {
+
+		/**
+		 * Creates the writer.
+		 * @param out the writer to write to
+		 */
+		public JsonLines(final Writer out) {
+			super(out);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(final Hit hit, final List<Snippets.Line> lines) throws IOException {
+			final StringBuilder result = new StringBuilder(128);
+			result.append("{\"path\":").append(Json.quote(hit.getPath()));
+			if (hit.getChunks().length > 0) {
+				result.append(",\"chunks\":").append(Arrays.toString(hit.getChunks()).replace(" ", ""));
+			}
+			if (!lines.isEmpty()) {
+				result.append(",\"lines\":[");
+				for (int i = 0; i < lines.size(); i++) {
+					if (i > 0) {
+						result.append(',');
+					}
+					result
+						.append("{\"line\":").append(lines.get(i).getNumber())
+						.append(",\"text\":").append(Json.quote(lines.get(i).getText()))
+						.append('}');
+				}
+				result.append(']');
+			}
+			out.write(result.append('}').append(System.lineSeparator()).toString());
+		}
+	}
+
+	/**
+	 * <a href="https://docs.oasis-open.org/sarif/sarif/v2.1.0/sarif-v2.1.0.html">SARIF 2.1.0</a>
+	 * log with a single run. Each hit is a result of the rule {@code search}, with one
+	 * result per matching line if the lines are known.
+	 */
+	class Sarif extends Text {
+
+		private static final String RULE = "search";
+
+		protected final String query;
+		private boolean started;
+		private boolean first = true;
+
+		/**
+		 * Creates the writer.
+		 * @param out the writer to write to
+		 * @param query the search query
+		 */
+		public Sarif(final Writer out, final String query) {
+			super(out);
+			this.query = query;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(final Hit hit, final List<Snippets.Line> lines) throws IOException {
+			start();
+			final String uri = Json.quote(Paths.get(hit.getPath()).toUri().toString());
+			if (lines.isEmpty()) {
+				writeResult(uri, null);
+			} else {
+				for (final Snippets.Line line : lines) {
+					writeResult(uri, line);
+				}
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void finish() throws IOException {
+			start();
+			out.write(String.format("%n]}]}%n"));
+			super.finish();
+		}
+
+		private void start() throws IOException {
+			if (!started) {
+				started = true;
+				out.write(String.format(
+					"{\"version\":\"2.1.0\",\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\",\"runs\":[{"
+					+ "\"tool\":{\"driver\":{\"name\":\"project-search\",\"rules\":[{\"id\":\"%s\",\"shortDescription\":{\"text\":%s}}]}},"
+					+ "\"results\":[%n", RULE, Json.quote(query)));
+			}
+		}
+
+		private void writeResult(final String uri, final Snippets.Line line) throws IOException {
+			final StringBuilder result = new StringBuilder(256);
+			if (!first) {
+				result.append(',').append(System.lineSeparator());
+			}
+			first = false;
+			result
+				.append("{\"ruleId\":\"").append(RULE).append("\",\"level\":\"note\",")
+				.append("\"message\":{\"text\":").append(Json.quote(line != null ? line.getText() : "Matches the query.")).append("},")
+				.append("\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{\"uri\":").append(uri).append('}');
+			if (line != null) {
+				result.append(",\"region\":{\"startLine\":").append(line.getNumber()).append('}');
+			}
+			out.write(result.append("}}]}").toString());
+		}
+	}
+}
@@ -0,0 +1,304 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+
+/**
+ * Client of a running search server, see {@link ServeMojo}. The server is found through
+ * the {@link #SERVER_FILE} in the index folder, holding its loopback port and the token
+ * which must accompany each request.
+ * <p>Queries are posted as form parameters to {@link #PATH_SEARCH}: {@code query},
+ * {@code limit}, {@code context}, {@code whitelist} and {@code format} as for the
+ * {@code search} goal, and optionally {@link #PARAM_AFTER} for a page of results in path
+ * order after an identifier (empty for the first page). The response body is streamed: it
+ * holds the results in the requested format, followed by the paths of the results rejected
+ * by the whitelist, one per line, and ends with a line of form data with the details of the
+ * response, see the {@code TRAILER_} constants.</p>
+ */
+public class SearchClient {
+
+	/** name of the file announcing the server in the index folder */
+	public static final String SERVER_FILE = "server.properties";
+
+	/** path of the search requests */
+	public static final String PATH_SEARCH = "/search";
+
+	/** parameter for the identifier after which a page of results starts */
+	public static final String PARAM_AFTER = "after";
+
+	/** request header with the token of the server */
+	public static final String HEADER_TOKEN = "X-Token";
+
+	/** trailer parameter with the number of accepted results */
+	public static final String TRAILER_COUNT = "count";
+
+	/** trailer parameter with the number of bytes of the results in the body */
+	public static final String TRAILER_RESULTS_LENGTH = "length";
+
+	/** trailer parameter with the identifier of the last result of a page, if there are more results */
+	public static final String TRAILER_MORE = "more";
+
+	/** trailer parameter with the {@link QueryTimings} of the query on the server */
+	public static final String TRAILER_TIMINGS = "timings";
+
+	/** port property of the server file */
+	protected static final String PROPERTY_PORT = "port";
+
+	/** token property of the server file */
+	protected static final String PROPERTY_TOKEN = "token";
+
+	private static final int CONNECT_TIMEOUT = 250;
+
+	protected final int port;
+	protected final String token;
+
+	/**
+	 * Creates the client.
+	 * @param port the loopback port of the server
+	 * @param token the token of the server
+	 */
+	public SearchClient(final int port, final String token) {
+		this.port = port;
+		this.token = token;
+	}
+
+	/**
+	 * Returns the client for the server of an index, if the server is running.
+	 * @param indexPath the index folder
+	 * @return the client, or {@code null} if no server is announced or it cannot be reached
+	 */
+	public static SearchClient find(final Path indexPath) {
+		final Path file = indexPath.resolve(SERVER_FILE);
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		final Properties properties = new Properties();
+		try (final Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		} catch (IOException e) {
+			return null;
+		}
+		final SearchClient client;
+		try {
+			client = new SearchClient(Integer.parseInt(properties.getProperty(PROPERTY_PORT, "")), properties.getProperty(PROPERTY_TOKEN, ""));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		// a stale file of a server which was killed
+		try (final Socket socket = new Socket()) {
+			socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), client.port), CONNECT_TIMEOUT);
+		} catch (IOException e) {
+			return null;
+		}
+		return client;
+	}
+
+	/**
+	 * Writes the file announcing a server, readable by the owner only where supported.
+	 * @param indexPath the index folder
+	 * @param port the port of the server
+	 * @param token the token of the server
+	 * @throws IOException in case of error
+	 */
+	public static void announce(final Path indexPath, final int port, final String token) throws IOException {
+		final Path file = indexPath.resolve(SERVER_FILE);
+		Files.deleteIfExists(file);
+		Files.createFile(file);
+		try {
+			Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+		} catch (UnsupportedOperationException e) {
+			// not a POSIX file system
+		}
+		final Properties properties = new Properties();
+		properties.setProperty(PROPERTY_PORT, Integer.toString(port));
+		properties.setProperty(PROPERTY_TOKEN, token);
+		try (final OutputStream out = Files.newOutputStream(file)) {
+			properties.store(out, "project-search server");
+		}
+	}
+
+	/**
+	 * Returns the port of the server.
+	 * @return the port
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Sends a query to the server.
+	 * @param parameters the parameters of the request, see above
+	 * @return the response
+	 * @throws IOException in case of error
+	 * @throws ParseException if the server rejected the query
+	 */
+	public Response search(final Map<String, String> parameters) throws IOException, ParseException {
+		final HttpURLConnection connection = (HttpURLConnection) new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), port, PATH_SEARCH).openConnection();
+		try {
+			connection.setConnectTimeout(CONNECT_TIMEOUT);
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty(HEADER_TOKEN, token);
+			connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
+			try (final OutputStream out = connection.getOutputStream()) {
+				out.write(encode(parameters).getBytes(StandardCharsets.UTF_8));
+			}
+			final int status = connection.getResponseCode();
+			if (status != HttpURLConnection.HTTP_OK) {
+				final InputStream error = connection.getErrorStream();
+				final String message = error != null ? new String(error.readAllBytes(), StandardCharsets.UTF_8) : connection.getResponseMessage();
+				if (status == HttpURLConnection.HTTP_BAD_REQUEST) {
+					throw new ParseException(message);
+				}
+				throw new IOException(String.format("Server error %d: %s", Integer.valueOf(status), message));
+			}
+			final byte[] body;
+			try (final InputStream in = connection.getInputStream()) {
+				body = in.readAllBytes();
+			}
+			// the trailer is the last line, the results and the ignored paths precede it
+			int end = body.length;
+			while (end > 0 && body[end - 1] != '\n') {
+				end--;
+			}
+			final Map<String, String> trailer = decode(new String(body, end, body.length - end, StandardCharsets.UTF_8));
+			final int length = Integer.parseInt(trailer.get(TRAILER_RESULTS_LENGTH));
+			final List<String> ignored = new ArrayList<>();
+			for (final String line : new String(body, length, Math.max(0, end - 1 - length), StandardCharsets.UTF_8).split("\n")) {
+				if (!line.isEmpty()) {
+					ignored.add(line);
+				}
+			}
+			return new Response(
+				Long.parseLong(trailer.get(TRAILER_COUNT)),
+				new String(body, 0, length, StandardCharsets.UTF_8),
+				ignored,
+				trailer.get(TRAILER_MORE),
+				trailer.get(TRAILER_TIMINGS)
+			);
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid server response", e);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Encodes parameters as form data, skipping {@code null} values.
+	 * @param parameters the parameters
+	 * @return the form data
+	 */
+	protected static String encode(final Map<String, String> parameters) {
+		final StringBuilder result = new StringBuilder(128);
+		parameters.forEach((name, value) -> {
+			if (value != null) {
+				if (result.length() > 0) {
+					result.append('&');
+				}
+				result
+					.append(URLEncoder.encode(name, StandardCharsets.UTF_8))
+					.append('=')
+					.append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+			}
+		});
+		return result.toString();
+	}
+
+	/**
+	 * Decodes form data.
+	 * @param form the form data
+	 * @return the parameters
+	 */
+	protected static Map<String, String> decode(final String form) {
+		final Map<String, String> result = new LinkedHashMap<>();
+		for (final String pair : form.split("&")) {
+			if (!pair.isEmpty()) {
+				final int separator = pair.indexOf('=');
+				result.put(
+					URLDecoder.decode(separator < 0 ? pair : pair.substring(0, separator), StandardCharsets.UTF_8),
+					separator < 0 ? "" : URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Response of the server.
+	 */
+	public static final class Response {
+
+		private final long count;
+		private final String results;
+		private final List<String> ignored;
+		private final String more;
+		private final String timings;
+
+		Response(final long count, final String results, final List<String> ignored, final String more, final String timings) {
+			this.count = count;
+			this.results = results;
+			this.ignored = ignored;
+			this.more = more;
+			this.timings = timings;
+		}
+
+		/**
+		 * Returns the number of accepted results.
+		 * @return the number of results
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the results in the requested format.
+		 * @return the results
+		 */
+		public String getResults() {
+			return results;
+		}
+
+		/**
+		 * Returns the paths of the results rejected by the whitelist.
+		 * @return the paths
+		 */
+		public List<String> getIgnored() {
+			return ignored;
+		}
+
+		/**
+		 * Returns the identifier to request the next page of results with.
+		 * @return the identifier of the last result of the page, or {@code null} if there are no more results
+		 */
+		public String getMore() {
+			return more;
+		}
+
+		/**
+		 * Returns the timings of the query on the server.
+		 * @return the timings, see {@link QueryTimings#toString()}, may be {@code null}
+		 */
+		public String getTimings() {
+			return timings;
+		}
+	}
+}
@@ -1,28 +1,25 @@
 package de.engehausen.maven.projectsearch;
 
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayDeque;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Deque;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
-import java.util.ServiceLoader;
-import java.util.function.Function;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-
-import org.apache.lucene.index.DirectoryReader;
+
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.search.Query;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
@@ -32,18 +29,12 @@ import org.apache.maven.plugins.annotations.Parameter;
  * Mojo to perform a single search.
  */
 @Mojo(name = Constants.SEARCH_NAME, requiresProject = false)
-public class SearchMojo extends AbstractSearchMojo {
-
-	private static final int MAX = 256;
-
-	private static final Map<Constants.FailCondition, Function<List<String>, Boolean>> FAIL_CONDITIONS = Map.of(
-		Constants.FailCondition.hit, hits -> Boolean.valueOf(!hits.isEmpty()),
-		Constants.FailCondition.miss, hits -> Boolean.valueOf(hits.isEmpty())
-	);
+public class SearchMojo extends AbstractQueryMojo {
 
 	/**
 	 * The search query according to the <a href="https://lucene.apache.org/core/2_9_4/queryparsersyntax.html">Lucene Query Syntax</a>.
-	 * See {@link Constants#ALL_FIELDS} for all index fields; {@link Constants#FIELD_CONTENTS} is the default field.
+	 * See {@link Constants#ALL_FIELDS} for all index fields; terms without field are searched in the
+	 * {@link Constants#DEFAULT_FIELDS}, the contents and the identifiers split into their parts.
 	 * The query parameter is mandatory.
 	 * <p>If the query starts with {@code preset:}, then a predfined query with the name following the prefix and provided by
 	 * {@link PresetProvider} instances is used.</p>
@@ -52,83 +43,97 @@ public class SearchMojo extends AbstractSearchMojo {
 	protected String query;
 
 	/**
-	 * Comma-separated regular expressions for whitelisting search results.
+	 * File to write the results to. If not specified, results are logged, or printed
+	 * to the standard output for formats other than {@code text}.
+	 */
+	@Parameter(name = Constants.PARAM_OUTPUT, property = Constants.PARAM_OUTPUT, required = false)
+	protected File output;
+
+	/**
+	 * Format of the results, see {@link Constants.OutputFormat}. Defaults to {@code text}.
+	 */
+	@Parameter(name = Constants.PARAM_FORMAT, property = Constants.PARAM_FORMAT, defaultValue = "text", required = false)
+	protected String format;
+
+	/**
+	 * Flag to show the numbers of results by top-level folder, file extension and module (and by
+	 * path prefix, see {@code facetDepth}) instead of the results. The values with the most results
+	 * are shown first, up to {@code limit} values per facet. The counts are taken from the index
+	 * without loading the results.
+	 */
+	@Parameter(name = Constants.PARAM_FACETS, property = Constants.PARAM_FACETS, defaultValue = "false", required = false)
+	protected boolean facets;
+
+	/**
+	 * The number of folders of the path prefixes by which results are counted with {@code facets},
+	 * zero to not count by path prefix.
 	 */
-	@Parameter(name = Constants.PARAM_WHITELIST, property = Constants.PARAM_WHITELIST, required = false)
-	protected String whitelist;
+	@Parameter(name = Constants.PARAM_FACET_DEPTH, property = Constants.PARAM_FACET_DEPTH, defaultValue = Constants.DEFAULT_FACET_DEPTH, required = false)
+	protected int facetDepth;
 
 	/**
-	 * Flag to indicate if the goal should fail if search hits occur. Defaults to {@code never}.
+	 * The maximal number of results cached in the index folder (see {@link ResultCache}), zero to not
+	 * cache results. An unchanged index answers cached queries without being opened; any change of
+	 * the index clears the cache. Queries without limit are not cached, their results are streamed.
 	 */
-	@Parameter(name = Constants.PARAM_FAIL_ON, property = Constants.PARAM_FAIL_ON, required = false)
-	protected String failOn = Constants.FailCondition.never.name();
+	@Parameter(name = Constants.PARAM_CACHE_SIZE, property = Constants.PARAM_CACHE_SIZE, defaultValue = Constants.DEFAULT_CACHE_SIZE, required = false)
+	protected int cacheSize;
 
-	protected List<Pattern> patterns;
+	/**
+	 * Flag to send the query to the search server of the index if it is running (see {@link ServeMojo}),
+	 * instead of opening the index. The server is not used when a clean index or facets are requested.
+	 */
+	@Parameter(name = Constants.PARAM_USE_SERVER, property = Constants.PARAM_USE_SERVER, defaultValue = "true", required = false)
+	protected boolean useServer;
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
-		final Constants.FailCondition condition = Optional.ofNullable(failOn)
-			.map(Constants.FailCondition::valueOf)
-			.orElse(Constants.FailCondition.never);
-		if (whitelist != null) {
-			patterns = Arrays.stream(whitelist.split(","))
-				.map(Pattern::compile)
-				.collect(Collectors.toList());
-		} else {
-			patterns = List.of();
+		final Path indexPath = getIndex(root, indexFolder);
+		final Constants.FailCondition condition = prepare();
+		final Constants.OutputFormat outputFormat;
+		try {
+			outputFormat = Constants.OutputFormat.valueOf(format);
+		} catch (IllegalArgumentException e) {
+			throw new MojoExecutionException(String.format("Unsupported format: %s", format), e);
 		}
 		try {
 			if (query.startsWith(Constants.PRESET_PREFIX)) {
 				loadPresetQuery();
 			}
-			final Path indexPath = getIndex(root, indexFolder);
-			if (clean || !Files.exists(indexPath)) {
-				final Indexer indexer = new Indexer(
-					rootFolder,
-					indexPath,
-					Indexer.createPathMatchers(indexFolder, Constants.DEFAULT_IGNORE_FOLDERS),
-					ignoreMimeTypes,
-					getLog()
-				);
-				indexer.index(clean);
-			}
-			try (final Directory directory = FSDirectory.open(indexPath)) {
-				final IndexSearcher searcher = new IndexSearcher(DirectoryReader.open(directory));
-				final TopDocs topDocs = searcher.search(new QueryParser(Constants.FIELD_CONTENTS, new CaseSensitiveAnalyzer()).parse(query), MAX);
-				final Deque<String> ignored = new ArrayDeque<>();
-				final Path rootFolderAbsolute = rootFolder.toAbsolutePath();
-				final List<String> hits = Arrays.stream(topDocs.scoreDocs)
-					.map(scoreDoc -> {
-						try {
-							return searcher.storedFields().document(scoreDoc.doc, Constants.RESULT_FIELDS);
-						} catch (IOException e) {
-							return null;
+			final SearchClient client = useServer && !clean && !facets ? SearchClient.find(indexPath) : null;
+			if (client != null) {
+				searchServer(client, outputFormat, condition);
+			} else if (cacheSize > 0 && !facets && limit > 0) {
+				// without limit all results are streamed, they are not formatted in memory for the cache
+				searchCached(indexPath, outputFormat, condition);
+			} else {
+				ensureIndex(indexPath);
+				try (final IndexReader reader = Shards.open(indexPath)) {
+					final IndexSearcher searcher = Shards.newSearcher(reader);
+					final QueryTimings timings = new QueryTimings();
+					final Query parsed = parse(query, timings);
+					final Deque<String> ignored = new ArrayDeque<>();
+					final Snippets snippets = context && !facets ? new Snippets(searcher, parsed) : null;
+					final long count;
+					if (facets) {
+						count = facets(searcher, parsed, facetDepth, timings);
+					} else if (output != null) {
+						try (final Writer out = Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8)) {
+							count = search(searcher, parsed, whitelisted, limit, snippets, ResultWriter.create(outputFormat, out, query), ignored, timings);
 						}
-					})
-					.filter(Objects::nonNull)
-					.map(document -> rootFolderAbsolute.resolve(document.get(Constants.FIELD_PATH)).resolve(document.get(Constants.FIELD_FILENAME)).toString())
-					.filter(str -> accepted(str, ignored))
-					.sorted()
-					.collect(Collectors.toList());
-				if (hits.isEmpty()) {
-					getLog().info("Nothing found.");
-				} else {
-					getLog().info("Found:");
-					hits.forEach(str -> getLog().info(String.format("  %s", str)));
-				}
-				if (!ignored.isEmpty()) {
-					getLog().info("");
-					getLog().info("The following results were ignored:");
-					ignored
-						.stream()
-						.sorted()
-						.forEach(str -> getLog().info(String.format("  %s", str)));
-				}
-				if (FAIL_CONDITIONS.getOrDefault(condition, all -> Boolean.FALSE).apply(hits).booleanValue()) {
-					throw new MojoFailureException("Unwanted search results.");
+						getLog().info(String.format("Wrote %d results to %s", Long.valueOf(count), output));
+					} else if (outputFormat == Constants.OutputFormat.text) {
+						count = search(searcher, parsed, whitelisted, limit, snippets, ResultWriter.forLog(getLog()), ignored, timings);
+					} else {
+						// not closed, this would close the standard output
+						final Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+						count = search(searcher, parsed, whitelisted, limit, snippets, ResultWriter.create(outputFormat, out, query), ignored, timings);
+					}
+					getLog().info(String.format("Query timings: %s", timings));
+					complete(condition, count, ignored);
 				}
 			}
 		} catch (IOException|ParseException e) {
@@ -136,25 +141,111 @@ public class SearchMojo extends AbstractSearchMojo {
 		}
 	}
 
+	/**
+	 * Sends the query to a search server and writes its results like a local search.
+	 * @param client the client of the server
+	 * @param outputFormat the output format
+	 * @param condition the fail condition
+	 * @throws IOException in case of error
+	 * @throws ParseException if the query is invalid
+	 * @throws MojoFailureException if the fail condition is met
+	 */
+	protected void searchServer(final SearchClient client, final Constants.OutputFormat outputFormat, final Constants.FailCondition condition) throws IOException, ParseException, MojoFailureException {
+		getLog().info(String.format("Using the search server on port %d", Integer.valueOf(client.getPort())));
+		final Map<String, String> parameters = new LinkedHashMap<>();
+		parameters.put(Constants.PARAM_QUERY, query);
+		parameters.put(Constants.PARAM_LIMIT, Integer.toString(limit));
+		parameters.put(Constants.PARAM_CONTEXT, Boolean.toString(context));
+		parameters.put(Constants.PARAM_WHITELIST, whitelist);
+		parameters.put(Constants.PARAM_FORMAT, outputFormat.name());
+		final SearchClient.Response response = client.search(parameters);
+		write(response, outputFormat);
+		if (response.getTimings() != null) {
+			getLog().info(String.format("Query timings (server): %s", response.getTimings()));
+		}
+		complete(condition, response.getCount(), new ArrayDeque<>(response.getIgnored()));
+	}
+
+	/**
+	 * Answers the query from the result cache of the index (see {@link ResultCache}) if possible,
+	 * without opening the index. Otherwise the index is built if needed, and the results are
+	 * formatted in memory, cached and written like a local search; this is bounded by the limit,
+	 * which must be positive. Regular expression queries are not cached, as they read the files
+	 * not stored in the index.
+	 * @param indexPath the index folder
+	 * @param outputFormat the output format
+	 * @param condition the fail condition
+	 * @throws IOException in case of error
+	 * @throws ParseException if the query is invalid
+	 * @throws MojoExecutionException if the index cannot be built
+	 * @throws MojoFailureException if the fail condition is met
+	 */
+	protected void searchCached(final Path indexPath, final Constants.OutputFormat outputFormat, final Constants.FailCondition condition) throws IOException, ParseException, MojoExecutionException, MojoFailureException {
+		final QueryTimings timings = new QueryTimings();
+		final Query parsed = parse(query, timings);
+		// the query text is part of SARIF logs
+		final String key = ResultCache.key(parsed, outputFormat == Constants.OutputFormat.sarif ? query : "",
+			whitelist, Integer.valueOf(limit), Boolean.valueOf(context), outputFormat, rootFolder.toAbsolutePath());
+		final boolean cacheable = !(parsed instanceof GrepQuery);
+		SearchClient.Response response = cacheable && !clean ? ResultCache.lookup(indexPath, key) : null;
+		if (response == null) {
+			ensureIndex(indexPath);
+			final ResultCache cache = new ResultCache(indexPath, cacheSize);
+			try (final IndexReader reader = Shards.open(indexPath)) {
+				final IndexSearcher searcher = Shards.newSearcher(reader);
+				final Deque<String> ignored = new ArrayDeque<>();
+				final StringWriter out = new StringWriter();
+				final long count = search(searcher, parsed, whitelisted, limit, context ? new Snippets(searcher, parsed) : null, ResultWriter.create(outputFormat, out, query), ignored, timings);
+				final List<String> rejected = new ArrayList<>(ignored);
+				if (cacheable) {
+					cache.put(key, count, out.toString(), rejected);
+				}
+				response = new SearchClient.Response(count, out.toString(), rejected, null, null);
+			}
+			getLog().info(String.format("Query timings: %s", timings));
+		} else {
+			getLog().info(String.format("Query timings: %s (results from the cache)", timings));
+		}
+		write(response, outputFormat);
+		complete(condition, response.getCount(), new ArrayDeque<>(response.getIgnored()));
+	}
+
+	/**
+	 * Writes formatted results like the results of a local search.
+	 * @param response the results
+	 * @param outputFormat the output format
+	 * @throws IOException in case of error
+	 */
+	protected void write(final SearchClient.Response response, final Constants.OutputFormat outputFormat) throws IOException {
+		if (output != null) {
+			Files.writeString(output.toPath(), response.getResults(), StandardCharsets.UTF_8);
+			getLog().info(String.format("Wrote %d results to %s", Long.valueOf(response.getCount()), output));
+		} else if (outputFormat == Constants.OutputFormat.text) {
+			if (response.getCount() > 0) {
+				getLog().info("Found:");
+				response.getResults().lines().forEach(line -> getLog().info(String.format("  %s", line)));
+			}
+		} else {
+			System.out.print(response.getResults());
+			System.out.flush();
+		}
+	}
+
+	private void complete(final Constants.FailCondition condition, final long count, final Deque<String> ignored) throws MojoFailureException {
+		if (count == 0) {
+			getLog().info("Nothing found.");
+		}
+		logIgnored(ignored);
+		if (fails(condition, count)) {
+			throw new MojoFailureException("Unwanted search results.");
+		}
+	}
+
 	protected void loadPresetQuery() throws MojoExecutionException {
-		final Map<String, String> presets = new HashMap<>();
-		ServiceLoader
-			.load(PresetProvider.class)
-			.forEach(provider -> presets.putAll(provider.get()));
 		final String key = query.substring(Constants.PRESET_PREFIX.length());
-		query = presets.get(key);
+		query = loadPresets().get(key);
 		if (query == null) {
 			throw new MojoExecutionException(String.format("Unknown preset: %s", key));
 		}
 	}
-
-	protected boolean accepted(final String str, final Deque<String> ignored) {
-		if (patterns
-			.stream()
-			.anyMatch(pattern -> pattern.matcher(str).find())) {
-			ignored.push(str);
-			return false;
-		}
-		return true;
-	}
 }
@@ -0,0 +1,261 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Mojo to serve queries from a resident process. The index stays open with a warm searcher
+ * and queries are answered over HTTP on the loopback interface, see {@link SearchClient};
+ * the {@code search} and {@code shell} goals send their queries to the server of their index
+ * if it is running. The server is announced by the {@link SearchClient#SERVER_FILE} in the
+ * index folder and runs until the process is stopped.
+ * <p>The searcher is refreshed before each query, so updates of the index by the {@code index}
+ * goal become visible; sharded indexes are searched as they were when the server started.</p>
+ */
+@Mojo(name = Constants.SERVE_NAME, requiresProject = false)
+public class ServeMojo extends AbstractQueryMojo {
+
+	/**
+	 * Port on the loopback interface to serve on. Defaults to any free port; clients
+	 * find the port in the index folder.
+	 */
+	@Parameter(name = Constants.PARAM_PORT, property = Constants.PARAM_PORT, defaultValue = Constants.DEFAULT_PORT, required = false)
+	protected int port;
+
+	protected String token;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		final Path indexPath = getIndex(root, indexFolder);
+		prepare();
+		final SearchClient running = SearchClient.find(indexPath);
+		if (running != null) {
+			throw new MojoExecutionException(String.format("A server for %s is already running on port %d", indexPath, Integer.valueOf(running.getPort())));
+		}
+		ensureIndex(indexPath);
+		final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try (
+			// sharded indexes are opened by shard
+			final Directory directory = sharded(indexPath) ? null : FSDirectory.open(indexPath);
+			final ReferenceManager<IndexSearcher> manager = directory == null
+				? new Shards.StaticSearcherManager(Shards.open(indexPath))
+				: new SearcherManager(directory, null)) {
+			token = UUID.randomUUID().toString();
+			final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+			server.createContext(SearchClient.PATH_SEARCH, exchange -> handle(exchange, manager));
+			server.setExecutor(executor);
+			server.start();
+			final CountDownLatch stopped = new CountDownLatch(1);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				stop(server, indexPath);
+				stopped.countDown();
+			}));
+			SearchClient.announce(indexPath, server.getAddress().getPort(), token);
+			getLog().info(String.format("Serving %s on port %d", indexPath.toAbsolutePath(), Integer.valueOf(server.getAddress().getPort())));
+			try {
+				stopped.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				stop(server, indexPath);
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("I/O error", e);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Answers a request.
+	 * @param exchange the exchange of the request
+	 * @param manager the manager of the searcher
+	 * @throws IOException in case of error
+	 */
+	protected void handle(final HttpExchange exchange, final ReferenceManager<IndexSearcher> manager) throws IOException {
+		try (exchange) {
+			if (!token.equals(exchange.getRequestHeaders().getFirst(SearchClient.HEADER_TOKEN))) {
+				send(exchange, HttpURLConnection.HTTP_FORBIDDEN, "Invalid token");
+				return;
+			}
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				send(exchange, HttpURLConnection.HTTP_BAD_METHOD, "Use POST");
+				return;
+			}
+			final Map<String, String> parameters = SearchClient.decode(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+			manager.maybeRefresh();
+			final IndexSearcher searcher = manager.acquire();
+			try {
+				respond(exchange, searcher, parameters);
+			} catch (ParseException|IllegalArgumentException e) {
+				send(exchange, HttpURLConnection.HTTP_BAD_REQUEST, String.valueOf(e.getMessage()));
+			} finally {
+				manager.release(searcher);
+			}
+		} catch (IOException|RuntimeException e) {
+			getLog().warn(String.format("Request failed: %s", e.getMessage()));
+			throw e;
+		}
+	}
+
+	/**
+	 * Runs a query and streams the results, the rejected paths and the trailer, see {@link SearchClient}.
+	 * @param exchange the exchange of the request
+	 * @param searcher the searcher
+	 * @param parameters the parameters of the request
+	 * @throws IOException in case of error
+	 * @throws ParseException if the query is invalid
+	 */
+	protected void respond(final HttpExchange exchange, final IndexSearcher searcher, final Map<String, String> parameters) throws IOException, ParseException {
+		final String query = parameters.get(Constants.PARAM_QUERY);
+		if (query == null) {
+			throw new ParseException("No query");
+		}
+		final Constants.OutputFormat format = Constants.OutputFormat.valueOf(parameters.getOrDefault(Constants.PARAM_FORMAT, Constants.OutputFormat.text.name()));
+		final int max = Integer.parseInt(parameters.getOrDefault(Constants.PARAM_LIMIT, Constants.DEFAULT_LIMIT));
+		final String after = parameters.get(SearchClient.PARAM_AFTER);
+		final Whitelist whitelist = after == null ? new Whitelist(parameters.get(Constants.PARAM_WHITELIST), rootFolder) : null;
+		final QueryTimings timings = new QueryTimings();
+		final Query parsed = parse(query, timings);
+		final Snippets snippets = Boolean.parseBoolean(parameters.get(Constants.PARAM_CONTEXT)) ? new Snippets(searcher, parsed) : null;
+		// the request is valid, the results are written as they are found
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
+		try (final CountingOutputStream body = new CountingOutputStream(exchange.getResponseBody())) {
+			final Writer out = new OutputStreamWriter(body, StandardCharsets.UTF_8);
+			final ResultWriter writer = ResultWriter.create(format, out, query);
+			final Deque<String> ignored = new ArrayDeque<>();
+			final long count;
+			String more = null;
+			if (after != null) {
+				// a page of results in path order
+				final long start = System.nanoTime();
+				final Query expanded = Aliases.expand(searcher, parsed);
+				final Query page = after.isEmpty()
+					? expanded
+					: new BooleanQuery.Builder()
+						.add(expanded, BooleanClause.Occur.MUST)
+						.add(new TermRangeQuery(Constants.FIELD_ID, new BytesRef(after), null, false, false), BooleanClause.Occur.FILTER)
+						.build();
+				// the page ends with the last chunk of its last file
+				final Page files = page(searcher, page, null, Math.max(1, max));
+				final long searched = System.nanoTime();
+				timings.addSearch(searched - start);
+				for (final Hit hit : files.hits) {
+					writer.write(hit, snippets != null ? snippets.lines(hit) : List.of());
+				}
+				count = files.hits.size();
+				writer.finish();
+				timings.addAssembly(System.nanoTime() - searched);
+				if (files.more) {
+					more = ((BytesRef) ((FieldDoc) files.last).fields[0]).utf8ToString();
+				}
+			} else {
+				count = search(searcher, parsed, whitelist, max, snippets, writer, ignored, timings);
+			}
+			out.flush();
+			final long length = body.count;
+			for (final String path : ignored) {
+				out.write(path);
+				out.write('\n');
+			}
+			final Map<String, String> trailer = new LinkedHashMap<>();
+			trailer.put(SearchClient.TRAILER_COUNT, Long.toString(count));
+			trailer.put(SearchClient.TRAILER_RESULTS_LENGTH, Long.toString(length));
+			trailer.put(SearchClient.TRAILER_MORE, more);
+			trailer.put(SearchClient.TRAILER_TIMINGS, timings.toString());
+			out.write('\n');
+			out.write(SearchClient.encode(trailer));
+			out.flush();
+			if (getLog().isDebugEnabled()) {
+				getLog().debug(String.format("%s: %d results, %s", query, Long.valueOf(count), timings));
+			}
+		}
+	}
+
+	private static void send(final HttpExchange exchange, final int status, final String message) throws IOException {
+		final byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (final OutputStream body = exchange.getResponseBody()) {
+			body.write(bytes);
+		}
+	}
+
+	private static boolean sharded(final Path indexPath) throws IOException {
+		return Shards.read(indexPath) != null;
+	}
+
+	private void stop(final HttpServer server, final Path indexPath) {
+		server.stop(0);
+		try {
+			Files.deleteIfExists(indexPath.resolve(SearchClient.SERVER_FILE));
+		} catch (IOException e) {
+			getLog().warn(String.format("Cannot delete %s", indexPath.resolve(SearchClient.SERVER_FILE)));
+		}
+	}
+
+	/**
+	 * Counts the bytes written to a stream.
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		protected long count;
+
+		CountingOutputStream(final OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
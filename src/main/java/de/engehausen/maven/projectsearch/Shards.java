@@ -0,0 +1,463 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Layout of a sharded index. Each shard is a separate index in a sub-folder of the index
+ * folder, holding the files below a path prefix (relative to the root folder); the files
+ * outside of all prefixes are held by the shard {@link #REST}. The layout is recorded in
+ * the {@link #MANIFEST} of the index folder.
+ * <p>The shards are built independently and in parallel, so a single shard can be rebuilt
+ * without touching the others. Searches open all shards as one {@link MultiReader}; the
+ * identifiers stay relative to the root folder and each shard is sorted by identifier, so
+ * results are merged across the shards like across the segments of a single index.</p>
+ */
+public class Shards {
+
+	/** name of the file recording the shards in the index folder */
+	public static final String MANIFEST = "shards.properties";
+
+	/** shard specification for one shard per top-level folder */
+	public static final String TOP_LEVEL = "*";
+
+	/** shard specification for a single, unsharded index */
+	public static final String NONE = "none";
+
+	/** name of the shard for the files outside of all prefixes */
+	public static final String REST = "_rest";
+
+	private static final int SEARCH_QUEUE_PER_THREAD = 4;
+	private static final long SEARCH_KEEP_ALIVE_SECONDS = 30L;
+
+	/**
+	 * Threads searching the slices of readers with several segments or shards, one per processor.
+	 * The queue is bounded; if it is full, the searching thread searches the slice itself.
+	 * Idle threads end, so the executor does not outlive the searches.
+	 */
+	protected static final ExecutorService SEARCH_EXECUTOR = createSearchExecutor();
+
+	protected final Path indexPath;
+	/** prefixes by shard name, the empty prefix for {@link #REST} */
+	protected final Map<String, String> prefixes;
+
+	protected Shards(final Path indexPath, final Map<String, String> prefixes) {
+		this.indexPath = indexPath;
+		this.prefixes = prefixes;
+	}
+
+	/**
+	 * Reads the layout of an index.
+	 * @param indexPath the index folder
+	 * @return the shards, or {@code null} if the index is not sharded
+	 * @throws IOException in case of error
+	 */
+	public static Shards read(final Path indexPath) throws IOException {
+		final Path manifest = indexPath.resolve(MANIFEST);
+		if (!Files.isRegularFile(manifest)) {
+			return null;
+		}
+		final Properties properties = new Properties();
+		try (final Reader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		final Map<String, String> prefixes = new LinkedHashMap<>();
+		properties
+			.stringPropertyNames()
+			.stream()
+			.sorted()
+			.forEach(name -> prefixes.put(name, properties.getProperty(name)));
+		return new Shards(indexPath, prefixes);
+	}
+
+	/**
+	 * Creates a layout.
+	 * @param rootFolder the root folder of the index
+	 * @param indexPath the index folder
+	 * @param spec comma-separated path prefixes, {@link #TOP_LEVEL} for all top-level
+	 * folders which are not ignored, or {@link #NONE}
+	 * @param ignoreRules the rules for ignored folders
+	 * @return the shards, or {@code null} for {@link #NONE}
+	 * @throws IOException in case of error
+	 */
+	public static Shards create(final Path rootFolder, final Path indexPath, final String spec, final IgnoreRules ignoreRules) throws IOException {
+		if (NONE.equals(spec.trim())) {
+			return null;
+		}
+		final List<String> list = new ArrayList<>();
+		if (TOP_LEVEL.equals(spec.trim())) {
+			try (final Stream<Path> children = Files.list(rootFolder)) {
+				children
+					.filter(Files::isDirectory)
+					.map(child -> child.getFileName().toString())
+					.filter(name -> !ignoreRules.isIgnored(name, true))
+					.sorted()
+					.forEach(list::add);
+			}
+		} else {
+			for (final String prefix : spec.split(",")) {
+				final String normalized = trim(prefix.trim().replace(File.separatorChar, '/'));
+				if (!normalized.isEmpty() && !list.contains(normalized)) {
+					list.add(normalized);
+				}
+			}
+		}
+		final Map<String, String> prefixes = new LinkedHashMap<>();
+		prefixes.put(REST, "");
+		for (final String prefix : list) {
+			final String base = prefix.replaceAll("[^A-Za-z0-9._-]", "_");
+			String name = base;
+			for (int i = 2; prefixes.containsKey(name); i++) {
+				name = base + '-' + i;
+			}
+			prefixes.put(name, prefix);
+		}
+		return new Shards(indexPath, prefixes);
+	}
+
+	/**
+	 * Records the layout in the index folder.
+	 * @throws IOException in case of error
+	 */
+	public void write() throws IOException {
+		Files.createDirectories(indexPath);
+		final Properties properties = new Properties();
+		properties.putAll(prefixes);
+		try (final Writer writer = Files.newBufferedWriter(indexPath.resolve(MANIFEST), StandardCharsets.UTF_8)) {
+			properties.store(writer, "shards of the index: folder name = path prefix");
+		}
+	}
+
+	/**
+	 * Deletes an index, sharded or not.
+	 * @param indexPath the index folder
+	 * @throws IOException in case of error
+	 */
+	public static void delete(final Path indexPath) throws IOException {
+		if (Files.exists(indexPath)) {
+			try (final Stream<Path> paths = Files.walk(indexPath)) {
+				paths
+					.sorted(Comparator.reverseOrder())
+					.map(Path::toFile)
+					.forEach(File::delete);
+			}
+		}
+	}
+
+	/**
+	 * Returns the name of the shard of a prefix.
+	 * @param prefix the path prefix
+	 * @return the name, or {@code null} if there is no shard for the prefix
+	 */
+	public String find(final String prefix) {
+		final String normalized = trim(prefix.replace(File.separatorChar, '/'));
+		return prefixes
+			.entrySet()
+			.stream()
+			.filter(entry -> entry.getValue().equals(normalized))
+			.map(Map.Entry::getKey)
+			.findFirst()
+			.orElse(null);
+	}
+
+	/**
+	 * Returns the prefix of a shard.
+	 * @param name the name of the shard
+	 * @return the path prefix, empty for {@link #REST}, or {@code null} if there is no such shard
+	 */
+	public String prefix(final String name) {
+		return prefixes.get(name);
+	}
+
+	/**
+	 * Returns the index folders of the shards.
+	 * @return the folders
+	 */
+	public List<Path> paths() {
+		return prefixes
+			.keySet()
+			.stream()
+			.map(indexPath::resolve)
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Builds or updates the shards in parallel, one indexer per shard. The threads of the
+	 * indexers ({@link Indexer#setThreads(int)}) are the budget for all shards: as many shards
+	 * as threads are built at a time, each with its share of the threads. Indexers with a
+	 * single thread are run for up to as many shards at a time as there are processors.
+	 * @param indexers creates the indexer for the index folder of a shard
+	 * @param clean {@code true} to rebuild the shards from scratch
+	 * @param only the name of the only shard to build, or {@code null} for all shards
+	 * @throws MojoExecutionException in case of error
+	 */
+	public void index(final Function<Path, Indexer> indexers, final boolean clean, final String only) throws MojoExecutionException {
+		final List<String> names = prefixes
+			.keySet()
+			.stream()
+			.filter(name -> only == null || only.equals(name))
+			.collect(Collectors.toList());
+		final List<Indexer> list = new ArrayList<>(names.size());
+		for (final String name : names) {
+			final Indexer indexer = indexers.apply(indexPath.resolve(name));
+			final String prefix = prefixes.get(name);
+			indexer.setScope(prefix.isEmpty() ? null : prefix, nested(prefix));
+			list.add(indexer);
+		}
+		final int threads = list.isEmpty() ? 1 : list.get(0).getThreads();
+		final int parallel = Math.max(1, Math.min(names.size(), threads > 1 ? threads : Runtime.getRuntime().availableProcessors()));
+		final ExecutorService executor = Executors.newFixedThreadPool(parallel);
+		try {
+			final List<Future<Void>> futures = new ArrayList<>(names.size());
+			for (final Indexer indexer : list) {
+				indexer.setThreads(threads / parallel);
+				futures.add(executor.submit(() -> {
+					indexer.index(clean);
+					return null;
+				}));
+			}
+			for (final Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof MojoExecutionException) {
+				throw (MojoExecutionException) e.getCause();
+			}
+			throw new MojoExecutionException("Indexing error", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Indexing interrupted", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns the prefixes of the shards below a prefix, which the shard of the prefix skips.
+	 * @param prefix the prefix, empty for {@link #REST}
+	 * @return the prefixes of the nested shards
+	 */
+	protected Set<String> nested(final String prefix) {
+		return prefixes
+			.values()
+			.stream()
+			.filter(other -> !other.isEmpty() && (prefix.isEmpty() || other.startsWith(prefix + '/')))
+			.collect(Collectors.toSet());
+	}
+
+	/**
+	 * Checks if an index, sharded or not, must be rebuilt before it can be searched.
+	 * @param indexPath the index folder
+	 * @return {@code true} if the index or any of its shards must be (re)built
+	 * @throws IOException in case of error
+	 * @see Indexer#needsRebuild(Path)
+	 */
+	public static boolean needsRebuild(final Path indexPath) throws IOException {
+		final Shards shards = read(indexPath);
+		if (shards == null) {
+			return Indexer.needsRebuild(indexPath);
+		}
+		for (final Path path : shards.paths()) {
+			if (!Files.exists(path) || Indexer.needsRebuild(path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Opens an index, sharded or not, for searching. Closing the reader
+	 * closes the readers and directories of all shards.
+	 * @param indexPath the index folder
+	 * @return the reader
+	 * @throws IOException in case of error
+	 */
+	public static IndexReader open(final Path indexPath) throws IOException {
+		final Shards shards = read(indexPath);
+		final List<Path> paths = shards == null ? List.of(indexPath) : shards.paths();
+		final List<Directory> directories = new ArrayList<>(paths.size());
+		final List<DirectoryReader> readers = new ArrayList<>(paths.size());
+		boolean success = false;
+		try {
+			for (final Path path : paths) {
+				final Directory directory = FSDirectory.open(path);
+				directories.add(directory);
+				readers.add(DirectoryReader.open(directory));
+			}
+			final IndexReader result = new ShardReader(readers.toArray(new DirectoryReader[readers.size()]), directories);
+			success = true;
+			return result;
+		} finally {
+			if (!success) {
+				IOUtils.closeWhileHandlingException(readers);
+				IOUtils.closeWhileHandlingException(directories);
+			}
+		}
+	}
+
+	/**
+	 * Creates the searcher for a reader. Readers with several segments or shards
+	 * are searched concurrently, slice by slice, by the {@link #SEARCH_EXECUTOR}.
+	 * @param reader the reader
+	 * @return the searcher
+	 */
+	public static IndexSearcher newSearcher(final IndexReader reader) {
+		return reader.leaves().size() > 1
+			? new IndexSearcher(reader, SEARCH_EXECUTOR)
+			: new IndexSearcher(reader);
+	}
+
+	private static ExecutorService createSearchExecutor() {
+		final int threads = Runtime.getRuntime().availableProcessors();
+		final AtomicInteger count = new AtomicInteger();
+		final ThreadPoolExecutor result = new ThreadPoolExecutor(
+			threads,
+			threads,
+			SEARCH_KEEP_ALIVE_SECONDS,
+			TimeUnit.SECONDS,
+			new ArrayBlockingQueue<>(SEARCH_QUEUE_PER_THREAD * threads),
+			runnable -> {
+				final Thread thread = new Thread(runnable, "search-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			},
+			new ThreadPoolExecutor.CallerRunsPolicy()
+		);
+		result.allowCoreThreadTimeOut(true);
+		return result;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(final Object other) {
+		return other instanceof Shards && prefixes.equals(((Shards) other).prefixes);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return Objects.hashCode(prefixes);
+	}
+
+	private static String trim(final String prefix) {
+		int start = 0;
+		int end = prefix.length();
+		while (start < end && prefix.charAt(start) == '/') {
+			start++;
+		}
+		while (end > start && prefix.charAt(end - 1) == '/') {
+			end--;
+		}
+		return prefix.substring(start, end);
+	}
+
+	/**
+	 * Reader over the shards of an index, closing the shards and their directories.
+	 */
+	protected static final class ShardReader extends MultiReader {
+
+		private final List<Directory> directories;
+
+		ShardReader(final DirectoryReader[] readers, final List<Directory> directories) throws IOException {
+			super(readers, true);
+			this.directories = directories;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected synchronized void doClose() throws IOException {
+			try {
+				super.doClose();
+			} finally {
+				IOUtils.close(directories);
+			}
+		}
+	}
+
+	/**
+	 * Manager of the searcher of a reader which is not refreshed,
+	 * for sharded indexes which cannot be watched.
+	 */
+	public static final class StaticSearcherManager extends ReferenceManager<IndexSearcher> {
+
+		/**
+		 * Creates the manager, which owns the reader.
+		 * @param reader the reader
+		 */
+		public StaticSearcherManager(final IndexReader reader) {
+			current = newSearcher(reader);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected void decRef(final IndexSearcher reference) throws IOException {
+			reference.getIndexReader().decRef();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected IndexSearcher refreshIfNeeded(final IndexSearcher referenceToRefresh) {
+			return null;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected boolean tryIncRef(final IndexSearcher reference) {
+			return reference.getIndexReader().tryIncRef();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected int getRefCount(final IndexSearcher reference) {
+			return reference.getIndexReader().getRefCount();
+		}
+	}
+}
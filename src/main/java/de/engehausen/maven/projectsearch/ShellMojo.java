@@ -3,26 +3,37 @@ package de.engehausen.maven.projectsearch;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Scanner;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
-import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
 
 /**
  * Mojo to perform interactive search.
+ * The searcher is refreshed before each query, so changes to the index
+ * become visible; in watch mode, changes of the indexed files are pushed
+ * into the index while the shell is running. Sharded indexes are searched
+ * as they were when the shell started, and cannot be watched.
+ * If the search server of the index is running (see {@link ServeMojo}),
+ * queries are sent to the server unless watching or a clean index is requested.
  */
 @Mojo(name = Constants.SHELL_NAME, requiresProject = false)
 public class ShellMojo extends AbstractSearchMojo {
@@ -30,6 +41,38 @@ public class ShellMojo extends AbstractSearchMojo {
 	private static final int MAX = 16;
 	private static final String COMMAND_HELP = "?help";
 	private static final String COMMAND_QUIT = "?quit";
+	private static final String COMMAND_NEXT = "?next";
+	private static final String COMMAND_MORE = "?more";
+	private static final String COMMAND_FACETS = "?facets";
+	private static final int CACHE_SIZE = 64;
+
+	/**
+	 * Flag to keep the index up to date with changes of the indexed files while the shell is running.
+	 * The index is brought up to date incrementally when the shell starts.
+	 */
+	@Parameter(name = Constants.PARAM_WATCH, property = Constants.PARAM_WATCH, defaultValue = "false", required = false)
+	protected boolean watch;
+
+	/**
+	 * Flag to show the matching lines of the results as {@code path:line: text}, with the matches
+	 * highlighted. Lines are only available for files whose text was stored when indexing with
+	 * context; an index built by this goal stores the text of files up to the context size.
+	 */
+	@Parameter(name = Constants.PARAM_CONTEXT, property = Constants.PARAM_CONTEXT, defaultValue = "false", required = false)
+	protected boolean context;
+
+	/**
+	 * The number of folders of the path prefixes by which the results of the last query are
+	 * counted with {@code ?facets}, zero to not count by path prefix.
+	 */
+	@Parameter(name = Constants.PARAM_FACET_DEPTH, property = Constants.PARAM_FACET_DEPTH, defaultValue = Constants.DEFAULT_FACET_DEPTH, required = false)
+	protected int facetDepth;
+
+	/**
+	 * Flag to send the queries to the search server of the index if it is running, instead of opening the index.
+	 */
+	@Parameter(name = Constants.PARAM_USE_SERVER, property = Constants.PARAM_USE_SERVER, defaultValue = "true", required = false)
+	protected boolean useServer;
 
 	/**
 	 * {@inheritDoc}
@@ -38,70 +81,263 @@ public class ShellMojo extends AbstractSearchMojo {
 	public void execute() throws MojoExecutionException, MojoFailureException {
 		try {
 			final Path indexPath = getIndex(root, indexFolder);
-			if (clean || !Files.exists(indexPath)) {
+			final Function<Path, Indexer> indexers = path -> {
 				final Indexer indexer = new Indexer(
 					rootFolder,
-					indexPath,
-					Indexer.createPathMatchers(indexFolder, Constants.DEFAULT_IGNORE_FOLDERS),
+					path,
+					new IgnoreRules(rootFolder, indexFolder, Constants.DEFAULT_IGNORE_FOLDERS, useIgnoreFiles),
 					ignoreMimeTypes,
 					getLog()
 				);
+				indexer.setContext(context);
+				indexer.setContextSize(contextSize);
+				return indexer;
+			};
+			final SearchClient client = useServer && !watch && !clean ? SearchClient.find(indexPath) : null;
+			final Shards shards = Shards.read(indexPath);
+			if (watch && shards != null) {
+				getLog().warn("Sharded indexes cannot be watched, the shell searches the index as it is");
+			}
+			if (client != null) {
+				interact(client);
+			} else if (watch && shards == null) {
+				final Indexer indexer = indexers.apply(indexPath);
+				indexer.setIncremental(true);
 				indexer.index(clean);
+				try (
+					final Directory directory = FSDirectory.open(indexPath);
+					final IndexWriter writer = indexer.openWriter(directory);
+					final IndexWatcher watcher = new IndexWatcher(indexer, getLog());
+					final SearcherManager manager = new SearcherManager(writer, null)) {
+					watcher.start();
+					getLog().info(String.format("Watching %s for changes", rootFolder.toAbsolutePath()));
+					interact(manager);
+				}
+			} else {
+				if (clean || !Files.exists(indexPath) || Shards.needsRebuild(indexPath)) {
+					index(indexPath, shards, null, indexers);
+				}
+				if (shards != null) {
+					try (final ReferenceManager<IndexSearcher> manager = new Shards.StaticSearcherManager(Shards.open(indexPath))) {
+						interact(manager);
+					}
+				} else {
+					try (
+						final Directory directory = FSDirectory.open(indexPath);
+						final SearcherManager manager = new SearcherManager(directory, null)) {
+						interact(manager);
+					}
+				}
 			}
-			final Directory directory = FSDirectory.open(indexPath);
-			final Analyzer analyzer = new CaseSensitiveAnalyzer();
-			final IndexSearcher searcher = new IndexSearcher(DirectoryReader.open(directory));
-			final Path rootFolderAbsolute = rootFolder.toAbsolutePath();
-			try (final Scanner scanner = new Scanner(System.in)) {
-				help();
-				while (scanner.hasNext()) {
-					final String query = scanner.nextLine();
-					if (COMMAND_QUIT.equals(query)) {
-						break;
-					} else if (COMMAND_HELP.equals(query)) {
-						help();
+		} catch (IOException e) {
+			throw new MojoExecutionException("I/O error", e);
+		}
+	}
+
+	protected void interact(final ReferenceManager<IndexSearcher> manager) throws IOException {
+		final QueryParser parser = createQueryParser();
+		final Map<String, Results> cache = new LruCache<>(CACHE_SIZE);
+		Results current = null;
+		try (final Scanner scanner = new Scanner(System.in)) {
+			help();
+			while (scanner.hasNext()) {
+				final String query = scanner.nextLine();
+				if (COMMAND_QUIT.equals(query)) {
+					break;
+				} else if (COMMAND_HELP.equals(query)) {
+					help();
+					continue;
+				}
+				manager.maybeRefreshBlocking();
+				final IndexSearcher searcher = manager.acquire();
+				try {
+					final long version = searcher.getIndexReader() instanceof DirectoryReader
+						? ((DirectoryReader) searcher.getIndexReader()).getVersion()
+						: 0L;
+					if (COMMAND_FACETS.equals(query)) {
+						if (current == null) {
+							getLog().info("No previous query.");
+						} else {
+							showFacets(searcher, current);
+						}
 						continue;
-					}
-					try {
-						final TopDocs topDocs = searcher.search(new QueryParser(Constants.FIELD_CONTENTS, analyzer).parse(query), MAX);
-						final List<String> hits = Arrays.stream(topDocs.scoreDocs)
-							.map(scoreDoc -> {
-								try {
-									return searcher.storedFields().document(scoreDoc.doc, Constants.RESULT_FIELDS);
-								} catch (IOException e) {
-									return null;
-								}
-							})
-							.filter(Objects::nonNull)
-							.map(document -> rootFolderAbsolute.resolve(document.get(Constants.FIELD_PATH)).resolve(document.get(Constants.FIELD_FILENAME)).toString())
-							.sorted()
-							.collect(Collectors.toList());
-						if (hits.isEmpty()) {
-							getLog().info("No results.");
+					} else if (COMMAND_NEXT.equals(query) || COMMAND_MORE.equals(query)) {
+						if (current == null) {
+							getLog().info("No previous query.");
+							continue;
+						} else if (current.version != version) {
+							getLog().info("The index has changed, showing the first results again.");
+							final Results previous = current;
+							current = cache.computeIfAbsent(key(previous.text, version), key -> new Results(previous.text, previous.query, version));
+							current.page = 0;
 						} else {
-							getLog().info("Found:");
-							hits.forEach(result -> getLog().info(String.format("  %s", result)));
-							if (hits.size() == MAX) {
-								getLog().info(String.format("There may be more results (limited to %d)", MAX));
-							}
+							current.page++;
+						}
+					} else {
+						current = cache.get(key(query, version));
+						if (current == null) {
+							current = new Results(query, parse(parser, query), version);
+							cache.put(key(query, version), current);
 						}
+						current.page = 0;
+					}
+					show(searcher, current);
+				} catch (ParseException e) {
+					getLog().error(e.getMessage());
+				} finally {
+					manager.release(searcher);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends the queries to a search server. Pages of results are requested
+	 * in path order after the last result shown.
+	 * @param client the client of the server
+	 * @throws IOException in case of error
+	 */
+	protected void interact(final SearchClient client) throws IOException {
+		getLog().info(String.format("Using the search server on port %d", Integer.valueOf(client.getPort())));
+		String last = null;
+		String after = null;
+		try (final Scanner scanner = new Scanner(System.in)) {
+			help();
+			while (scanner.hasNext()) {
+				final String query = scanner.nextLine();
+				if (COMMAND_QUIT.equals(query)) {
+					break;
+				} else if (COMMAND_HELP.equals(query)) {
+					help();
+					continue;
+				} else if (COMMAND_FACETS.equals(query)) {
+					getLog().info("Facets are not available from the search server.");
+					getLog().info("");
+					continue;
+				}
+				if (COMMAND_NEXT.equals(query) || COMMAND_MORE.equals(query)) {
+					if (last == null) {
+						getLog().info("No previous query.");
+						continue;
+					} else if (after == null) {
+						getLog().info("No more results.");
 						getLog().info("");
-					} catch (ParseException e) {
-						getLog().error(e.getMessage());
+						continue;
 					}
+				} else {
+					last = query;
+					after = "";
+				}
+				try {
+					final SearchClient.Response response = client.search(Map.of(
+						Constants.PARAM_QUERY, last,
+						Constants.PARAM_LIMIT, Integer.toString(MAX),
+						Constants.PARAM_CONTEXT, Boolean.toString(context),
+						SearchClient.PARAM_AFTER, after));
+					if (response.getCount() == 0) {
+						getLog().info(after.isEmpty() ? "No results." : "No more results.");
+					} else {
+						getLog().info("Found:");
+						response.getResults().lines().forEach(line -> getLog().info(String.format("  %s", line)));
+						if (response.getMore() != null) {
+							getLog().info(String.format("There are more results, type '%s' to show them", COMMAND_NEXT));
+						}
+					}
+					getLog().info("");
+					after = response.getMore();
+				} catch (ParseException e) {
+					after = null;
+					getLog().error(e.getMessage());
 				}
-				directory.close();
 			}
-		} catch (IOException e) {
-			throw new MojoExecutionException("I/O error", e);
 		}
 	}
 
+	protected void show(final IndexSearcher searcher, final Results results) throws IOException {
+		final List<Hit> hits = page(searcher, results, results.page);
+		if (hits.isEmpty()) {
+			getLog().info(results.page == 0 ? "No results." : "No more results.");
+		} else {
+			getLog().info("Found:");
+			final Snippets snippets = context ? new Snippets(searcher, results.query) : null;
+			for (final Hit hit : hits) {
+				logHit(hit, snippets);
+			}
+			if (!results.complete || results.pages.size() > results.page + 1) {
+				getLog().info(String.format("There are more results, type '%s' to show them", COMMAND_NEXT));
+			}
+		}
+		getLog().info("");
+	}
+
+	/**
+	 * Shows the numbers of results of a query by facet, see {@link Facets}. The results are
+	 * counted in the current version of the index, with up to one page of values per facet.
+	 * @param searcher the searcher
+	 * @param results the results of the query
+	 * @throws IOException in case of error
+	 */
+	protected void showFacets(final IndexSearcher searcher, final Results results) throws IOException {
+		new Facets(searcher, facetDepth)
+			.count(Aliases.expand(searcher, results.query), null)
+			.write(MAX, line -> getLog().info(line));
+		getLog().info("");
+	}
+
+	/**
+	 * Returns a page of results. Pages are fetched on demand with {@link IndexSearcher#searchAfter(ScoreDoc, Query, int, Sort)}
+	 * and kept with the results. The results are sorted by path by Lucene, in the order of the index, and
+	 * the paths are taken from the sort values. The query is expanded to aliases once, see {@link Aliases}.
+	 * A page has up to {@link #MAX} files; the matching chunks of a file are one hit, see {@link #page(IndexSearcher, Query, ScoreDoc, int)}.
+	 * @param searcher the searcher for the index version of the results
+	 * @param results the results
+	 * @param page the number of the page
+	 * @return the hits of the page, sorted by path; empty if there are no more hits
+	 * @throws IOException in case of error
+	 */
+	protected List<Hit> page(final IndexSearcher searcher, final Results results, final int page) throws IOException {
+		while (results.pages.size() <= page && !results.complete) {
+			if (results.expanded == null) {
+				results.expanded = Aliases.expand(searcher, results.query);
+			}
+			final Page next = page(searcher, results.expanded, results.after, MAX);
+			results.pages.add(next.hits);
+			results.after = next.last;
+			results.complete = !next.more;
+		}
+		return page < results.pages.size() ? results.pages.get(page) : List.of();
+	}
+
 	protected void help() {
 		getLog().info("Interactive search. Use Lucene Query Syntax: https://lucene.apache.org/core/2_9_4/queryparsersyntax.html");
 		getLog().info(String.format("Default search is for content, further namespaces: %s", Constants.RESULT_FIELDS));
 		getLog().info("Example for searching filenames: filename:test*");
+		getLog().info(String.format("Regular expressions are searched for with %s or %s, for example: %sfoo\\(.*bar", Constants.REGEX_PREFIX, Constants.GREP_PREFIX, Constants.REGEX_PREFIX));
 		getLog().info("");
-		getLog().info(String.format("Enter query, or type '%s' or '%s'", COMMAND_QUIT, COMMAND_HELP));
+		getLog().info(String.format("Enter query, type '%s' (or '%s') for more results of the last query, '%s' for its numbers of results by folder, extension and module, or type '%s' or '%s'", COMMAND_NEXT, COMMAND_MORE, COMMAND_FACETS, COMMAND_QUIT, COMMAND_HELP));
+	}
+
+	private static String key(final String query, final long version) {
+		return version + ":" + query;
+	}
+
+	/**
+	 * Results of a query for an index version, fetched page by page.
+	 */
+	protected static final class Results {
+		final String text;
+		final Query query;
+		final long version;
+		final List<List<Hit>> pages;
+		Query expanded;
+		ScoreDoc after;
+		boolean complete;
+		int page;
+		Results(final String text, final Query query, final long version) {
+			this.text = text;
+			this.query = query;
+			this.version = version;
+			this.pages = new ArrayList<>();
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,300 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.automaton.ByteRunAutomaton;
+
+/**
+ * Provides the matching lines of search hits, with line numbers and highlighted
+ * matches. Only information recorded at index time is used: the offsets of the
+ * query terms from the postings of {@link Constants#FIELD_CONTENTS}, the line
+ * starts from the {@link Constants#FIELD_LINES} doc values and the stored text.
+ * Files are never read; hits without stored text (large files) have no lines.
+ * For a {@link GrepQuery} the matches of its expression in the stored text are shown.
+ */
+public class Snippets {
+
+	/** marker for the start of a match */
+	public static final String HIGHLIGHT_START = ">>";
+
+	/** marker for the end of a match */
+	public static final String HIGHLIGHT_END = "<<";
+
+	/** maximal number of lines per hit */
+	public static final int MAX_LINES = 10;
+
+	/** maximal length of a line */
+	public static final int MAX_LINE_LENGTH = 160;
+
+	private static final int MAX_EXPANDED_TERMS = 1024;
+	private static final Set<String> TEXT_FIELDS = Set.of(Constants.FIELD_CONTENTS);
+
+	protected final IndexSearcher searcher;
+	protected final Set<BytesRef> terms;
+	protected final List<ByteRunAutomaton> automata;
+	protected final Pattern pattern;
+	private final Map<Integer, List<BytesRef>> leafTerms;
+
+	/**
+	 * Creates the snippets for the hits of a query.
+	 * @param searcher the searcher which produced the hits
+	 * @param query the query
+	 */
+	public Snippets(final IndexSearcher searcher, final Query query) {
+		this.searcher = searcher;
+		this.terms = new LinkedHashSet<>();
+		this.automata = new ArrayList<>();
+		this.leafTerms = new HashMap<>();
+		this.pattern = query instanceof GrepQuery ? ((GrepQuery) query).getPattern() : null;
+		query.visit(new QueryVisitor() {
+			@Override
+			public boolean acceptField(final String field) {
+				return Constants.FIELD_CONTENTS.equals(field);
+			}
+			@Override
+			public void consumeTerms(final Query parent, final Term... queryTerms) {
+				for (final Term term : queryTerms) {
+					terms.add(term.bytes());
+				}
+			}
+			@Override
+			public void consumeTermsMatching(final Query parent, final String field, final Supplier<ByteRunAutomaton> automaton) {
+				automata.add(automaton.get());
+			}
+			@Override
+			public QueryVisitor getSubVisitor(final BooleanClause.Occur occur, final Query parent) {
+				return occur == BooleanClause.Occur.MUST_NOT ? QueryVisitor.EMPTY_VISITOR : this;
+			}
+		});
+	}
+
+	/**
+	 * Returns the matching lines of a hit. The lines of the chunks of a file indexed as chunks
+	 * are merged in line order, the lines repeated by overlapping chunks once.
+	 * @param hit the hit
+	 * @return the matching lines, empty if unknown
+	 * @throws IOException in case of error
+	 */
+	public List<Line> lines(final Hit hit) throws IOException {
+		if (hit.getDocs().length == 1) {
+			return lines(hit.getDoc());
+		}
+		final SortedMap<Integer, Line> result = new TreeMap<>();
+		for (final int doc : hit.getDocs()) {
+			for (final Line line : lines(doc)) {
+				result.putIfAbsent(Integer.valueOf(line.getNumber()), line);
+			}
+		}
+		return result
+			.values()
+			.stream()
+			.limit(MAX_LINES)
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * Returns the matching lines of a document. The lines of a chunk are numbered
+	 * from the first line of the chunk in its file, see {@link Constants#FIELD_CHUNK_LINE}.
+	 * @param doc the document number of the hit
+	 * @return the matching lines, empty if unknown
+	 * @throws IOException in case of error
+	 */
+	public List<Line> lines(final int doc) throws IOException {
+		final List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+		final LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+		final int localDoc = doc - leaf.docBase;
+		final BinaryDocValues lines = leaf.reader().getBinaryDocValues(Constants.FIELD_LINES);
+		if (lines == null || !lines.advanceExact(localDoc)) {
+			return List.of();
+		}
+		final List<int[]> matches = pattern != null ? null : matches(leaf, localDoc);
+		if (matches != null && matches.isEmpty()) {
+			return List.of();
+		}
+		final String text = searcher.storedFields().document(doc, TEXT_FIELDS).get(Constants.FIELD_CONTENTS);
+		if (text == null) {
+			return List.of();
+		}
+		final NumericDocValues firstLines = leaf.reader().getNumericDocValues(Constants.FIELD_CHUNK_LINE);
+		final int firstLine = firstLines != null && firstLines.advanceExact(localDoc) ? (int) firstLines.longValue() : 1;
+		return format(text, LineStarts.decode(lines.binaryValue()), matches != null ? matches : find(text), firstLine);
+	}
+
+	/**
+	 * Returns the matches of the regular expression in a text, up to the
+	 * matches of {@link #MAX_LINES} lines.
+	 * @param text the text
+	 * @return the start and end offsets of the non-empty matches
+	 */
+	protected List<int[]> find(final String text) {
+		final List<int[]> result = new ArrayList<>();
+		final Matcher matcher = pattern.matcher(text);
+		int lines = 0;
+		int lastLineEnd = -1;
+		while (lines <= MAX_LINES && matcher.find()) {
+			if (matcher.end() > matcher.start()) {
+				result.add(new int[] { matcher.start(), matcher.end() });
+				if (matcher.start() >= lastLineEnd) {
+					lines++;
+					final int lineEnd = text.indexOf('\n', matcher.start());
+					lastLineEnd = lineEnd < 0 ? text.length() : lineEnd;
+				}
+			}
+		}
+		return result;
+	}
+
+	protected List<Line> format(final String text, final int[] starts, final List<int[]> matches, final int firstLine) {
+		final List<Line> result = new ArrayList<>();
+		int i = 0;
+		while (i < matches.size() && result.size() < MAX_LINES) {
+			final int line = LineStarts.lineOf(starts, matches.get(i)[0]);
+			final int lineStart = starts[line];
+			int lineEnd = line + 1 < starts.length ? starts[line + 1] : text.length();
+			while (lineEnd > lineStart && (text.charAt(lineEnd - 1) == '\n' || text.charAt(lineEnd - 1) == '\r')) {
+				lineEnd--;
+			}
+			int from = lineStart;
+			int to = lineEnd;
+			if (to - from > MAX_LINE_LENGTH) {
+				from = Math.max(lineStart, matches.get(i)[0] - MAX_LINE_LENGTH / 4);
+				to = Math.min(lineEnd, from + MAX_LINE_LENGTH);
+			}
+			final StringBuilder snippet = new StringBuilder(to - from + 16);
+			int position = from;
+			while (i < matches.size() && matches.get(i)[0] < lineEnd) {
+				final int[] match = matches.get(i++);
+				if (match[0] >= position && match[1] <= to) {
+					snippet
+						.append(text, position, match[0])
+						.append(HIGHLIGHT_START)
+						.append(text, match[0], match[1])
+						.append(HIGHLIGHT_END);
+					position = match[1];
+				}
+			}
+			snippet.append(text, position, to);
+			result.add(new Line(firstLine + line, snippet.toString().strip()));
+		}
+		return result;
+	}
+
+	protected List<int[]> matches(final LeafReaderContext leaf, final int doc) throws IOException {
+		final List<int[]> result = new ArrayList<>();
+		final Terms index = leaf.reader().terms(Constants.FIELD_CONTENTS);
+		if (index == null || !index.hasOffsets()) {
+			return result;
+		}
+		final TermsEnum termsEnum = index.iterator();
+		for (final BytesRef term : termsOf(leaf, index)) {
+			if (termsEnum.seekExact(term)) {
+				final PostingsEnum postings = termsEnum.postings(null, PostingsEnum.OFFSETS);
+				if (postings.advance(doc) == doc) {
+					for (int i = postings.freq(); i > 0; i--) {
+						postings.nextPosition();
+						result.add(new int[] { postings.startOffset(), postings.endOffset() });
+					}
+				}
+			}
+		}
+		result.sort(Comparator.comparingInt(match -> match[0]));
+		return result;
+	}
+
+	/**
+	 * Returns the terms of the query in a leaf: the terms of term and phrase queries,
+	 * and up to {@link #MAX_EXPANDED_TERMS} terms matching wildcard, prefix, fuzzy
+	 * or regular expression queries.
+	 * @param leaf the leaf
+	 * @param index the terms of the contents field in the leaf
+	 * @return the terms to look up
+	 * @throws IOException in case of error
+	 */
+	protected List<BytesRef> termsOf(final LeafReaderContext leaf, final Terms index) throws IOException {
+		final Integer key = Integer.valueOf(leaf.ord);
+		List<BytesRef> result = leafTerms.get(key);
+		if (result == null) {
+			result = new ArrayList<>(terms);
+			if (!automata.isEmpty()) {
+				final TermsEnum termsEnum = index.iterator();
+				int expanded = 0;
+				for (BytesRef term = termsEnum.next(); term != null && expanded < MAX_EXPANDED_TERMS; term = termsEnum.next()) {
+					for (final ByteRunAutomaton automaton : automata) {
+						if (automaton.run(term.bytes, term.offset, term.length)) {
+							result.add(BytesRef.deepCopyOf(term));
+							expanded++;
+							break;
+						}
+					}
+				}
+			}
+			leafTerms.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * A matching line of a hit.
+	 */
+	public static final class Line {
+
+		private final int number;
+		private final String text;
+
+		Line(final int number, final String text) {
+			this.number = number;
+			this.text = text;
+		}
+
+		/**
+		 * Returns the line number.
+		 * @return the line number, starting at one
+		 */
+		public int getNumber() {
+			return number;
+		}
+
+		/**
+		 * Returns the text of the line, with the matches highlighted.
+		 * @return the text
+		 */
+		public String getText() {
+			return text;
+		}
+
+		/**
+		 * Returns the line formatted as {@code <line number>: <text>}.
+		 * @return the formatted line
+		 */
+		@Override
+		public String toString() {
+			return String.format("%d: %s", Integer.valueOf(number), text);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+/**
+ * Analyzer producing all overlapping three-character substrings of the text,
+ * including whitespace and line breaks, without any normalization.
+ * Used for {@link Constants#FIELD_TRIGRAMS}, see {@link GrepQuery}.
+ */
+public class TrigramAnalyzer extends Analyzer {
+
+	/** length of the grams */
+	public static final int LENGTH = 3;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected TokenStreamComponents createComponents(final String fieldName) {
+		return new TokenStreamComponents(new TrigramTokenizer());
+	}
+
+	/**
+	 * Tokenizer for trigrams.
+	 */
+	protected static final class TrigramTokenizer extends Tokenizer {
+
+		private static final int BUFFER_SIZE = 4096;
+
+		private final CharTermAttribute term = addAttribute(CharTermAttribute.class);
+		private final char[] buffer = new char[BUFFER_SIZE];
+		private final char[] window = new char[LENGTH];
+		private int bufferLength;
+		private int index;
+		private int filled;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean incrementToken() throws IOException {
+			clearAttributes();
+			while (true) {
+				if (index >= bufferLength && !fill()) {
+					return false;
+				}
+				System.arraycopy(window, 1, window, 0, LENGTH - 1);
+				window[LENGTH - 1] = buffer[index++];
+				if (filled < LENGTH) {
+					filled++;
+				}
+				if (filled == LENGTH) {
+					term.copyBuffer(window, 0, LENGTH);
+					return true;
+				}
+			}
+		}
+
+		private boolean fill() throws IOException {
+			index = 0;
+			int count;
+			while ((count = input.read(buffer, 0, buffer.length)) == 0) {
+				// try again
+			}
+			bufferLength = Math.max(0, count);
+			return count > 0;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void reset() throws IOException {
+			super.reset();
+			bufferLength = 0;
+			index = 0;
+			filled = 0;
+		}
+	}
+}
@@ -0,0 +1,384 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.AutomatonQuery;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.automaton.Automata;
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.Operations;
+import org.apache.lucene.util.automaton.RegExp;
+import org.apache.lucene.util.automaton.TooComplexToDeterminizeException;
+import org.apache.lucene.util.automaton.Transition;
+
+/**
+ * Whitelist of search results: regular expressions which are searched for in the
+ * absolute paths of the results, as in {@link java.util.regex.Matcher#find()}.
+ * The paths use {@code /} as separator on all platforms; an escaped backslash in
+ * a pattern is read as separator on platforms using backslashes.
+ * <p>Patterns using only the constructs common to Java and Lucene regular expressions
+ * are combined into a single automaton on {@link Constants#FIELD_ID}, so whitelisted
+ * documents are excluded by the query itself and are never scored, loaded or counted.
+ * The automaton accepts the identifiers of which the absolute path matches. For
+ * identifiers relative to the root folder, it is derived from the automaton for the
+ * absolute paths by starting in the state reached after the root folder; identifiers
+ * which are absolute paths (files of dependencies) are matched as they are. Other
+ * patterns (anchors inside the pattern, look-around, reluctant quantifiers and the
+ * like) are checked against the paths of the results. So are all patterns if their
+ * automaton is too complex to be built.</p>
+ */
+public class Whitelist {
+
+	private static final String CLASS_ESCAPES = "dDsSwW";
+	private static final String ABSOLUTE_ID = File.separatorChar == '/' ? "/.*" : "([a-zA-Z]:)?/.*";
+
+	protected final List<Pattern> patterns;
+	protected final Query excluded;
+
+	/**
+	 * Creates the whitelist.
+	 * @param whitelist comma-separated regular expressions, may be {@code null}
+	 * @param rootFolder the root folder of the index
+	 */
+	public Whitelist(final String whitelist, final Path rootFolder) {
+		patterns = new ArrayList<>();
+		final List<Automaton> automata = new ArrayList<>();
+		final List<Pattern> translated = new ArrayList<>();
+		if (whitelist != null) {
+			for (final String str : whitelist.split(",")) {
+				final String regex = normalize(str);
+				final Pattern pattern = Pattern.compile(regex);
+				final Automaton automaton = toAutomaton(regex);
+				if (automaton != null) {
+					automata.add(automaton);
+					translated.add(pattern);
+				} else {
+					patterns.add(pattern);
+				}
+			}
+		}
+		Query query = null;
+		if (!automata.isEmpty()) {
+			try {
+				query = new AutomatonQuery(new Term(Constants.FIELD_ID), excluded(automata, separators(rootFolder.toAbsolutePath().toString()) + '/'));
+			} catch (TooComplexToDeterminizeException e) {
+				// the paths of the results are checked instead
+				patterns.addAll(translated);
+			}
+		}
+		excluded = query;
+	}
+
+	/**
+	 * Returns the query excluding the whitelisted documents.
+	 * @param query the query
+	 * @return the query, with the whitelisted documents as {@link BooleanClause.Occur#MUST_NOT} clause
+	 */
+	public Query exclude(final Query query) {
+		if (excluded == null) {
+			return query;
+		}
+		return new BooleanQuery.Builder()
+			.add(query, BooleanClause.Occur.MUST)
+			.add(excluded, BooleanClause.Occur.MUST_NOT)
+			.build();
+	}
+
+	/**
+	 * Returns the query for the whitelisted documents matching the given query, without scoring.
+	 * @param query the query
+	 * @return the query for the excluded documents, or {@code null} if no documents are excluded by the query
+	 */
+	public Query ignored(final Query query) {
+		if (excluded == null) {
+			return null;
+		}
+		return new BooleanQuery.Builder()
+			.add(query, BooleanClause.Occur.FILTER)
+			.add(excluded, BooleanClause.Occur.FILTER)
+			.build();
+	}
+
+	/**
+	 * Checks the given path against the patterns which are not part of the query.
+	 * @param path the absolute path of a result
+	 * @return {@code true} if the result is not whitelisted
+	 */
+	public boolean accepts(final String path) {
+		final String normalized = separators(path);
+		return patterns
+			.stream()
+			.noneMatch(pattern -> pattern.matcher(normalized).find());
+	}
+
+	/**
+	 * Checks if some patterns are not part of the query and must be checked against the paths of the results.
+	 * @return {@code true} if {@link #accepts(String)} must be checked
+	 */
+	public boolean checksPaths() {
+		return !patterns.isEmpty();
+	}
+
+	/**
+	 * Replaces the escaped backslashes of a regular expression by {@code /} on platforms
+	 * using backslashes as separator.
+	 * @param regex the regular expression
+	 * @return the regular expression for paths using {@code /} as separator
+	 */
+	protected static String normalize(final String regex) {
+		if (File.separatorChar == '/') {
+			return regex;
+		}
+		final StringBuilder result = new StringBuilder(regex.length());
+		for (int i = 0; i < regex.length(); i++) {
+			final char c = regex.charAt(i);
+			if (c == '\\' && i + 1 < regex.length()) {
+				final char next = regex.charAt(++i);
+				if (next == '\\') {
+					result.append('/');
+				} else {
+					result.append(c).append(next);
+				}
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+
+	private static String separators(final String path) {
+		return path.replace(File.separatorChar, '/');
+	}
+
+	/**
+	 * Returns the automaton accepting the identifiers of which the absolute path is accepted
+	 * by any of the given automata.
+	 * @param automata the automata for absolute paths
+	 * @param root the absolute path of the root folder, with {@code /} as separator and ending with it
+	 * @return the automaton for the identifiers
+	 */
+	protected static Automaton excluded(final List<Automaton> automata, final String root) {
+		final Automaton absolute = new RegExp(ABSOLUTE_ID, RegExp.NONE).toAutomaton();
+		return Operations.union(
+			Operations.minus(quotient(automata, root), absolute, Operations.DEFAULT_DETERMINIZE_WORK_LIMIT),
+			Operations.intersection(Operations.union(automata), absolute));
+	}
+
+	/**
+	 * Returns the automaton for the strings containing a match of a Java regular expression.
+	 * @param regex the regular expression
+	 * @return the automaton, or {@code null} if the expression cannot be expressed as Lucene regular expression
+	 */
+	protected static Automaton toAutomaton(final String regex) {
+		final String translated = toRegExp(regex);
+		if (translated == null) {
+			return null;
+		}
+		try {
+			return new RegExp(translated, RegExp.NONE).toAutomaton();
+		} catch (IllegalArgumentException|TooComplexToDeterminizeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Translates a Java regular expression searched for in a string into a Lucene
+	 * regular expression matching the complete string.
+	 * @param regex the Java regular expression
+	 * @return the Lucene regular expression, or {@code null} if not supported
+	 */
+	protected static String toRegExp(final String regex) {
+		int start = 0;
+		int end = regex.length();
+		final boolean anchoredStart = regex.startsWith("^");
+		if (anchoredStart) {
+			start++;
+		}
+		final boolean anchoredEnd = end > start && regex.charAt(end - 1) == '$' && !isEscaped(regex, end - 1);
+		if (anchoredEnd) {
+			end--;
+		}
+		final StringBuilder result = new StringBuilder(2 * regex.length() + 8);
+		int depth = 0;
+		boolean alternatives = false;
+		int i = start;
+		while (i < end) {
+			final char c = regex.charAt(i);
+			final char next = i + 1 < end ? regex.charAt(i + 1) : 0;
+			if (c == '\\') {
+				if (!appendEscape(result, next, true)) {
+					return null;
+				}
+				i += 2;
+			} else if (c == '[') {
+				i = appendCharacterClass(result, regex, i, end);
+				if (i < 0) {
+					return null;
+				}
+			} else if (c == '{') {
+				final int close = regex.indexOf('}', i);
+				if (close < 0 || close >= end || !regex.substring(i + 1, close).matches("\\d+(,\\d*)?")) {
+					return null;
+				}
+				result.append(regex, i, close + 1);
+				i = close + 1;
+				if (i < end && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+					return null;
+				}
+			} else if (c == '(') {
+				if (next == '?') {
+					return null;
+				}
+				depth++;
+				result.append(c);
+				i++;
+			} else if (c == ')') {
+				depth--;
+				result.append(c);
+				i++;
+			} else if (c == '*' || c == '+' || c == '?') {
+				if (next == '?' || next == '+') {
+					// reluctant or possessive quantifier
+					return null;
+				}
+				result.append(c);
+				i++;
+			} else if (c == '|') {
+				alternatives |= depth == 0;
+				result.append(c);
+				i++;
+			} else if (c == '.') {
+				result.append(c);
+				i++;
+			} else if (c == '^' || c == '$') {
+				return null;
+			} else {
+				appendLiteral(result, c);
+				i++;
+			}
+		}
+		if (alternatives && (anchoredStart || anchoredEnd)) {
+			// the anchors only apply to the first or last alternative
+			return null;
+		}
+		return (anchoredStart ? "" : ".*") + '(' + result + ')' + (anchoredEnd ? "" : ".*");
+	}
+
+	private static int appendCharacterClass(final StringBuilder result, final String regex, final int start, final int end) {
+		int i = start + 1;
+		result.append('[');
+		if (i < end && regex.charAt(i) == '^') {
+			result.append('^');
+			i++;
+		}
+		if (i < end && regex.charAt(i) == ']') {
+			return -1;
+		}
+		while (i < end) {
+			final char c = regex.charAt(i);
+			if (c == ']') {
+				result.append(c);
+				return i + 1;
+			} else if (c == '[' || (c == '&' && i + 1 < end && regex.charAt(i + 1) == '&')) {
+				// nested classes and intersections
+				return -1;
+			} else if (c == '\\') {
+				if (i + 1 >= end || !appendEscape(result, regex.charAt(i + 1), false)) {
+					return -1;
+				}
+				i += 2;
+			} else if (c == '-') {
+				result.append(c);
+				i++;
+			} else {
+				appendLiteral(result, c);
+				i++;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean appendEscape(final StringBuilder result, final char c, final boolean classesAllowed) {
+		if (c == 0) {
+			return false;
+		}
+		if (Character.isLetterOrDigit(c)) {
+			if (classesAllowed && CLASS_ESCAPES.indexOf(c) >= 0) {
+				result.append('\\').append(c);
+				return true;
+			}
+			// back references, boundaries, control characters, properties
+			return false;
+		}
+		result.append('\\').append(c);
+		return true;
+	}
+
+	private static void appendLiteral(final StringBuilder result, final char c) {
+		if (!Character.isLetterOrDigit(c)) {
+			result.append('\\');
+		}
+		result.append(c);
+	}
+
+	private static boolean isEscaped(final String str, final int index) {
+		int backslashes = 0;
+		for (int i = index - 1; i >= 0 && str.charAt(i) == '\\'; i--) {
+			backslashes++;
+		}
+		return backslashes % 2 == 1;
+	}
+
+	/**
+	 * Returns the automaton accepting the suffixes of the strings accepted by any of the given
+	 * automata which start with the given prefix.
+	 * @param automata the automata
+	 * @param prefix the prefix
+	 * @return the automaton for the suffixes
+	 */
+	protected static Automaton quotient(final List<Automaton> automata, final String prefix) {
+		final Automaton automaton = Operations.determinize(Operations.union(automata), Operations.DEFAULT_DETERMINIZE_WORK_LIMIT);
+		int state = 0;
+		for (int i = 0; i < prefix.length() && state >= 0; ) {
+			final int codePoint = prefix.codePointAt(i);
+			state = automaton.step(state, codePoint);
+			i += Character.charCount(codePoint);
+		}
+		if (state < 0) {
+			return Automata.makeEmpty();
+		}
+		// renumber the states so the state after the prefix becomes the initial state
+		final int initial = state;
+		final Automaton.Builder builder = new Automaton.Builder();
+		for (int i = 0; i < automaton.getNumStates(); i++) {
+			builder.createState();
+		}
+		final Transition transition = new Transition();
+		for (int i = 0; i < automaton.getNumStates(); i++) {
+			final int from = swap(i, initial);
+			builder.setAccept(from, automaton.isAccept(i));
+			final int count = automaton.initTransition(i, transition);
+			for (int j = 0; j < count; j++) {
+				automaton.getNextTransition(transition);
+				builder.addTransition(from, swap(transition.dest, initial), transition.min, transition.max);
+			}
+		}
+		return builder.finish();
+	}
+
+	private static int swap(final int state, final int initial) {
+		if (state == initial) {
+			return 0;
+		} else if (state == 0) {
+			return initial;
+		}
+		return state;
+	}
+}
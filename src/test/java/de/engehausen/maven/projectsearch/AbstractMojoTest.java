@@ -17,20 +17,25 @@ class AbstractMojoTest {
 	private static final String NOT = "!";
 
 	protected void runAndCheckOutput(final ProcessBuilder processBuilder, final String ...expected) throws IOException, InterruptedException {
-		runAndCheckOutput(processBuilder, null, expected);
+		runAndCheckOutput(processBuilder, (byte[]) null, expected);
 	}
 
 	protected void runAndCheckOutput(final ProcessBuilder processBuilder, final byte[] inBytes, final String ...expected) throws IOException, InterruptedException {
+		runAndCheckOutput(processBuilder, (stdin, log) -> {
+			if (inBytes != null) {
+				stdin.write(inBytes);
+				stdin.flush();
+			}
+		}, expected);
+	}
+
+	protected void runAndCheckOutput(final ProcessBuilder processBuilder, final Interaction interaction, final String ...expected) throws IOException, InterruptedException {
 		final File log = new File(processBuilder.directory(), OUTPUT_LOG);
 		processBuilder.redirectOutput(Redirect.to(log));
 		processBuilder.redirectError(Redirect.to(log));
 
 		final Process process = processBuilder.start();
-		if (inBytes != null) {
-			final OutputStream stdin = process.getOutputStream();
-			stdin.write(inBytes);
-			stdin.flush();
-		}
+		interaction.interact(process.getOutputStream(), log);
 		if (process.waitFor(1, TimeUnit.MINUTES)) {
 			final String logContents = Files.readString(log.toPath(), StandardCharsets.UTF_8);
 			for (final String needle : expected) {
@@ -46,7 +51,22 @@ class AbstractMojoTest {
 		}
 	}
 
+	protected void awaitOutput(final File log, final String needle) throws IOException, InterruptedException {
+		final long timeout = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+		while (!log.exists() || !Files.readString(log.toPath(), StandardCharsets.UTF_8).contains(needle)) {
+			if (System.currentTimeMillis() > timeout) {
+				Assertions.fail(String.format("'%s' not found", needle));
+			}
+			Thread.sleep(100);
+		}
+	}
+
 	protected String getMaven() {
 		return SystemUtils.IS_OS_WINDOWS ? "mvn.cmd" : "mvn";
 	}
+
+	@FunctionalInterface
+	protected interface Interaction {
+		void interact(OutputStream stdin, File log) throws IOException, InterruptedException;
+	}
 }
@@ -0,0 +1,36 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+
+@Order(3)
+class BatchSearchMojoTest extends AbstractMojoTest {
+
+	@Test
+	void batchSearch() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+
+		final ProcessBuilder processBuilder = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:batch",
+			"-Dqueries=fox,this-does-not-exist,preset:*",
+			"-DfailOn=miss",
+			"-DindexFolder=.testindex",
+			"-Droot=" + root.getAbsolutePath());
+		processBuilder.directory(root);
+		processBuilder.environment().put(TestPresets.TEST_PRESETS, Boolean.toString(true));
+		runAndCheckOutput(processBuilder,
+			"fox: 1 results",
+			"test2.txt",
+			"this-does-not-exist: 0 results (failed)",
+			"preset:test: 2 results",
+			"Ran 3 queries, 1 failed.",
+			"Unwanted search results for: this-does-not-exist");
+	}
+
+}
@@ -2,7 +2,16 @@ package de.engehausen.maven.projectsearch;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Order;
@@ -20,6 +29,7 @@ class IndexMojoTest extends AbstractMojoTest {
 			"de.engehausen:project-search:index",
 			"-DindexFolder=.testindex",
 			"-DignoreFolders=de",
+			"-Dcontext=true",
 			"-Dclean=true",
 			"-Droot=" + root.getAbsolutePath());
 		processBuilder.directory(root);
@@ -27,7 +37,649 @@ class IndexMojoTest extends AbstractMojoTest {
 			"Building index for",
 			".testindex",
 			"into",
-			root.getAbsolutePath());
+			root.getAbsolutePath(),
+			"Indexed",
+			IndexStats.REPORT);
+		final String report = Files.readString(root.toPath().resolve(".testindex").resolve(IndexStats.REPORT), StandardCharsets.UTF_8);
+		Assertions.assertFalse(report.contains("\"ignoredFolder\": 0"), report);
+		Assertions.assertTrue(report.contains("\"slowest\": ["), report);
+	}
+
+	@Test
+	void buildIndexParallel() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+
+		// the same files are indexed with one thread and with several; the index is rebuilt
+		// in place, so the indexed folder does not change with the number of indexes
+		final List<String> serial = indexAndListAll(root, ".parallelindex", 1);
+		final List<String> parallel = indexAndListAll(root, ".parallelindex", 4);
+		Assertions.assertFalse(serial.isEmpty());
+		Assertions.assertEquals(serial, parallel);
+	}
+
+	private List<String> indexAndListAll(final File root, final String indexFolder, final int threads) throws IOException, InterruptedException {
+		final ProcessBuilder build = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-DindexFolder=" + indexFolder,
+			"-DignoreFolders=de,.parallelindex",
+			"-Dthreads=" + threads,
+			"-Dclean=true",
+			"-Droot=" + root.getAbsolutePath());
+		// the output is logged outside of the indexed folder
+		build.directory(root.getParentFile());
+		runAndCheckOutput(build,
+			"Building index for",
+			indexFolder,
+			"BUILD SUCCESS");
+
+		final File output = new File(root.getParentFile(), indexFolder.substring(1) + ".txt");
+		final ProcessBuilder search = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=*:*",
+			"-Dlimit=0",
+			"-Doutput=" + output.getAbsolutePath(),
+			"-DindexFolder=" + indexFolder,
+			"-Droot=" + root.getAbsolutePath());
+		search.directory(root.getParentFile());
+		runAndCheckOutput(search, "BUILD SUCCESS");
+		return Files.readAllLines(output.toPath(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void updateIndexIncrementally() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+
+		final ProcessBuilder build = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-DindexFolder=.incrementalindex",
+			"-DignoreFolders=de",
+			"-Dincremental=true",
+			"-Dclean=true",
+			"-Droot=" + root.getAbsolutePath());
+		build.directory(root);
+		runAndCheckOutput(build,
+			"Building index for",
+			"BUILD SUCCESS");
+
+		final ProcessBuilder update = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-DindexFolder=.incrementalindex",
+			"-DignoreFolders=de",
+			"-Dincremental=true",
+			"-Droot=" + root.getAbsolutePath());
+		update.directory(root);
+		runAndCheckOutput(update,
+			"Updating index for",
+			"!Removing",
+			"BUILD SUCCESS");
+	}
+
+	@Test
+	void updateTouchedFile() throws IOException, InterruptedException {
+		final Path root = Paths.get("").toAbsolutePath().resolve("target/touch-test");
+		Files.createDirectories(root);
+		final Path file = root.resolve("touched.txt");
+		Files.writeString(file, "touched but unchanged");
+
+		final ProcessBuilder build = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-Dincremental=true",
+			"-Dclean=true",
+			"-Droot=" + root.toAbsolutePath());
+		// the output is logged outside of the indexed folder
+		build.directory(root.getParent().toFile());
+		runAndCheckOutput(build, "BUILD SUCCESS");
+
+		// the contents are hashed once after touching the file, then the new time is known
+		Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 60000));
+		final ProcessBuilder update = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-Dincremental=true",
+			"-Droot=" + root.toAbsolutePath());
+		update.directory(root.getParent().toFile());
+		final Path report = root.resolve(Constants.DEFAULT_INDEX).resolve(IndexStats.REPORT);
+		runAndCheckOutput(update, "BUILD SUCCESS");
+		Assertions.assertFalse(Files.readString(report, StandardCharsets.UTF_8).contains("\"bytesRead\": 0,"));
+		runAndCheckOutput(update, "BUILD SUCCESS");
+		final String second = Files.readString(report, StandardCharsets.UTF_8);
+		Assertions.assertTrue(second.contains("\"unchanged\": 1"), second);
+		Assertions.assertTrue(second.contains("\"bytesRead\": 0,"), second);
+	}
+
+	@Test
+	void ignoreRulesInOrder() throws IOException, InterruptedException {
+		final Path root = Paths.get("").toAbsolutePath().resolve("target/ignore-test");
+		Files.createDirectories(root.resolve("sub"));
+		Files.createDirectories(root.resolve("build"));
+		// the last matching rule decides, and rules of nested folders come later
+		Files.writeString(root.resolve(".gitignore"), "!important.txt\n*.txt\n*.log\n!keep.log\n*.tmp\nbuild/\n!build/kept.txt\n");
+		Files.writeString(root.resolve("sub/.gitignore"), "!x.tmp\n");
+		for (final String name : new String[] { "important.txt", "other.log", "keep.log", "a.tmp", "sub/x.tmp", "build/kept.txt" }) {
+			Files.writeString(root.resolve(name), "orderedMarker");
+		}
+
+		final ProcessBuilder build = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-Dclean=true",
+			"-Droot=" + root.toAbsolutePath());
+		build.directory(root.getParent().toFile());
+		runAndCheckOutput(build, "BUILD SUCCESS");
+
+		final ProcessBuilder search = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=orderedMarker",
+			"-Droot=" + root.toAbsolutePath());
+		search.directory(root.getParent().toFile());
+		runAndCheckOutput(search,
+			"keep.log",
+			"x.tmp",
+			"!important.txt",
+			"!other.log",
+			"!a.tmp",
+			"!kept.txt");
+	}
+
+	@Test
+	void nonAsciiText() throws IOException, InterruptedException {
+		final Path root = Paths.get("").toAbsolutePath().resolve("target/utf8-test");
+		Files.createDirectories(root);
+		// mostly bytes above 0x7f, which are text and not control characters
+		Files.writeString(root.resolve("russian.txt"), "Съешь же ещё этих мягких французских булок, да выпей чаю. utf8Marker\n", StandardCharsets.UTF_8);
+		Files.writeString(root.resolve("german.txt"), "Grüße aus München, schöne Größe. utf8Marker\n", StandardCharsets.UTF_8);
+
+		final ProcessBuilder build = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-Dclean=true",
+			"-Droot=" + root.toAbsolutePath());
+		build.directory(root.getParent().toFile());
+		runAndCheckOutput(build, "BUILD SUCCESS");
+
+		final ProcessBuilder search = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=utf8Marker",
+			"-Droot=" + root.toAbsolutePath());
+		search.directory(root.getParent().toFile());
+		runAndCheckOutput(search,
+			"Found:",
+			"russian.txt",
+			"german.txt");
+	}
+
+	@Test
+	void buildIndexMappedAndTruncated() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+
+		final ProcessBuilder build = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-DindexFolder=.mappedindex",
+			"-DignoreFolders=de",
+			"-DmapThreshold=0",
+			"-DmaxFileSize=1000",
+			"-Dcontext=true",
+			"-Dclean=true",
+			"-Droot=" + root.getAbsolutePath());
+		build.directory(root);
+		runAndCheckOutput(build,
+			"Truncating",
+			"test1.txt",
+			"BUILD SUCCESS");
+
+		final ProcessBuilder search = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=pharetra OR fox",
+			"-Dcontext=true",
+			"-DindexFolder=.mappedindex",
+			"-Droot=" + root.getAbsolutePath());
+		search.directory(root);
+		// the text is stored independently of memory mapping
+		runAndCheckOutput(search,
+			"Found:",
+			"test2.txt:3: >>fox<< jumped over",
+			"!test1.txt");
+
+		// without stored text, regular expressions are checked against the indexed part of the files
+		final ProcessBuilder plain = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-DindexFolder=.truncatedindex",
+			"-DignoreFolders=de",
+			"-DmaxFileSize=1000",
+			"-Dclean=true",
+			"-Droot=" + root.getAbsolutePath());
+		plain.directory(root);
+		runAndCheckOutput(plain, "BUILD SUCCESS");
+		final ProcessBuilder grep = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=regex:pharetra|^fox j[a-z]+ed",
+			"-DindexFolder=.truncatedindex",
+			"-Droot=" + root.getAbsolutePath());
+		grep.directory(root);
+		runAndCheckOutput(grep,
+			"Found:",
+			"test2.txt",
+			"!test1.txt");
+	}
+
+	@Test
+	void buildIndexWithTrigrams() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+
+		final ProcessBuilder build = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-DindexFolder=.trigramindex",
+			"-DignoreFolders=de",
+			"-Dtrigrams=true",
+			"-Dclean=true",
+			"-Droot=" + root.getAbsolutePath());
+		build.directory(root);
+		runAndCheckOutput(build,
+			"Building index for",
+			"BUILD SUCCESS");
+
+		final ProcessBuilder search = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=grep:qu[i]ck @br",
+			"-DindexFolder=.trigramindex",
+			"-Droot=" + root.getAbsolutePath());
+		search.directory(root);
+		runAndCheckOutput(search,
+			"Found:",
+			"test2.txt",
+			"!test1.txt");
+	}
+
+	@Test
+	void buildIndexWithProfiles() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+
+		final ProcessBuilder build = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-DindexFolder=.profileindex",
+			"-DignoreFolders=de",
+			"-Dprofile=compact",
+			"-Dclean=true",
+			"-Droot=" + root.getAbsolutePath());
+		build.directory(root);
+		runAndCheckOutput(build,
+			"Index profile: ramBuffer=16MB, compoundFiles=true, norms=false, bestCompression=true, maxSegments=1",
+			"Building index for",
+			"BUILD SUCCESS");
+
+		final ProcessBuilder search = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=\"quick brown\"",
+			"-DindexFolder=.profileindex",
+			"-Droot=" + root.getAbsolutePath());
+		search.directory(root);
+		runAndCheckOutput(search,
+			"Found:",
+			"test2.txt",
+			"!test1.txt");
+
+		// without profile the index keeps its schema
+		final ProcessBuilder update = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-DindexFolder=.profileindex",
+			"-DignoreFolders=de",
+			"-Droot=" + root.getAbsolutePath());
+		update.directory(root);
+		runAndCheckOutput(update,
+			"Updating index for",
+			"!rebuilt",
+			"BUILD SUCCESS");
+
+		// norms change the schema
+		final ProcessBuilder rebuild = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-DindexFolder=.profileindex",
+			"-DignoreFolders=de",
+			"-Dprofile=fast",
+			"-Dnorms=true",
+			"-DramBuffer=32",
+			"-Droot=" + root.getAbsolutePath());
+		rebuild.directory(root);
+		runAndCheckOutput(rebuild,
+			"ramBuffer=32MB, compoundFiles=false, norms=true",
+			"Existing index was built with a different profile and will be rebuilt",
+			"Building index for",
+			"BUILD SUCCESS");
+	}
+
+	@Test
+	void buildDeduplicatedIndex() throws IOException, InterruptedException {
+		final Path root = Paths.get("").toAbsolutePath().resolve("target/dedup-test");
+		Files.createDirectories(root.resolve("vendor"));
+		Files.writeString(root.resolve("original.txt"), "shared licence text");
+		Files.writeString(root.resolve("vendor/copy.txt"), "shared licence text");
+		Files.writeString(root.resolve("other.txt"), "something else");
+
+		final ProcessBuilder build = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-Ddedup=true",
+			"-Dclean=true",
+			"-Droot=" + root.toAbsolutePath());
+		build.directory(root.toFile());
+		runAndCheckOutput(build,
+			"Building index for",
+			"BUILD SUCCESS");
+		final String report = Files.readString(root.resolve(Constants.DEFAULT_INDEX).resolve(IndexStats.REPORT), StandardCharsets.UTF_8);
+		Assertions.assertTrue(report.contains("\"aliases\": 1"), report);
+
+		final ProcessBuilder search = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=licence",
+			"-Droot=" + root.toAbsolutePath());
+		search.directory(root.toFile());
+		runAndCheckOutput(search,
+			"Found:",
+			"original.txt",
+			"copy.txt",
+			"!other.txt");
+
+		// the path and file name of an alias are its own, whichever file has the contents
+		final ProcessBuilder byFilename = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=licence AND filename:copy.txt",
+			"-Droot=" + root.toAbsolutePath());
+		byFilename.directory(root.toFile());
+		runAndCheckOutput(byFilename,
+			"Found:",
+			"copy.txt",
+			"!original.txt");
+		final ProcessBuilder byPath = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=licence -path:vendor",
+			"-Droot=" + root.toAbsolutePath());
+		byPath.directory(root.toFile());
+		runAndCheckOutput(byPath,
+			"Found:",
+			"original.txt",
+			"!copy.txt");
+
+		// whichever file had the contents, the remaining one is found
+		Files.delete(root.resolve("original.txt"));
+		final ProcessBuilder update = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-Dincremental=true",
+			"-Droot=" + root.toAbsolutePath());
+		update.directory(root.toFile());
+		runAndCheckOutput(update,
+			"Updating index for",
+			"BUILD SUCCESS");
+		runAndCheckOutput(search,
+			"Found:",
+			"copy.txt",
+			"!original.txt");
+	}
+
+	@Test
+	void buildIndexWithArchives() throws IOException, InterruptedException {
+		final Path root = Paths.get("").toAbsolutePath().resolve("target/archive-test");
+		Files.createDirectories(root);
+		try (final ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(root.resolve("library-sources.jar")))) {
+			zip.putNextEntry(new ZipEntry("de/example/Greeter.java"));
+			zip.write("class Greeter { String archivedGreeting; }".getBytes(StandardCharsets.UTF_8));
+			zip.putNextEntry(new ZipEntry("de/example/Greeter.class"));
+			zip.write(new byte[] { (byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe, 0, 0, 0, 55 });
+			// an uncompressed entry, so the text is also found in the bytes of the archive
+			final byte[] readme = "storedGreeting".getBytes(StandardCharsets.UTF_8);
+			final CRC32 crc = new CRC32();
+			crc.update(readme);
+			final ZipEntry stored = new ZipEntry("README.txt");
+			stored.setMethod(ZipEntry.STORED);
+			stored.setSize(readme.length);
+			stored.setCrc(crc.getValue());
+			zip.putNextEntry(stored);
+			zip.write(readme);
+			zip.closeEntry();
+		}
+
+		final ProcessBuilder build = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-Darchives=true",
+			"-Dthreads=2",
+			"-Dcontext=true",
+			"-Dclean=true",
+			"-Droot=" + root.toAbsolutePath());
+		build.directory(root.toFile());
+		runAndCheckOutput(build,
+			"Building index for",
+			"BUILD SUCCESS");
+		final Path report = root.resolve(Constants.DEFAULT_INDEX).resolve(IndexStats.REPORT);
+		Assertions.assertTrue(Files.readString(report, StandardCharsets.UTF_8).contains("\"archiveEntries\": 2"));
+
+		final ProcessBuilder search = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=archivedGreeting",
+			"-Dcontext=true",
+			"-Droot=" + root.toAbsolutePath());
+		search.directory(root.toFile());
+		runAndCheckOutput(search,
+			"Found:",
+			"library-sources.jar!/de/example/Greeter.java:1: class Greeter");
+
+		// regular expressions are confirmed against the entries, not the archive
+		final ProcessBuilder grep = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=regex:stored[G]reeting",
+			"-Droot=" + root.toAbsolutePath());
+		grep.directory(root.getParent().toFile());
+		runAndCheckOutput(grep,
+			"library-sources.jar!/README.txt",
+			"!library-sources.jar\n");
+
+		// an unchanged archive is not read again, its entries stay
+		final ProcessBuilder update = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-Droot=" + root.toAbsolutePath());
+		update.directory(root.toFile());
+		runAndCheckOutput(update,
+			"Updating index for",
+			"BUILD SUCCESS");
+		Assertions.assertTrue(Files.readString(report, StandardCharsets.UTF_8).contains("\"unchanged\": 1"));
+		runAndCheckOutput(search,
+			"Found:",
+			"Greeter.java");
+	}
+
+	@Test
+	void buildChunkedIndex() throws IOException, InterruptedException {
+		final Path root = Paths.get("").toAbsolutePath().resolve("target/chunk-test");
+		Files.createDirectories(root);
+		final StringBuilder log = new StringBuilder();
+		for (int i = 1; i <= 400; i++) {
+			log.append(String.format("line %04d of the log", Integer.valueOf(i)));
+			if (i == 10) {
+				log.append(" alphaMarker");
+			} else if (i == 390) {
+				log.append(" omegaMarker");
+			}
+			log.append('\n');
+		}
+		Files.writeString(root.resolve("big.log"), log.toString(), StandardCharsets.UTF_8);
+		Files.writeString(root.resolve("small.txt"), "alphaMarker", StandardCharsets.UTF_8);
+
+		final ProcessBuilder build = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-DchunkSize=1000",
+			"-DchunkOverlap=2",
+			"-Dcontext=true",
+			"-Dclean=true",
+			"-Droot=" + root.toAbsolutePath());
+		build.directory(root.toFile());
+		runAndCheckOutput(build,
+			"Building index for",
+			"BUILD SUCCESS");
+		final Path report = root.resolve(Constants.DEFAULT_INDEX).resolve(IndexStats.REPORT);
+		Assertions.assertFalse(Files.readString(report, StandardCharsets.UTF_8).contains("\"chunks\": 0"));
+
+		// the chunks of the log are one result, with the line numbers of the file
+		final ProcessBuilder search = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=alphaMarker OR omegaMarker",
+			"-Dcontext=true",
+			"-Droot=" + root.toAbsolutePath());
+		search.directory(root.toFile());
+		runAndCheckOutput(search,
+			"Found:",
+			"big.log:10: line 0010 of the log >>alphaMarker<<",
+			"big.log:390: line 0390 of the log >>omegaMarker<<",
+			"small.txt:1: >>alphaMarker<<");
+
+		final ProcessBuilder chunks = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=omegaMarker",
+			"-Dlimit=0",
+			"-Droot=" + root.toAbsolutePath());
+		chunks.directory(root.toFile());
+		runAndCheckOutput(chunks,
+			"Found:",
+			"big.log (chunks ",
+			"!big.log (chunks 0",
+			"!small.txt");
+	}
+
+	@Test
+	void buildShardedIndex() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+
+		final ProcessBuilder build = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-DindexFolder=.shardindex",
+			"-DignoreFolders=de",
+			"-Dshards=nested",
+			"-Dclean=true",
+			"-Droot=" + root.getAbsolutePath());
+		build.directory(root);
+		runAndCheckOutput(build,
+			"_rest",
+			"nested",
+			"BUILD SUCCESS");
+
+		final ProcessBuilder search = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=fox OR Hello",
+			"-DindexFolder=.shardindex",
+			"-Droot=" + root.getAbsolutePath());
+		search.directory(root);
+		runAndCheckOutput(search,
+			"Found:",
+			"test2.txt",
+			"test3.txt",
+			"!test1.txt");
+
+		// rebuilding one shard leaves the other one alone
+		final ProcessBuilder rebuild = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-DindexFolder=.shardindex",
+			"-DignoreFolders=de",
+			"-Dshard=nested",
+			"-Dclean=true",
+			"-Droot=" + root.getAbsolutePath());
+		rebuild.directory(root);
+		runAndCheckOutput(rebuild,
+			"Building index for",
+			"nested",
+			"!_rest",
+			"BUILD SUCCESS");
+	}
+
+	@Test
+	void buildReactorIndex() throws IOException, InterruptedException {
+		final Path root = Paths.get("").toAbsolutePath().resolve("target/reactor-test");
+		for (final String module : new String[] { "core", "app-web" }) {
+			Files.createDirectories(root.resolve(module).resolve("src"));
+			Files.createDirectories(root.resolve(module).resolve("target"));
+			Files.writeString(root.resolve(module).resolve("src/Shared.java"), "class Shared { String reactorShared; } // " + module);
+			Files.writeString(root.resolve(module).resolve("target/Stale.java"), "class Stale { String reactorShared; }");
+		}
+		Files.writeString(root.resolve("pom.xml"), pom("reactor", "pom", "<modules><module>core</module><module>app-web</module></modules>"));
+		Files.writeString(root.resolve("core/pom.xml"), pom("core", "jar", ""));
+		Files.writeString(root.resolve("app-web/pom.xml"), pom("app-web", "jar",
+			"<dependencies><dependency><groupId>de.example</groupId><artifactId>greeter</artifactId><version>1.0</version>"
+			+ "<scope>system</scope><systemPath>${project.basedir}/../../shared-repo/greeter-1.0.jar</systemPath></dependency></dependencies>"));
+		// the dependency is outside of the root folder, so its files are identified by their absolute paths;
+		// these precede the files of the modules by identifier, but follow them by path
+		final Path repo = root.getParent().resolve("shared-repo");
+		Files.createDirectories(repo);
+		try (final ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(repo.resolve("greeter-1.0.jar")))) {
+			zip.putNextEntry(new ZipEntry("de/example/Greeter.class"));
+			zip.write(new byte[] { (byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe, 0, 0, 0, 55 });
+			zip.closeEntry();
+		}
+		try (final ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(repo.resolve("greeter-1.0-sources.jar")))) {
+			zip.putNextEntry(new ZipEntry("de/example/Greeter.java"));
+			zip.write("class Greeter { String dependencyGreeting; }".getBytes(StandardCharsets.UTF_8));
+			zip.closeEntry();
+		}
+
+		// the build folders of the modules are skipped even if not ignored by name
+		final ProcessBuilder build = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index-reactor",
+			"-DignoreFolders=.git",
+			"-Dcontext=true",
+			"-Dclean=true");
+		build.directory(root.toFile());
+		runAndCheckOutput(build,
+			"Indexing 3 modules",
+			"Indexing 1 source jars of dependencies",
+			"BUILD SUCCESS");
+
+		final ProcessBuilder search = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=module:app-web AND reactorShared");
+		search.directory(root.toFile());
+		runAndCheckOutput(search,
+			"Found:",
+			"app-web" + File.separator + "src" + File.separator + "Shared.java",
+			"!core" + File.separator + "src",
+			"!Stale.java");
+
+		final ProcessBuilder dependency = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=dependencyGreeting",
+			"-Dcontext=true");
+		dependency.directory(root.toFile());
+		runAndCheckOutput(dependency,
+			"Found:",
+			"greeter-1.0-sources.jar!/de/example/Greeter.java:1: class Greeter");
+
+		// the whitelist applies to the absolute paths of the files of dependencies
+		final ProcessBuilder whitelisted = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=dependencyGreeting",
+			"-Dwhitelist=^" + repo.toString().replace(File.separatorChar, '/').replaceAll("[^A-Za-z0-9/]", "\\\\$0") + "/greeter");
+		whitelisted.directory(root.toFile());
+		runAndCheckOutput(whitelisted,
+			"Nothing found.",
+			"!Found:");
+
+		// the results are in the same order with and without limit
+		final List<List<String>> results = new ArrayList<>();
+		for (final String limit : new String[] { "10", "0" }) {
+			final File output = root.getParent().resolve("reactor-" + limit + ".txt").toFile();
+			final ProcessBuilder ordered = new ProcessBuilder(getMaven(),
+				"de.engehausen:project-search:search",
+				"-Dquery=reactorShared OR dependencyGreeting",
+				"-Dlimit=" + limit,
+				"-Doutput=" + output.getAbsolutePath());
+			ordered.directory(root.toFile());
+			runAndCheckOutput(ordered, "BUILD SUCCESS");
+			results.add(Files.readAllLines(output.toPath(), StandardCharsets.UTF_8));
+		}
+		Assertions.assertEquals(3, results.get(0).size());
+		Assertions.assertEquals(results.get(1), results.get(0));
+	}
+
+	private static String pom(final String artifactId, final String packaging, final String contents) {
+		return "<project xmlns=\"http://maven.apache.org/POM/4.0.0\"><modelVersion>4.0.0</modelVersion>"
+			+ "<groupId>de.example</groupId><artifactId>" + artifactId + "</artifactId><version>1.0</version>"
+			+ "<packaging>" + packaging + "</packaging>" + contents + "</project>";
 	}
 
 }
@@ -2,7 +2,11 @@ package de.engehausen.maven.projectsearch;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Order;
@@ -27,11 +31,52 @@ class SearchMojoTest extends AbstractMojoTest {
 			"Found:",
 			"test1.txt",
 			"The following results were ignored:",
+			"test2.txt",
+			"Query timings: parse");
+	}
+
+	@Test
+	void customSearchMixedWhitelist() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+
+		// the first pattern is part of the query, the second one is checked on the results
+		final ProcessBuilder processBuilder = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=fox OR Lorem",
+			"-Dwhitelist=test1\\.txt$,(?i)TEST2",
+			"-DindexFolder=.testindex",
+			"-Droot=" + root.getAbsolutePath());
+		processBuilder.directory(root);
+		runAndCheckOutput(processBuilder,
+			"Nothing found.",
+			"The following results were ignored:",
+			"test1.txt",
 			"test2.txt");
 	}
 
 	@Test
-	void presetSearch() throws IOException, InterruptedException {
+	void customSearchComplexWhitelist() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+
+		// the patterns are too complex for a single automaton and are checked on the results
+		final ProcessBuilder processBuilder = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=fox OR Lorem",
+			"-Dwhitelist=test2\\.txt,a.{9}b,c.{9}d",
+			"-DindexFolder=.testindex",
+			"-Droot=" + root.getAbsolutePath());
+		processBuilder.directory(root);
+		runAndCheckOutput(processBuilder,
+			"Found:",
+			"test1.txt",
+			"The following results were ignored:",
+			"test2.txt");
+	}
+
+	@Test
+	void presetSearch()throws IOException, InterruptedException {
 		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
 		Assertions.assertTrue(root.exists());
 
@@ -79,4 +124,176 @@ class SearchMojoTest extends AbstractMojoTest {
 		runAndCheckOutput(processBuilder, "Unwanted search results.");
 	}
 
+	@Test
+	void binaryNotIndexed() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+
+		final ProcessBuilder processBuilder = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=binarytoken",
+			"-DindexFolder=.testindex",
+			"-Droot=" + root.getAbsolutePath());
+		processBuilder.directory(root);
+		runAndCheckOutput(processBuilder,
+			"Nothing found.",
+			"!binary.dat");
+	}
+
+	@Test
+	void identifierPartSearch() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+
+		final ProcessBuilder processBuilder = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=identifiers:text",
+			"-DindexFolder=.testindex",
+			"-Droot=" + root.getAbsolutePath());
+		processBuilder.directory(root);
+		runAndCheckOutput(processBuilder,
+			"test2.txt",
+			"!test1.txt");
+	}
+
+	@Test
+	void regexSearch() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+
+		final ProcessBuilder processBuilder = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=regex:^fox j[a-z]+ed",
+			"-Dcontext=true",
+			"-DindexFolder=.testindex",
+			"-Droot=" + root.getAbsolutePath());
+		processBuilder.directory(root);
+		runAndCheckOutput(processBuilder,
+			"test2.txt:3: >>fox jumped<< over",
+			"!test1.txt");
+	}
+
+	@Test
+	void ignoreFileNotIndexed() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(new File(root, "nested/generated.txt").exists());
+
+		// nested/.ignore excludes the file
+		final ProcessBuilder processBuilder = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=ignoredbyrule",
+			"-DindexFolder=.testindex",
+			"-Droot=" + root.getAbsolutePath());
+		processBuilder.directory(root);
+		runAndCheckOutput(processBuilder,
+			"Nothing found.",
+			"!generated.txt");
+	}
+
+	@Test
+	void contextSearch() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+
+		final ProcessBuilder processBuilder = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=fox OR jump*",
+			"-Dcontext=true",
+			"-DindexFolder=.testindex",
+			"-Droot=" + root.getAbsolutePath());
+		processBuilder.directory(root);
+		runAndCheckOutput(processBuilder,
+			"Found:",
+			"test2.txt:3: >>fox<< >>jumped<< over");
+	}
+
+	@Test
+	void streamAllResults() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+		final File output = new File(root.getParentFile(), "stream-results.json");
+
+		final ProcessBuilder processBuilder = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=fox OR Lorem",
+			"-Dlimit=0",
+			"-Dformat=json",
+			"-Doutput=" + output.getAbsolutePath(),
+			"-DindexFolder=.testindex",
+			"-Droot=" + root.getAbsolutePath());
+		processBuilder.directory(root);
+		runAndCheckOutput(processBuilder, "Wrote 2 results to");
+		final List<String> lines = Files.readAllLines(output.toPath(), StandardCharsets.UTF_8);
+		Assertions.assertEquals(2, lines.size());
+		Assertions.assertTrue(lines.get(0).startsWith("{\"path\":") && lines.get(0).contains("test1.txt"), lines.get(0));
+		Assertions.assertTrue(lines.get(1).contains("test2.txt"), lines.get(1));
+
+		// results without limit are streamed again, not cached
+		runAndCheckOutput(processBuilder, "Wrote 2 results to", "!(results from the cache)");
+	}
+
+	@Test
+	void facetSearch() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+
+		final ProcessBuilder processBuilder = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=fox OR Lorem OR Hello",
+			"-Dfacets=true",
+			"-DfacetDepth=1",
+			"-DindexFolder=.testindex",
+			"-Droot=" + root.getAbsolutePath());
+		processBuilder.directory(root);
+		runAndCheckOutput(processBuilder,
+			"Facets of ",
+			"directory:",
+			"    nested: 1",
+			"extension:",
+			"    txt: ",
+			"path (depth 1):",
+			"!module:",
+			"!Found:");
+	}
+
+	@Test
+	void cachedSearch() throws IOException, InterruptedException {
+		final Path root = Paths.get("").toAbsolutePath().resolve("target/cache-test");
+		Files.createDirectories(root);
+		Files.writeString(root.resolve("cached.txt"), "cachedTerm first version");
+
+		final ProcessBuilder index = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-Dcontext=true",
+			"-Dclean=true",
+			"-Droot=" + root.toAbsolutePath());
+		index.directory(root.toFile());
+		runAndCheckOutput(index, "BUILD SUCCESS");
+
+		final ProcessBuilder search = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:search",
+			"-Dquery=cachedTerm",
+			"-Dcontext=true",
+			"-Droot=" + root.toAbsolutePath());
+		search.directory(root.toFile());
+		runAndCheckOutput(search,
+			"cached.txt:1: >>cachedTerm<< first version",
+			"!(results from the cache)");
+		runAndCheckOutput(search,
+			"cached.txt:1: >>cachedTerm<< first version",
+			"(results from the cache)");
+
+		// a new commit of the index invalidates the cache
+		Files.writeString(root.resolve("cached.txt"), "cachedTerm second version");
+		final ProcessBuilder update = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-Dincremental=true",
+			"-Droot=" + root.toAbsolutePath());
+		update.directory(root.toFile());
+		runAndCheckOutput(update, "BUILD SUCCESS");
+		runAndCheckOutput(search,
+			"cached.txt:1: >>cachedTerm<< second version",
+			"!(results from the cache)");
+	}
+
 }
@@ -0,0 +1,85 @@
+package de.engehausen.maven.projectsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+
+@Order(5)
+class ServeMojoTest extends AbstractMojoTest {
+
+	@Test
+	void searchWithServer() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+
+		final File log = new File(root, "server.log");
+		final ProcessBuilder serverBuilder = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:serve",
+			"-DindexFolder=.serveindex",
+			"-Droot=" + root.getAbsolutePath());
+		serverBuilder.directory(root);
+		serverBuilder.redirectOutput(Redirect.to(log));
+		serverBuilder.redirectError(Redirect.to(log));
+		final Process server = serverBuilder.start();
+		try {
+			awaitOutput(log, "Serving");
+
+			final ProcessBuilder searchBuilder = new ProcessBuilder(getMaven(),
+				"de.engehausen:project-search:search",
+				"-DindexFolder=.serveindex",
+				"-Dcontext=true",
+				"-Dquery=Hello",
+				"-Droot=" + root.getAbsolutePath());
+			searchBuilder.directory(root);
+			runAndCheckOutput(searchBuilder,
+				"Using the search server",
+				"test3.txt",
+				"BUILD SUCCESS"
+			);
+
+			// all results are streamed, followed by the ignored ones
+			final ProcessBuilder streamBuilder = new ProcessBuilder(getMaven(),
+				"de.engehausen:project-search:search",
+				"-DindexFolder=.serveindex",
+				"-Dlimit=0",
+				"-Dwhitelist=test2.txt",
+				"-Dquery=fox OR Lorem",
+				"-Droot=" + root.getAbsolutePath());
+			streamBuilder.directory(root);
+			runAndCheckOutput(streamBuilder,
+				"Using the search server",
+				"Found:",
+				"test1.txt",
+				"The following results were ignored:",
+				"test2.txt",
+				"BUILD SUCCESS"
+			);
+
+			final ProcessBuilder shellBuilder = new ProcessBuilder(getMaven(),
+				"de.engehausen:project-search:shell",
+				"-DindexFolder=.serveindex",
+				"-Droot=" + root.getAbsolutePath());
+			shellBuilder.directory(root);
+			// the other tests add index folders to the root, so there are several pages of results
+			runAndCheckOutput(shellBuilder,
+				"*:*\n?next\n?next\n?next\nfoo:(\n?quit\n".getBytes(StandardCharsets.UTF_8),
+				"Using the search server",
+				"Found:",
+				"test1.txt",
+				"Cannot parse"
+			);
+		} finally {
+			server.destroy();
+			Assertions.assertTrue(server.waitFor(1, TimeUnit.MINUTES));
+		}
+		Assertions.assertFalse(root.toPath().resolve(".serveindex").resolve(SearchClient.SERVER_FILE).toFile().exists());
+	}
+
+}
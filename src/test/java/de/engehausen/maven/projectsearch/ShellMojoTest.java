@@ -3,13 +3,16 @@ package de.engehausen.maven.projectsearch;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 
-@Order(3)
+@Order(4)
 class ShellMojoTest extends AbstractMojoTest {
 
 	@Test
@@ -29,4 +32,144 @@ class ShellMojoTest extends AbstractMojoTest {
 		);
 	}
 
+	@Test
+	void paging() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+
+		final ProcessBuilder processBuilder = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:shell",
+			"-DindexFolder=.testindex",
+			"-Droot=" + root.getAbsolutePath());
+		processBuilder.directory(root);
+		runAndCheckOutput(processBuilder,
+			"*:*\n?next\n?next\n*:*\n?quit\n".getBytes(StandardCharsets.UTF_8),
+			"Found:",
+			"test1.txt",
+			"No more results."
+		);
+	}
+
+	@Test
+	void pagingChunks() throws IOException, InterruptedException {
+		final Path root = Paths.get("").toAbsolutePath().resolve("target/chunk-paging-test");
+		Files.createDirectories(root);
+		// fifteen files before the chunked file, which straddles the end of the first page
+		for (int i = 0; i < 15; i++) {
+			Files.writeString(root.resolve(String.format("a%02d.txt", Integer.valueOf(i))), "pagedMarker");
+		}
+		final StringBuilder log = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			log.append(String.format("line %04d pagedMarker%n", Integer.valueOf(i)));
+		}
+		Files.writeString(root.resolve("big.log"), log);
+		Files.writeString(root.resolve("c.txt"), "pagedMarker");
+
+		final ProcessBuilder index = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-DchunkSize=1000",
+			"-Dclean=true",
+			"-Droot=" + root.toAbsolutePath());
+		index.directory(root.getParent().toFile());
+		runAndCheckOutput(index, "BUILD SUCCESS");
+
+		final ProcessBuilder processBuilder = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:shell",
+			"-Droot=" + root.toAbsolutePath());
+		processBuilder.directory(root.getParent().toFile());
+		runAndCheckOutput(processBuilder,
+			"pagedMarker\n?next\n?quit\n".getBytes(StandardCharsets.UTF_8),
+			"big.log (chunks 0, 1, 2)",
+			"c.txt",
+			"!big.log (chunks 1"
+		);
+	}
+
+	@Test
+	void facets() throws IOException, InterruptedException {
+		final File root = Paths.get("").toAbsolutePath().resolve("target/test-classes").toFile();
+		Assertions.assertTrue(root.exists());
+
+		final ProcessBuilder processBuilder = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:shell",
+			"-DindexFolder=.testindex",
+			"-Droot=" + root.getAbsolutePath());
+		processBuilder.directory(root);
+		runAndCheckOutput(processBuilder,
+			"?facets\nHello\n?facets\n?quit\n".getBytes(StandardCharsets.UTF_8),
+			"No previous query.",
+			"Facets of ",
+			"    nested: 1"
+		);
+	}
+
+	@Test
+	void watch() throws IOException, InterruptedException {
+		final Path root = Paths.get("").toAbsolutePath().resolve("target/watch-test");
+		Files.createDirectories(root);
+		Files.writeString(root.resolve("first.txt"), "initial content");
+		Files.deleteIfExists(root.resolve("second.txt"));
+
+		final ProcessBuilder processBuilder = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:shell",
+			"-Dwatch=true",
+			"-Dclean=true",
+			"-Droot=" + root.toAbsolutePath());
+		// the output is logged outside of the watched folder
+		processBuilder.directory(root.getParent().toFile());
+		runAndCheckOutput(processBuilder,
+			(stdin, log) -> {
+				awaitOutput(log, "Enter query");
+				// moved in to be seen with its contents by the first event
+				final Path written = Files.writeString(root.resolveSibling("watch-test-second.txt"), "latecomer content");
+				Files.move(written, root.resolve("second.txt"), StandardCopyOption.ATOMIC_MOVE);
+				awaitOutput(log, "Updated " + root.resolve("second.txt") + " in the index");
+				stdin.write("latecomer\n?quit\n".getBytes(StandardCharsets.UTF_8));
+				stdin.flush();
+			},
+			"Watching",
+			"Found:",
+			"second.txt"
+		);
+	}
+
+	@Test
+	void watchDeduplicated() throws IOException, InterruptedException {
+		final Path root = Paths.get("").toAbsolutePath().resolve("target/watch-dedup-test");
+		Files.createDirectories(root);
+		Files.writeString(root.resolve("original.txt"), "shared licence text");
+		Files.deleteIfExists(root.resolve("copy.txt"));
+
+		final ProcessBuilder index = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:index",
+			"-Ddedup=true",
+			"-Dclean=true",
+			"-Droot=" + root.toAbsolutePath());
+		index.directory(root.getParent().toFile());
+		runAndCheckOutput(index, "BUILD SUCCESS");
+		// indexed as alias of the original when the shell updates the index
+		Files.writeString(root.resolve("copy.txt"), "shared licence text");
+
+		final ProcessBuilder processBuilder = new ProcessBuilder(getMaven(),
+			"de.engehausen:project-search:shell",
+			"-Dwatch=true",
+			"-Droot=" + root.toAbsolutePath());
+		// the output is logged outside of the watched folder
+		processBuilder.directory(root.getParent().toFile());
+		runAndCheckOutput(processBuilder,
+			(stdin, log) -> {
+				awaitOutput(log, "Enter query");
+				// the copy is indexed with the contents the original no longer has
+				final Path written = Files.writeString(root.resolveSibling("watch-dedup-test-original.txt"), "changed text");
+				Files.move(written, root.resolve("original.txt"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				awaitOutput(log, "Updated " + root.resolve("original.txt") + " in the index");
+				stdin.write("licence\n?quit\n".getBytes(StandardCharsets.UTF_8));
+				stdin.flush();
+			},
+			"Found:",
+			"copy.txt",
+			"!original.txt\n"
+		);
+	}
+
 }